@@ -15,11 +15,24 @@ public class AlexaBindingConstants {
     // List of all Thing Type UIDs
     public final static ThingTypeUID THING_TYPE_ALEXA = new ThingTypeUID(BINDING_ID, "alexa");
 
-    // Light config properties
-    public static final String HUE_LIGHT_ID = "hue__0017880a2b37_1_color";
-
     public static final String CONFIG_WEBSOCKET_ADDRESS = "websocket_address";
 
     public static final String CONFIG_AMAZON_ECHO_ID = "amazon_echo_id";
 
+    public static final String CONFIG_PING_INTERVAL = "ping_interval";
+
+    public static final int DEFAULT_PING_INTERVAL_S = 30;
+
+    public static final String CONFIG_COALESCE_WINDOW = "coalesce_window";
+
+    public static final int DEFAULT_COALESCE_WINDOW_MS = 0;
+
+    // The server waits 3 seconds for the acknowledgement of a command
+    public static final int MAX_COALESCE_WINDOW_MS = 1000;
+
+    // Tags starting with the prefix configure the binding and are not spoken device names
+    public static final String TAG_PREFIX = "alexa:";
+
+    public static final String TAG_GAMUT = TAG_PREFIX + "gamut=";
+
 }
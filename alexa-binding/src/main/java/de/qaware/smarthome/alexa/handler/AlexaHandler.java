@@ -4,15 +4,29 @@ import static de.qaware.smarthome.alexa.AlexaBindingConstants.*;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
-import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
 import org.eclipse.smarthome.core.events.EventPublisher;
 import org.eclipse.smarthome.core.items.events.ItemEventFactory;
+import org.eclipse.smarthome.core.library.types.DecimalType;
 import org.eclipse.smarthome.core.library.types.HSBType;
 import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.library.types.PercentType;
 import org.eclipse.smarthome.core.thing.ChannelUID;
 import org.eclipse.smarthome.core.thing.Thing;
 import org.eclipse.smarthome.core.thing.ThingStatus;
@@ -22,43 +36,84 @@ import org.eclipse.smarthome.core.types.Command;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.qaware.smarthome.alexa.websocket.HeartbeatScheduler;
+import de.qaware.smarthome.alexa.websocket.HeartbeatScheduler.Heartbeat;
 import de.qaware.smarthome.alexa.websocket.WebSocketHandler;
+import de.qaware.smarthome.alexa.websocket.protocol.AckMessage;
+import de.qaware.smarthome.alexa.websocket.protocol.BatchMessage;
+import de.qaware.smarthome.alexa.websocket.protocol.BinaryCodec;
 import de.qaware.smarthome.alexa.websocket.protocol.ChangeColorMessage;
+import de.qaware.smarthome.alexa.websocket.protocol.DeviceCatalogMessage;
 import de.qaware.smarthome.alexa.websocket.protocol.Message;
+import de.qaware.smarthome.alexa.websocket.protocol.MessageType;
 import de.qaware.smarthome.alexa.websocket.protocol.OffMessage;
 import de.qaware.smarthome.alexa.websocket.protocol.OnMessage;
+import de.qaware.smarthome.alexa.websocket.protocol.QueryStateMessage;
+import de.qaware.smarthome.alexa.websocket.protocol.ReconnectMessage;
 import de.qaware.smarthome.alexa.websocket.protocol.RegisterMessage;
+import de.qaware.smarthome.alexa.websocket.protocol.StateReportMessage;
 
 /**
  * The {@link AlexaHandler} is responsible for establishing a websocket connection and for sending and receiving
- * messages via this connection. Certain messages will cause to post events via the {@link EventPublisher}.
+ * messages via this connection. Certain messages will cause to post events via the {@link EventPublisher}. Commands are
+ * handled by the {@link CommandDispatcher}, off the threads of the websocket client.
  *
  * @author Andreas Mayer
  */
 public class AlexaHandler extends BaseThingHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AlexaHandler.class);
-    private static final int PING_DELAY_MS = 30000;
+
+    private static final long RECONNECT_INITIAL_DELAY_MS = 1000;
+    private static final long RECONNECT_MAX_DELAY_MS = 5 * 60 * 1000;
+    private static final long CATALOG_PUSH_DELAY_MS = 1000;
+    private static final long STATE_PUSH_DELAY_MS = 250;
+    private static final int COLOR_CACHE_SIZE = 256;
 
     private final EventPublisher eventPublisher;
+    private final ItemIndex itemIndex;
+    private final WebSocketClient client;
+    private final HeartbeatScheduler heartbeatScheduler;
+    private final CommandDispatcher commandDispatcher;
+    private final ColorCache colorCache = new ColorCache(COLOR_CACHE_SIZE);
+    private final AtomicReference<ConnectionState> state = new AtomicReference<>(ConnectionState.DISPOSED);
+    private final ReconnectBackoff backoff = new ReconnectBackoff(RECONNECT_INITIAL_DELAY_MS, RECONNECT_MAX_DELAY_MS);
 
     private String webSocketAddress;
     private String amazonEchoId;
-    private WebSocketClient client;
-    private boolean isDisposing;
-
-    private Thread pingThread;
-    private boolean pingThreadRunning;
+    private volatile WebSocketHandler webSocketHandler;
+    private volatile Session session;
+    private long pingIntervalMs;
+    private volatile CommandCoalescer commandCoalescer;
+    private ScheduledFuture<?> reconnectJob;
+    // the delay the server asked for before reconnecting, -1 if it did not
+    private final AtomicLong requestedReconnectDelay = new AtomicLong(-1);
+    private Heartbeat heartbeat;
+    private ScheduledFuture<?> catalogPushJob;
+    private final Runnable catalogChangeListener = this::scheduleCatalogPush;
+    private final Map<String, String> pendingStates = new LinkedHashMap<>();
+    private final Map<String, String> sentStates = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> statePushJob;
+    private final BiConsumer<String, String> stateChangeListener = this::scheduleStatePush;
 
     /**
      * Default-Constructor
      *
      * @param thing the thing
      * @param eventPublisher the event publisher
+     * @param itemIndex the index to resolve device names to items
+     * @param client the websocket client shared by all handlers of the binding
+     * @param heartbeatScheduler the scheduler for the pings, shared by all handlers of the binding
+     * @param commandDispatcher the dispatcher that runs the received commands, shared by all handlers of the binding
      */
-    public AlexaHandler(Thing thing, EventPublisher eventPublisher) {
+    public AlexaHandler(Thing thing, EventPublisher eventPublisher, ItemIndex itemIndex, WebSocketClient client,
+            HeartbeatScheduler heartbeatScheduler, CommandDispatcher commandDispatcher) {
         super(thing);
         this.eventPublisher = eventPublisher;
+        this.itemIndex = itemIndex;
+        this.client = client;
+        this.heartbeatScheduler = heartbeatScheduler;
+        this.commandDispatcher = commandDispatcher;
     }
 
     @Override
@@ -68,222 +123,557 @@ public class AlexaHandler extends BaseThingHandler {
 
     @Override
     public void initialize() {
-        isDisposing = false;
         webSocketAddress = (String) getConfig().get(CONFIG_WEBSOCKET_ADDRESS);
         amazonEchoId = (String) getConfig().get(CONFIG_AMAZON_ECHO_ID);
+        Object pingInterval = getConfig().get(CONFIG_PING_INTERVAL);
+        pingIntervalMs = TimeUnit.SECONDS.toMillis(
+                pingInterval instanceof Number ? ((Number) pingInterval).longValue() : DEFAULT_PING_INTERVAL_S);
+        Object coalesceWindow = getConfig().get(CONFIG_COALESCE_WINDOW);
+        // held back commands are acknowledged when the window ends, which has to be well before the server gives up
+        long coalesceWindowMs = Math.min(
+                coalesceWindow instanceof Number ? ((Number) coalesceWindow).longValue() : DEFAULT_COALESCE_WINDOW_MS,
+                MAX_COALESCE_WINDOW_MS);
+        commandCoalescer = new CommandCoalescer(coalesceWindowMs, scheduler,
+                (itemName, command) -> eventPublisher.post(ItemEventFactory.createCommandEvent(itemName, command)));
 
         if (webSocketAddress == null || amazonEchoId == null) {
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_PENDING);
         } else {
+            itemIndex.addChangeListener(catalogChangeListener);
+            itemIndex.addStateListener(stateChangeListener);
+            backoff.reset();
+            state.set(ConnectionState.CONNECTING);
             connect();
         }
     }
 
     @Override
     public void dispose() {
-        isDisposing = true;
-        stopPingThread();
+        state.set(ConnectionState.DISPOSED);
+        itemIndex.removeChangeListener(catalogChangeListener);
+        itemIndex.removeStateListener(stateChangeListener);
+        synchronized (this) {
+            if (reconnectJob != null) {
+                reconnectJob.cancel(false);
+                reconnectJob = null;
+            }
+            if (catalogPushJob != null) {
+                catalogPushJob.cancel(false);
+                catalogPushJob = null;
+            }
+            if (statePushJob != null) {
+                statePushJob.cancel(false);
+                statePushJob = null;
+            }
+            pendingStates.clear();
+        }
+        CommandCoalescer coalescer = commandCoalescer;
+        if (coalescer != null) {
+            coalescer.clear();
+        }
+        stopHeartbeat();
         disconnect();
     }
 
     /**
-     * To create the websocket handler and connect to the configured websocket server.
+     * @return the current state of the websocket connection
+     */
+    public ConnectionState getConnectionState() {
+        return state.get();
+    }
+
+    /**
+     * To create a new websocket handler and connect to the configured websocket server. Every attempt gets its own
+     * handler, so callbacks of an old connection can be told apart and ignored.
      */
     private void connect() {
         WebSocketHandler handler = new WebSocketHandler();
+        webSocketHandler = handler;
         handler.setOnCloseHandler(() -> {
-            updateStatus(ThingStatus.OFFLINE);
-            stopPingThread();
             LOGGER.info("Websocket closed");
-            if (!isDisposing) {
-                LOGGER.info("Reconnecting");
-                reconnectClient(handler);
-            }
+            connectionLost(handler);
         });
         handler.setOnErrorHandler(e -> {
-            updateStatus(ThingStatus.OFFLINE);
-            stopPingThread();
-            LOGGER.warn("Websocket exception, reconnecting", e);
-            reconnectClient(handler);
+            LOGGER.warn("Websocket exception", e);
+            connectionLost(handler);
         });
         handler.setOnConnectHandler(session -> {
-            stopPingThread();
-            startPingThread(handler, session);
+            if (handler != webSocketHandler || !state.compareAndSet(ConnectionState.CONNECTING, ConnectionState.ONLINE)) {
+                session.close();
+                return;
+            }
+            this.session = session;
+            requestedReconnectDelay.set(-1);
+            backoff.reset();
+            stopHeartbeat();
+            startHeartbeat(handler, session);
             LOGGER.info("Websocket connected to {}", webSocketAddress);
             updateStatus(ThingStatus.ONLINE);
             try {
-                handler.sendMessage(new RegisterMessage(amazonEchoId), session);
+                RegisterMessage register = new RegisterMessage(amazonEchoId);
+                register.getFeatures().add(RegisterMessage.FEATURE_BATCH);
+                register.getFeatures().add(RegisterMessage.FEATURE_ACK);
+                handler.sendMessage(register, session);
+                handler.sendMessage(new DeviceCatalogMessage(itemIndex.getDeviceNames()), session);
+                // the server forgot the states of the last connection, so it gets all of them again
+                Map<String, String> states = itemIndex.getStates();
+                sentStates.clear();
+                sentStates.putAll(states);
+                handler.sendMessage(new StateReportMessage(true, states), session);
             } catch (IOException e) {
                 LOGGER.warn("Exception while registering Echo ID", e);
             }
         });
-        handler.setOnMessageHandler(this::handleWebSocketMessage);
+        handler.setOnMessageHandler(this::dispatchWebSocketMessage);
 
-        SslContextFactory factory = new SslContextFactory(true);
-        client = new WebSocketClient(factory);
-
-        connectClient(handler);
+        try {
+            URI uri = new URI(webSocketAddress);
+            ClientUpgradeRequest request = new ClientUpgradeRequest();
+            // servers that do not know the binary encoding ignore it and keep talking JSON
+            request.setSubProtocols(BinaryCodec.SUBPROTOCOL);
+            client.connect(handler, uri, request);
+        } catch (Exception e) {
+            LOGGER.error("Exception while connecting the websocket client", e);
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR);
+            connectionLost(handler);
+        }
     }
 
     /**
-     * To reconnect to the configured websocket server.
+     * To schedule a reconnect after the connection was closed or could not be established. Close and error of the
+     * same connection are often reported both, only the first one leads to a reconnect.
      *
-     * @param handler The current websocket handler
+     * @param handler The websocket handler of the lost connection
      */
-    private void reconnectClient(WebSocketHandler handler) {
-        try {
-            client.stop();
-            connectClient(handler);
-        } catch (Exception e) {
-            LOGGER.error("Exception while reconnecting", e);
+    private void connectionLost(WebSocketHandler handler) {
+        if (handler != webSocketHandler) {
+            return;
+        }
+        ConnectionState previous = state.get();
+        if ((previous != ConnectionState.CONNECTING && previous != ConnectionState.ONLINE)
+                || !state.compareAndSet(previous, ConnectionState.BACKOFF)) {
+            return;
+        }
+
+        session = null;
+        updateStatus(ThingStatus.OFFLINE);
+        stopHeartbeat();
+
+        long requested = requestedReconnectDelay.getAndSet(-1);
+        long delay = requested >= 0 ? backoff.requestedDelay(requested) : backoff.nextDelay();
+        LOGGER.info("Reconnecting in {} ms", delay);
+        synchronized (this) {
+            reconnectJob = scheduler.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
         }
     }
 
     /**
-     * To disconnect from the connected websocket server.
+     * To reconnect to the configured websocket server after the backoff delay.
+     */
+    private void reconnect() {
+        if (state.compareAndSet(ConnectionState.BACKOFF, ConnectionState.CONNECTING)) {
+            connect();
+        }
+    }
+
+    /**
+     * To disconnect from the connected websocket server. The client itself is shared and keeps running.
      */
     private void disconnect() {
         LOGGER.info("Disconnecting websocket");
-        try {
-            client.stop();
-        } catch (Exception e) {
-            LOGGER.error("Exception while stopping client", e);
+        Session current = session;
+        session = null;
+        webSocketHandler = null;
+        if (current != null) {
+            current.close();
         }
-        client = null;
     }
 
     /**
-     * To connect to the configured websocket server.
-     *
-     * @param handler The current websocket handler
+     * To push the device names to the server shortly after the first change, so all changes within that time, like
+     * adding many items at startup, lead to a single push.
+     */
+    private synchronized void scheduleCatalogPush() {
+        if (catalogPushJob != null && !catalogPushJob.isDone()) {
+            return;
+        }
+        catalogPushJob = scheduler.schedule(this::pushCatalog, CATALOG_PUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * To send the current device names to the server. Without a connection nothing is sent, the names are sent
+     * after registering anyway.
      */
-    private void connectClient(WebSocketHandler handler) {
+    private void pushCatalog() {
+        Session current = session;
+        WebSocketHandler handler = webSocketHandler;
+        if (current == null || handler == null) {
+            return;
+        }
         try {
-            client.start();
-            URI uri = new URI(webSocketAddress);
-            ClientUpgradeRequest request = new ClientUpgradeRequest();
-            client.connect(handler, uri, request);
-        } catch (Exception e) {
-            LOGGER.error("Exception while starting the websocket client", e);
-            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR);
+            handler.sendMessage(new DeviceCatalogMessage(itemIndex.getDeviceNames()), current);
+        } catch (IOException e) {
+            LOGGER.warn("Exception while sending the device catalog", e);
         }
     }
 
     /**
-     * To start a ping thread that monitors the websocket connection.
+     * To report the state of a device to the server shortly after it changed, so a device that changes several times
+     * within that time, like a dimmer being turned, leads to a single report with its last state.
      *
-     * @param handler The current websocket handler
-     * @param session The current websocket session
+     * @param deviceName The name of the device
+     * @param state The new state, null if it became undefined
      */
-    private void startPingThread(WebSocketHandler handler, Session session) {
-        if (pingThread != null) {
-            throw new IllegalStateException("There is already a ping thread running");
+    private synchronized void scheduleStatePush(String deviceName, String state) {
+        // the server trusts the last reported state while connected, so it has to learn that it is gone
+        pendingStates.put(deviceName, state != null ? state : StateReportMessage.STATE_UNDEFINED);
+        if (statePushJob != null && !statePushJob.isDone()) {
+            return;
         }
-
-        LOGGER.info("Starting ping thread");
-        pingThread = new Thread(() -> pingThreadMain(handler, session), "WebsocketPing");
-        pingThreadRunning = true;
-        pingThread.start();
+        statePushJob = scheduler.schedule(this::pushStates, STATE_PUSH_DELAY_MS, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * To stop the ping thread.
+     * To send the states that changed since the last report. States the server already knows are left out.
+     * Without a connection nothing is sent, all states are sent after registering anyway.
      */
-    private void stopPingThread() {
-        if (pingThread == null) {
+    private void pushStates() {
+        Map<String, String> states;
+        synchronized (this) {
+            states = new LinkedHashMap<>(pendingStates);
+            pendingStates.clear();
+        }
+        Session current = session;
+        WebSocketHandler handler = webSocketHandler;
+        if (current == null || handler == null) {
+            return;
+        }
+        states.entrySet().removeIf(state -> state.getValue().equals(sentStates.get(state.getKey())));
+        if (states.isEmpty()) {
             return;
         }
-
-        LOGGER.info("Stopping ping thread");
-        pingThreadRunning = false;
-        pingThread.interrupt();
         try {
-            pingThread.join();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            handler.sendMessage(new StateReportMessage(false, states), current);
+            sentStates.putAll(states);
+        } catch (IOException e) {
+            LOGGER.warn("Exception while sending the device states", e);
         }
-        pingThread = null;
     }
 
     /**
-     * Runtime logic for the ping thread.
+     * To start pinging the websocket connection on the shared heartbeat scheduler.
      *
      * @param handler The current websocket handler
      * @param session The current websocket session
      */
-    private void pingThreadMain(WebSocketHandler handler, Session session) {
-        LOGGER.info("Ping thread started");
-        while (pingThreadRunning) {
+    private synchronized void startHeartbeat(WebSocketHandler handler, Session session) {
+        if (heartbeat != null) {
+            throw new IllegalStateException("There is already a heartbeat running");
+        }
+
+        LOGGER.info("Starting heartbeat every {} ms", pingIntervalMs);
+        heartbeat = heartbeatScheduler.schedule(pingIntervalMs, () -> {
             try {
                 LOGGER.debug("Pinging...");
                 handler.sendPing(session);
             } catch (IOException e) {
                 LOGGER.warn("Exception while sending ping");
             }
-            try {
-                Thread.sleep(PING_DELAY_MS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+        });
+    }
+
+    /**
+     * To stop the heartbeat. Does not wait for a ping in progress, so it is safe to call from websocket callbacks.
+     */
+    private synchronized void stopHeartbeat() {
+        if (heartbeat == null) {
+            return;
         }
-        LOGGER.info("Ping thread ended");
+
+        LOGGER.info("Stopping heartbeat");
+        heartbeat.cancel();
+        heartbeat = null;
     }
 
     /**
-     * To handle a received message.
+     * To pass a received message to the command dispatcher. The commands of a batch are dispatched one after another
+     * in the order the server sent them, each behind the commands waiting for its own device.
      *
      * @param message The message from the websocket server
      */
-    private void handleWebSocketMessage(Message message) {
+    private void dispatchWebSocketMessage(Message message) {
         LOGGER.info("Received WebSocket message: {}", message);
 
+        if (message.getType() == MessageType.RECONNECT) {
+            handleReconnectMessage((ReconnectMessage) message);
+            return;
+        }
+        if (message.getType() != MessageType.BATCH) {
+            dispatchCommand(message);
+            return;
+        }
+        for (Message command : ((BatchMessage) message).getCommands()) {
+            if (command == null) {
+                LOGGER.error("Received unsupported command in batch. Check that the binding version and server matches.");
+            } else if (command.getType() == MessageType.BATCH) {
+                LOGGER.error("Nested batches are not supported");
+                acknowledge(command, false, "Nested batch", null);
+            } else {
+                dispatchCommand(command);
+            }
+        }
+    }
+
+    /**
+     * To close the connection and to connect again after the delay the server asked for, plus some jitter. The server
+     * sends this before a planned shutdown or when too many bindings connect at the same time.
+     *
+     * @param message A {@link ReconnectMessage}
+     */
+    private void handleReconnectMessage(ReconnectMessage message) {
+        LOGGER.info("Server asked to reconnect in {} ms", message.getDelay());
+        requestedReconnectDelay.set(message.getDelay());
+        Session current = session;
+        if (current != null) {
+            // the close is reported to the handler, which schedules the reconnect
+            current.close();
+        }
+    }
+
+    /**
+     * To queue a command for its device. On/off commands and state queries take the priority lane, the server waits
+     * for them to be acknowledged within a short time.
+     *
+     * @param message The command
+     */
+    private void dispatchCommand(Message message) {
+        String deviceName = getDeviceName(message);
+        MessageType type = message.getType();
+        boolean priority = type == MessageType.ON || type == MessageType.OFF || type == MessageType.QUERY_STATE;
+        if (!commandDispatcher.dispatch(deviceName, priority, () -> handleWebSocketMessage(message))) {
+            LOGGER.warn("Too many commands waiting for {}, refusing {}", deviceName, message);
+            acknowledge(message, false, "Too many commands waiting for " + deviceName, null);
+        }
+    }
+
+    private static String getDeviceName(Message message) {
         switch (message.getType()) {
             case ON:
-                handleOnMessage((OnMessage) message);
-                break;
+                return ((OnMessage) message).getThing();
             case OFF:
-                handleOffMessage((OffMessage) message);
-                break;
+                return ((OffMessage) message).getThing();
             case CHANGE_COLOR:
-                handleChangeColorMessage((ChangeColorMessage) message);
-                break;
+                return ((ChangeColorMessage) message).getThing();
+            case QUERY_STATE:
+                return ((QueryStateMessage) message).getThing();
             default:
-                LOGGER.error("Unknown message type: {}", message.getType());
-                break;
+                return null;
         }
     }
 
     /**
-     * To turn on the philips hue light
+     * To handle a received command, on a thread of the command dispatcher.
+     *
+     * @param message The command from the websocket server
+     */
+    private void handleWebSocketMessage(Message message) {
+        CompletableFuture<Boolean> posted;
+        try {
+            switch (message.getType()) {
+                case ON:
+                    posted = handleOnMessage((OnMessage) message);
+                    break;
+                case OFF:
+                    posted = handleOffMessage((OffMessage) message);
+                    break;
+                case CHANGE_COLOR:
+                    posted = handleChangeColorMessage((ChangeColorMessage) message);
+                    break;
+                case QUERY_STATE:
+                    handleQueryStateMessage((QueryStateMessage) message);
+                    posted = CompletableFuture.completedFuture(true);
+                    break;
+                default:
+                    LOGGER.error("Unknown message type: {}", message.getType());
+                    acknowledge(message, false, "Unknown message type " + message.getType(), null);
+                    return;
+            }
+        } catch (CommandRejectedException e) {
+            LOGGER.info("Rejected message {}: {}", message, e.getMessage());
+            acknowledge(message, false, e.getMessage(), e.getError());
+            return;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Exception while handling message {}", message, e);
+            acknowledge(message, false, e.getMessage(), null);
+            return;
+        }
+        // a command held back by the coalescer is acknowledged once it was posted or replaced by a newer one, both
+        // leave the item as the user asked last
+        posted.thenAccept(applied -> {
+            if (!applied) {
+                LOGGER.debug("Message {} was replaced by a newer command", message);
+            }
+            acknowledge(message, true, null, null);
+        });
+    }
+
+    /**
+     * To tell the server whether a command was posted. Messages without a correlation ID come from a server
+     * that does not wait for acknowledgements and are not answered.
+     *
+     * @param message The handled message
+     * @param success Whether the command was posted
+     * @param reason Why the command was not posted, null on success
+     * @param error The error code of the reason if there is one, see {@link AckMessage}
+     */
+    private void acknowledge(Message message, boolean success, String reason, String error) {
+        Session current = session;
+        WebSocketHandler handler = webSocketHandler;
+        if (message.getCorrelationId() == null || current == null || handler == null) {
+            return;
+        }
+        try {
+            AckMessage ack = new AckMessage(message.getCorrelationId(), success, reason);
+            ack.setError(error);
+            handler.sendMessage(ack, current);
+        } catch (IOException e) {
+            LOGGER.warn("Exception while acknowledging message {}", message, e);
+        }
+    }
+
+    /**
+     * To turn on the items named by the message
      *
      * @param message An {@link OnMessage}
+     * @return a future that tells whether the command was posted to all items
+     * @throws CommandRejectedException If the thing can not be resolved to an item
      */
-    private void handleOnMessage(OnMessage message) {
+    private CompletableFuture<Boolean> handleOnMessage(OnMessage message) throws CommandRejectedException {
         LOGGER.info("Handling on message for thing {}", message.getThing());
-        eventPublisher.post(ItemEventFactory.createCommandEvent(HUE_LIGHT_ID, OnOffType.ON));
+        return postCommand(message.getThing(), OnOffType.ON);
     }
 
     /**
-     * To turn off the philips hue light
+     * To turn off the items named by the message
      *
      * @param message An {@link OffMessage}
+     * @return a future that tells whether the command was posted to all items
+     * @throws CommandRejectedException If the thing can not be resolved to an item
      */
-    private void handleOffMessage(OffMessage message) {
+    private CompletableFuture<Boolean> handleOffMessage(OffMessage message) throws CommandRejectedException {
         LOGGER.info("Handling off message for thing {}", message.getThing());
-        eventPublisher.post(ItemEventFactory.createCommandEvent(HUE_LIGHT_ID, OnOffType.OFF));
+        return postCommand(message.getThing(), OnOffType.OFF);
     }
 
     /**
-     * To change the color of the philips hue light
+     * To change the color of the items named by the message. The hsb-value sent by the server is used as it is,
+     * unless an item has a gamut, then the color is moved into the gamut, once per color and gamut.
      *
      * @param message A {@link ChangeColorMessage}
+     * @return a future that tells whether the color was posted to all items
+     * @throws CommandRejectedException If the thing can not be resolved to an item
      */
-    private void handleChangeColorMessage(ChangeColorMessage message) {
+    private CompletableFuture<Boolean> handleChangeColorMessage(ChangeColorMessage message)
+            throws CommandRejectedException {
         LOGGER.info("Handling change color message for thing {}, changing color to {}", message.getThing(),
                 message.getColor() + ", rgb=[" + message.getRedProportion() + ',' + message.getGreenProportion() + ','
                         + message.getBlueProportion() + "]");
-        eventPublisher.post(ItemEventFactory.createCommandEvent(HUE_LIGHT_ID, HSBType
-                .fromRGB(message.getRedProportion(), message.getGreenProportion(), message.getBlueProportion())));
+        HSBType sent = null;
+        if (message.getHue() != null && message.getSaturation() != null && message.getBrightness() != null) {
+            sent = new HSBType(new DecimalType(message.getHue()), new PercentType(message.getSaturation()),
+                    new PercentType(message.getBrightness()));
+        }
+        List<CompletableFuture<Boolean>> posted = new ArrayList<>();
+        for (String itemName : resolve(message.getThing(), HSBType.class)) {
+            // the hsb-value from the server is only right for bulbs that can show every color
+            ColorGamut gamut = itemIndex.getGamut(itemName);
+            HSBType color = sent != null && gamut == null ? sent
+                    : colorCache.get(message.getRedProportion(), message.getGreenProportion(),
+                            message.getBlueProportion(), gamut);
+            posted.add(commandCoalescer.post(itemName, color));
+        }
+        return allPosted(posted);
+    }
+
+    /**
+     * To answer a state query with a report of the state, sent before the acknowledgement on the same connection.
+     *
+     * @param message A {@link QueryStateMessage}
+     * @throws CommandRejectedException If the thing can not be resolved to an item or its state is unknown
+     */
+    private void handleQueryStateMessage(QueryStateMessage message) throws CommandRejectedException {
+        LOGGER.info("Handling query state message for thing {}", message.getThing());
+        String state = itemIndex.getState(message.getThing());
+        if (state == null) {
+            if (!itemIndex.isKnown(message.getThing())) {
+                throw new CommandRejectedException(AckMessage.ERROR_UNKNOWN_DEVICE,
+                        "No item called " + message.getThing());
+            }
+            throw new CommandRejectedException(null, "The state of " + message.getThing() + " is unknown");
+        }
+
+        Session current = session;
+        WebSocketHandler handler = webSocketHandler;
+        if (current == null || handler == null) {
+            return;
+        }
+        StateReportMessage report = new StateReportMessage(false, Collections.singletonMap(message.getThing(), state));
+        report.setCorrelationId(message.getCorrelationId());
+        try {
+            handler.sendMessage(report, current);
+        } catch (IOException e) {
+            throw new CommandRejectedException(null, "Unable to send the state: " + e.getMessage());
+        }
+    }
+
+    /**
+     * To post a command to every item the spoken device name stands for. Bursts of commands for an item are thinned
+     * out by the {@link CommandCoalescer} if a coalesce window is configured.
+     *
+     * @param deviceName The spoken device name
+     * @param command The command
+     * @return a future that tells whether the command was posted to all items
+     * @throws CommandRejectedException If no item is known by the name or none accepts the command
+     */
+    private CompletableFuture<Boolean> postCommand(String deviceName, Command command)
+            throws CommandRejectedException {
+        List<CompletableFuture<Boolean>> posted = new ArrayList<>();
+        for (String itemName : resolve(deviceName, command.getClass())) {
+            posted.add(commandCoalescer.post(itemName, command));
+        }
+        return allPosted(posted);
+    }
+
+    /**
+     * To combine the results of posting a command to several items.
+     *
+     * @param posted The futures returned by the {@link CommandCoalescer}
+     * @return a future that completes with true once every command was posted, or with false if one was dropped
+     */
+    private static CompletableFuture<Boolean> allPosted(List<CompletableFuture<Boolean>> posted) {
+        return CompletableFuture.allOf(posted.toArray(new CompletableFuture<?>[posted.size()]))
+                .thenApply(ignored -> posted.stream().allMatch(CompletableFuture::join));
+    }
+
+    /**
+     * To find the items a spoken device name stands for.
+     *
+     * @param deviceName The spoken device name
+     * @param commandType The type of the command to be posted
+     * @return the names of the items accepting the command, never empty
+     * @throws CommandRejectedException If no item is known by the name or none accepts the command
+     */
+    private Set<String> resolve(String deviceName, Class<? extends Command> commandType)
+            throws CommandRejectedException {
+        Set<String> itemNames = itemIndex.resolve(deviceName, commandType);
+        if (itemNames.isEmpty()) {
+            if (itemIndex.isKnown(deviceName)) {
+                throw new CommandRejectedException(AckMessage.ERROR_UNSUPPORTED_COMMAND,
+                        "No item called " + deviceName + " accepts " + commandType.getSimpleName());
+            }
+            throw new CommandRejectedException(AckMessage.ERROR_UNKNOWN_DEVICE, "No item called " + deviceName);
+        }
+        return itemNames;
     }
 
 }
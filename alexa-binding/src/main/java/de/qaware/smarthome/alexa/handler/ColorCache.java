@@ -0,0 +1,65 @@
+package de.qaware.smarthome.alexa.handler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.smarthome.core.library.types.HSBType;
+
+/**
+ * The {@link ColorCache} keeps the {@link HSBType} of the colors converted lately, so a color that is asked for again
+ * is neither converted nor moved into a gamut a second time. Alexa knows less than a hundred colors, so a small cache
+ * holds all of them. {@link HSBType} is immutable, the same instance is posted to every item.
+ *
+ * @author Andreas Mayer
+ */
+public class ColorCache {
+
+    private final Map<Integer, HSBType> colors;
+
+    /**
+     * Default-Constructor
+     *
+     * @param maxSize the number of colors kept, the least recently used one is dropped first
+     */
+    public ColorCache(final int maxSize) {
+        this.colors = new LinkedHashMap<Integer, HSBType>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, HSBType> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * To get the color of an rgb-value, as shown by a bulb with the given gamut.
+     *
+     * @param red The red proportion, 0 to 255
+     * @param green The green proportion, 0 to 255
+     * @param blue The blue proportion, 0 to 255
+     * @param gamut The gamut of the bulb, or null to take the color as it is
+     * @return the color
+     */
+    public HSBType get(int red, int green, int blue, ColorGamut gamut) {
+        int rgb = (clip(red) << 16) | (clip(green) << 8) | clip(blue);
+        // the gamut goes to the otherwise unused high byte of the key
+        Integer key = (gamut != null ? gamut.ordinal() + 1 : 0) << 24 | rgb;
+        synchronized (colors) {
+            HSBType color = colors.get(key);
+            if (color != null) {
+                return color;
+            }
+        }
+        int shown = gamut != null ? gamut.clamp(rgb) : rgb;
+        HSBType color = HSBType.fromRGB((shown >> 16) & 0xFF, (shown >> 8) & 0xFF, shown & 0xFF);
+        synchronized (colors) {
+            colors.put(key, color);
+        }
+        return color;
+    }
+
+    private static int clip(int proportion) {
+        return Math.max(0, Math.min(255, proportion));
+    }
+}
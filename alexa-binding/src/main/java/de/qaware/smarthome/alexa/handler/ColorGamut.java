@@ -0,0 +1,144 @@
+package de.qaware.smarthome.alexa.handler;
+
+import static de.qaware.smarthome.alexa.AlexaBindingConstants.TAG_GAMUT;
+
+import java.util.Set;
+
+/**
+ * The {@link ColorGamut} is the triangle of CIE xy colors a Philips Hue bulb can show. A color outside the triangle
+ * is moved to the nearest color on its edge, with the same luminance, so the color posted to the item is the one the
+ * bulb actually shows. An item is given its gamut by a tag like "alexa:gamut=B".
+ *
+ * @author Andreas Mayer
+ */
+public enum ColorGamut {
+    A(0.704, 0.296, 0.2151, 0.7106, 0.138, 0.08),
+    B(0.675, 0.322, 0.409, 0.518, 0.167, 0.04),
+    C(0.692, 0.308, 0.17, 0.7, 0.153, 0.048);
+
+    private final double redX;
+    private final double redY;
+    private final double greenX;
+    private final double greenY;
+    private final double blueX;
+    private final double blueY;
+
+    ColorGamut(double redX, double redY, double greenX, double greenY, double blueX, double blueY) {
+        this.redX = redX;
+        this.redY = redY;
+        this.greenX = greenX;
+        this.greenY = greenY;
+        this.blueX = blueX;
+        this.blueY = blueY;
+    }
+
+    /**
+     * To find the gamut given to an item by its tags.
+     *
+     * @param tags The tags of the item
+     * @return the gamut, or null if the item has none
+     */
+    public static ColorGamut fromTags(Set<String> tags) {
+        for (String tag : tags) {
+            if (tag.regionMatches(true, 0, TAG_GAMUT, 0, TAG_GAMUT.length())) {
+                String name = tag.substring(TAG_GAMUT.length()).trim();
+                for (ColorGamut gamut : values()) {
+                    if (gamut.name().equalsIgnoreCase(name)) {
+                        return gamut;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * To move a color into the gamut, the way the Hue bridge does.
+     *
+     * @param rgb The color as packed 0xRRGGBB
+     * @return the color the bulb shows as packed 0xRRGGBB, the same color if it is inside the gamut
+     */
+    public int clamp(int rgb) {
+        double red = toLinear((rgb >> 16) & 0xFF);
+        double green = toLinear((rgb >> 8) & 0xFF);
+        double blue = toLinear(rgb & 0xFF);
+
+        double bigX = red * 0.664511 + green * 0.154324 + blue * 0.162028;
+        double bigY = red * 0.283881 + green * 0.668433 + blue * 0.047685;
+        double bigZ = red * 0.000088 + green * 0.072310 + blue * 0.986039;
+        double sum = bigX + bigY + bigZ;
+        if (sum <= 0) {
+            return rgb;
+        }
+        double x = bigX / sum;
+        double y = bigY / sum;
+        if (contains(x, y)) {
+            return rgb;
+        }
+
+        double[] nearest = nearest(x, y, redX, redY, greenX, greenY);
+        double[] candidate = nearest(x, y, greenX, greenY, blueX, blueY);
+        if (distance(x, y, candidate) < distance(x, y, nearest)) {
+            nearest = candidate;
+        }
+        candidate = nearest(x, y, blueX, blueY, redX, redY);
+        if (distance(x, y, candidate) < distance(x, y, nearest)) {
+            nearest = candidate;
+        }
+        x = nearest[0];
+        y = nearest[1];
+
+        bigX = bigY / y * x;
+        bigZ = bigY / y * (1 - x - y);
+        red = bigX * 1.656492 - bigY * 0.354851 - bigZ * 0.255038;
+        green = -bigX * 0.707196 + bigY * 1.655397 + bigZ * 0.036152;
+        blue = bigX * 0.051713 - bigY * 0.121364 + bigZ * 1.011530;
+        double max = Math.max(red, Math.max(green, blue));
+        if (max > 1) {
+            red /= max;
+            green /= max;
+            blue /= max;
+        }
+        return toGamma(red) << 16 | toGamma(green) << 8 | toGamma(blue);
+    }
+
+    private boolean contains(double x, double y) {
+        double v1x = greenX - redX;
+        double v1y = greenY - redY;
+        double v2x = blueX - redX;
+        double v2y = blueY - redY;
+        double qx = x - redX;
+        double qy = y - redY;
+        double cross = v1x * v2y - v1y * v2x;
+        double s = (qx * v2y - qy * v2x) / cross;
+        double t = (v1x * qy - v1y * qx) / cross;
+        return s >= 0 && t >= 0 && s + t <= 1;
+    }
+
+    /**
+     * To find the point on the edge from a to b nearest to x, y.
+     */
+    private static double[] nearest(double x, double y, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double t = ((x - ax) * dx + (y - ay) * dy) / (dx * dx + dy * dy);
+        t = Math.max(0, Math.min(1, t));
+        return new double[] { ax + t * dx, ay + t * dy };
+    }
+
+    private static double distance(double x, double y, double[] point) {
+        double dx = x - point[0];
+        double dy = y - point[1];
+        return dx * dx + dy * dy;
+    }
+
+    private static double toLinear(int value) {
+        double v = value / 255.0;
+        return v > 0.04045 ? Math.pow((v + 0.055) / 1.055, 2.4) : v / 12.92;
+    }
+
+    private static int toGamma(double value) {
+        double v = value <= 0.0031308 ? 12.92 * value : 1.055 * Math.pow(value, 1 / 2.4) - 0.055;
+        return (int) Math.round(Math.max(0, Math.min(1, v)) * 255);
+    }
+}
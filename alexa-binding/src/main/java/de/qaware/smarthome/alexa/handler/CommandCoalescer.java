@@ -0,0 +1,155 @@
+package de.qaware.smarthome.alexa.handler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.types.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link CommandCoalescer} thins out bursts of commands for the same item, like a user going through several
+ * colors, so a rate limited bridge behind the item is not flooded.
+ *
+ * The first command for an item is posted right away and opens a window. Commands within the window are held back and
+ * posted when the window ends, which opens the next window. A single command is therefore never delayed. An item keeps
+ * the newest on/off command and the newest other command, like a color, apart: a color replaces the pending color, an
+ * on/off the pending on/off, and only an "off" also drops the pending color. The on/off is posted before the color,
+ * so "off" followed by "red" leaves the lamp red, and "red" followed by "off" leaves it off.
+ *
+ * Every command gets a future that tells whether it was posted or dropped in favour of a newer one.
+ *
+ * @author Andreas Mayer
+ */
+public class CommandCoalescer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandCoalescer.class);
+
+    private final long windowMs;
+    private final ScheduledExecutorService scheduler;
+    private final BiConsumer<String, Command> sink;
+    private final Map<String, Window> windows = new HashMap<>();
+
+    /**
+     * Default-Constructor
+     *
+     * @param windowMs the length of a window, 0 posts every command right away
+     * @param scheduler the scheduler that ends the windows
+     * @param sink called with the item name and the command to post
+     */
+    public CommandCoalescer(long windowMs, ScheduledExecutorService scheduler, BiConsumer<String, Command> sink) {
+        this.windowMs = windowMs;
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    /**
+     * To post a command to an item, right away if there is no window open for the item, else when the window ends
+     * unless a newer command replaces it.
+     *
+     * @param itemName the name of the item
+     * @param command the command
+     * @return a future that completes with true once the command was posted, or with false if it was dropped
+     */
+    public CompletableFuture<Boolean> post(String itemName, Command command) {
+        if (windowMs <= 0) {
+            sink.accept(itemName, command);
+            return CompletableFuture.completedFuture(true);
+        }
+        // the sink is called under the lock, so a window that ends meanwhile can not overtake the leading command
+        synchronized (this) {
+            Window window = windows.get(itemName);
+            if (window == null) {
+                windows.put(itemName, new Window());
+                scheduleEnd(itemName);
+                sink.accept(itemName, command);
+                return CompletableFuture.completedFuture(true);
+            }
+            Pending pending = new Pending(command);
+            if (command instanceof OnOffType) {
+                drop(itemName, window.onOff, command);
+                window.onOff = pending;
+                if (command == OnOffType.OFF) {
+                    drop(itemName, window.other, command);
+                    window.other = null;
+                }
+            } else {
+                drop(itemName, window.other, command);
+                window.other = pending;
+            }
+            return pending.posted;
+        }
+    }
+
+    /**
+     * To drop the commands still waiting for their window to end.
+     */
+    public synchronized void clear() {
+        for (Window window : windows.values()) {
+            if (window.onOff != null) {
+                window.onOff.posted.complete(false);
+            }
+            if (window.other != null) {
+                window.other.posted.complete(false);
+            }
+        }
+        windows.clear();
+    }
+
+    private static void drop(String itemName, Pending pending, Command replacement) {
+        if (pending != null) {
+            LOGGER.debug("Dropping command {} for {}, replaced by {}", pending.command, itemName, replacement);
+            pending.posted.complete(false);
+        }
+    }
+
+    private void scheduleEnd(String itemName) {
+        scheduler.schedule(() -> endWindow(itemName), windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void endWindow(String itemName) {
+        Window window = windows.get(itemName);
+        if (window == null) {
+            return;
+        }
+        if (window.onOff == null && window.other == null) {
+            windows.remove(itemName);
+            return;
+        }
+        Pending onOff = window.onOff;
+        Pending other = window.other;
+        window.onOff = null;
+        window.other = null;
+        scheduleEnd(itemName);
+        for (Pending pending : new Pending[] { onOff, other }) {
+            if (pending != null) {
+                sink.accept(itemName, pending.command);
+                pending.posted.complete(true);
+            }
+        }
+    }
+
+    /**
+     * An open window of an item with the newest commands not posted yet.
+     */
+    private static class Window {
+        private Pending onOff;
+        private Pending other;
+    }
+
+    /**
+     * A command waiting for its window to end.
+     */
+    private static class Pending {
+        private final Command command;
+        private final CompletableFuture<Boolean> posted = new CompletableFuture<>();
+
+        Pending(Command command) {
+            this.command = command;
+        }
+    }
+}
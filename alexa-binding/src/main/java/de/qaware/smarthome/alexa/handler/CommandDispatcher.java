@@ -0,0 +1,198 @@
+package de.qaware.smarthome.alexa.handler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link CommandDispatcher} runs the commands received from the server off the websocket threads, so a slow event
+ * bus does not hold up reading the following frames and answering pings.
+ *
+ * The commands are striped by device: all commands for one device run one after another on the same worker, commands
+ * for different devices run in parallel. Every stripe has two bounded lanes. On/off commands take the priority lane
+ * and overtake the color changes still waiting in the normal lane for other devices, but never those for their own
+ * device, so "red" followed by "off" leaves the lamp off. The order within each lane is kept.
+ *
+ * The number of waiting commands and the time they waited are kept for monitoring.
+ *
+ * @author Andreas Mayer
+ */
+public class CommandDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandDispatcher.class);
+
+    private final List<Stripe> stripes;
+    private final int capacity;
+
+    private volatile boolean running = true;
+    private long dispatched;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    /**
+     * Default-Constructor
+     *
+     * @param stripeCount the number of workers, each with its own lanes
+     * @param capacity the number of commands each lane of a stripe holds, further commands are refused
+     */
+    public CommandDispatcher(int stripeCount, int capacity) {
+        this.capacity = capacity;
+        this.stripes = new ArrayList<>(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            Stripe stripe = new Stripe();
+            Thread worker = new Thread(stripe::run, "AlexaCommand-" + (i + 1));
+            worker.setDaemon(true);
+            stripe.worker = worker;
+            stripes.add(stripe);
+            worker.start();
+        }
+    }
+
+    /**
+     * To queue a command behind the commands waiting for the same device.
+     *
+     * @param deviceName the spoken device name the command is for
+     * @param priority true for the priority lane
+     * @param command the command
+     * @return false if the lane is full or the dispatcher is shut down, the command is not run then
+     */
+    public boolean dispatch(String deviceName, boolean priority, Runnable command) {
+        if (!running) {
+            return false;
+        }
+        String key = deviceName != null ? ItemIndex.normalize(deviceName) : "";
+        // spreads the bits of the hash, so similar names do not pile up on one stripe
+        int hash = key.hashCode();
+        Stripe stripe = stripes.get(((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % stripes.size());
+        return stripe.offer(new Task(key, command, System.nanoTime()), priority);
+    }
+
+    /**
+     * @return the number of commands waiting in all lanes
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Stripe stripe : stripes) {
+            depth += stripe.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return the average time in milliseconds a command waited before it ran
+     */
+    public synchronized long getAverageWaitMs() {
+        return dispatched == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / dispatched);
+    }
+
+    /**
+     * @return the longest time in milliseconds a command waited before it ran
+     */
+    public synchronized long getMaxWaitMs() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    /**
+     * To stop the workers. Waiting commands are dropped, a command in progress is finished.
+     */
+    public void shutdown() {
+        running = false;
+        for (Stripe stripe : stripes) {
+            stripe.worker.interrupt();
+        }
+    }
+
+    private synchronized void recordWait(long waitNanos) {
+        dispatched++;
+        totalWaitNanos += waitNanos;
+        maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+    }
+
+    /**
+     * The two lanes of a worker.
+     */
+    private class Stripe {
+        private final Queue<Task> priorityLane = new ArrayDeque<>();
+        private final Queue<Task> normalLane = new ArrayDeque<>();
+        private Thread worker;
+        private long sequence;
+
+        synchronized boolean offer(Task task, boolean priority) {
+            Queue<Task> lane = priority ? priorityLane : normalLane;
+            if (lane.size() >= capacity) {
+                return false;
+            }
+            task.sequence = sequence++;
+            lane.add(task);
+            notifyAll();
+            return true;
+        }
+
+        synchronized int size() {
+            return priorityLane.size() + normalLane.size();
+        }
+
+        private synchronized Task take() throws InterruptedException {
+            while (priorityLane.isEmpty() && normalLane.isEmpty()) {
+                wait();
+            }
+            Task next = priorityLane.peek();
+            if (next == null) {
+                return normalLane.poll();
+            }
+            // the commands queued earlier for the same device run first
+            for (Iterator<Task> tasks = normalLane.iterator(); tasks.hasNext();) {
+                Task task = tasks.next();
+                if (task.sequence > next.sequence) {
+                    break;
+                }
+                if (task.key.equals(next.key)) {
+                    tasks.remove();
+                    return task;
+                }
+            }
+            return priorityLane.poll();
+        }
+
+        void run() {
+            while (running) {
+                Task task;
+                try {
+                    task = take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long waitNanos = System.nanoTime() - task.queuedAt;
+                recordWait(waitNanos);
+                LOGGER.debug("Running command after waiting {} ms", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                try {
+                    task.command.run();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Exception while running command", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A queued command together with its device and the time it was queued.
+     */
+    private static class Task {
+        private final String key;
+        private final Runnable command;
+        private final long queuedAt;
+        private long sequence;
+
+        Task(String key, Runnable command, long queuedAt) {
+            this.key = key;
+            this.command = command;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package de.qaware.smarthome.alexa.handler;
+
+import de.qaware.smarthome.alexa.websocket.protocol.AckMessage;
+
+/**
+ * Thrown if a command can not be executed for a reason the server can explain to the user.
+ *
+ * @author Andreas Mayer
+ */
+public class CommandRejectedException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String error;
+
+    /**
+     * @param error The error code, one of the ERROR constants of {@link AckMessage}
+     * @param message Why the command was rejected
+     */
+    public CommandRejectedException(String error, String message) {
+        super(message);
+        this.error = error;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
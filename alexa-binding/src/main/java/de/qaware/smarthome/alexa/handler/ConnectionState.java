@@ -0,0 +1,17 @@
+package de.qaware.smarthome.alexa.handler;
+
+/**
+ * The state of the websocket connection of an {@link AlexaHandler}.
+ *
+ * @author Andreas Mayer
+ */
+public enum ConnectionState {
+    /** A connection attempt is in progress. */
+    CONNECTING,
+    /** The connection is established. */
+    ONLINE,
+    /** The connection was lost, a reconnect is scheduled. */
+    BACKOFF,
+    /** The handler was disposed, no further connection attempts are made. */
+    DISPOSED
+}
@@ -0,0 +1,390 @@
+package de.qaware.smarthome.alexa.handler;
+
+import static de.qaware.smarthome.alexa.AlexaBindingConstants.TAG_PREFIX;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import org.eclipse.smarthome.core.common.registry.RegistryChangeListener;
+import org.eclipse.smarthome.core.items.Item;
+import org.eclipse.smarthome.core.items.ItemRegistry;
+import org.eclipse.smarthome.core.library.types.HSBType;
+import org.eclipse.smarthome.core.library.types.PercentType;
+import org.eclipse.smarthome.core.types.Command;
+import org.eclipse.smarthome.core.types.State;
+import org.eclipse.smarthome.core.types.UnDefType;
+
+/**
+ * The {@link ItemIndex} resolves spoken device names to item names. Labels, tags and item names are normalized once
+ * and indexed, so resolving a name is a map lookup instead of a scan of the item registry. The index follows the
+ * registry through its change events.
+ *
+ * A label names a single device. A tag can name a group of devices, like "kitchen lights", and resolves to all
+ * items carrying it. Labels win over item names, and item names win over tags, as long as one of the items found
+ * accepts the command.
+ *
+ * Listeners are told about every change, so the device names can be pushed to the server. The index also keeps the
+ * last state of every item, so the server can be told about state changes and asked for a state.
+ *
+ * @author Andreas Mayer
+ */
+public class ItemIndex implements RegistryChangeListener<Item> {
+
+    private final Map<String, Item> items = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byLabel = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byName = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byTag = new ConcurrentHashMap<>();
+    private final Map<String, String> states = new ConcurrentHashMap<>();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private final List<BiConsumer<String, String>> stateListeners = new CopyOnWriteArrayList<>();
+
+    private ItemRegistry itemRegistry;
+
+    /**
+     * To start following the item registry and to index all of its items.
+     *
+     * @param itemRegistry The item registry
+     */
+    public synchronized void open(ItemRegistry itemRegistry) {
+        close();
+        this.itemRegistry = itemRegistry;
+        // listen first, so no item added while indexing is missed
+        itemRegistry.addRegistryChangeListener(this);
+        for (Item item : itemRegistry.getItems()) {
+            added(item);
+        }
+    }
+
+    /**
+     * To stop following the item registry and to forget all items.
+     */
+    public synchronized void close() {
+        if (itemRegistry != null) {
+            itemRegistry.removeRegistryChangeListener(this);
+            itemRegistry = null;
+        }
+        items.clear();
+        byLabel.clear();
+        byName.clear();
+        byTag.clear();
+        states.clear();
+    }
+
+    /**
+     * To find the items a spoken device name stands for.
+     *
+     * @param deviceName The spoken device name
+     * @param commandType The command to be sent, items that do not accept it are left out
+     * @return the names of the matching items, empty if there are none
+     */
+    public Set<String> resolve(String deviceName, Class<? extends Command> commandType) {
+        if (deviceName == null) {
+            return Collections.emptySet();
+        }
+        String key = normalize(deviceName);
+        // a label of a sensor must not hide the switch carrying the same name or tag
+        Set<String> result = accepting(byLabel.get(key), commandType);
+        if (result.isEmpty()) {
+            result = accepting(byName.get(key), commandType);
+        }
+        if (result.isEmpty()) {
+            result = accepting(byTag.get(key), commandType);
+        }
+        return result;
+    }
+
+    private Set<String> accepting(Set<String> candidates, Class<? extends Command> commandType) {
+        if (candidates == null) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (String itemName : candidates) {
+            Item item = items.get(itemName);
+            if (item != null && item.getAcceptedCommandTypes().contains(commandType)) {
+                result.add(itemName);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * To tell whether any item is known by a spoken device name, regardless of the commands it accepts.
+     *
+     * @param deviceName The spoken device name
+     * @return true if the name is known
+     */
+    public boolean isKnown(String deviceName) {
+        if (deviceName == null) {
+            return false;
+        }
+        String key = normalize(deviceName);
+        return byLabel.containsKey(key) || byName.containsKey(key) || byTag.containsKey(key);
+    }
+
+    /**
+     * To find the gamut of the bulb behind an item, given by a tag like "alexa:gamut=B".
+     *
+     * @param itemName The name of the item
+     * @return the gamut, or null if the item has none or is not known
+     */
+    public ColorGamut getGamut(String itemName) {
+        Item item = items.get(itemName);
+        Set<String> tags = item != null ? item.getTags() : null;
+        return tags != null ? ColorGamut.fromTags(tags) : null;
+    }
+
+    /**
+     * To collect the names the devices can be spoken by: all labels, item names and tags, the same names
+     * {@link #resolve(String, Class)} knows.
+     *
+     * @return the device names, without duplicates
+     */
+    public List<String> getDeviceNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (Item item : items.values()) {
+            if (item.getLabel() != null && !item.getLabel().isEmpty()) {
+                names.add(item.getLabel());
+            }
+            names.add(item.getName());
+            names.addAll(tags(item));
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * To look up the state of the items a spoken device name stands for.
+     *
+     * @param deviceName The spoken device name
+     * @return the state, or null if it is unknown or the items of a tag differ in their state
+     */
+    public String getState(String deviceName) {
+        if (deviceName == null) {
+            return null;
+        }
+        String key = normalize(deviceName);
+        Set<String> candidates = byLabel.get(key);
+        if (candidates == null) {
+            candidates = byName.get(key);
+        }
+        if (candidates == null) {
+            candidates = byTag.get(key);
+        }
+        if (candidates == null) {
+            return null;
+        }
+
+        String state = null;
+        for (String itemName : candidates) {
+            String itemState = states.get(itemName);
+            if (itemState == null || (state != null && !state.equals(itemState))) {
+                return null;
+            }
+            state = itemState;
+        }
+        return state;
+    }
+
+    /**
+     * To collect the known states of all items by the name the server knows them by: the label, or the item name if
+     * there is no label.
+     *
+     * @return the states by device name
+     */
+    public Map<String, String> getStates() {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Item item : items.values()) {
+            String state = states.get(item.getName());
+            if (state != null) {
+                result.put(deviceName(item), state);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * To take over the new state of an item and to tell the state listeners about it.
+     *
+     * @param itemName The name of the item
+     * @param state The new state
+     */
+    public void stateChanged(String itemName, State state) {
+        Item item = items.get(itemName);
+        if (item == null) {
+            return;
+        }
+        String value = toString(state);
+        if (value == null ? states.remove(itemName) == null : value.equals(states.put(itemName, value))) {
+            return;
+        }
+        String deviceName = deviceName(item);
+        for (BiConsumer<String, String> listener : stateListeners) {
+            listener.accept(deviceName, value);
+        }
+    }
+
+    /**
+     * @param listener Called with the device name and the new state after the state of an item changed, the state is
+     *            null if it became undefined
+     */
+    public void addStateListener(BiConsumer<String, String> listener) {
+        stateListeners.add(listener);
+    }
+
+    /**
+     * @param listener A listener added before
+     */
+    public void removeStateListener(BiConsumer<String, String> listener) {
+        stateListeners.remove(listener);
+    }
+
+    /**
+     * @param listener Called after an item was added, removed or updated
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * @param listener A listener added before
+     */
+    public void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
+    @Override
+    public void added(Item item) {
+        index(item);
+        fireChanged();
+    }
+
+    @Override
+    public void removed(Item item) {
+        unindex(item);
+        fireChanged();
+    }
+
+    @Override
+    public void updated(Item oldItem, Item item) {
+        unindex(oldItem);
+        index(item);
+        fireChanged();
+    }
+
+    private void index(Item item) {
+        items.put(item.getName(), item);
+        String state = toString(item.getState());
+        if (state != null) {
+            states.put(item.getName(), state);
+        }
+        index(byLabel, item.getLabel(), item.getName());
+        index(byName, item.getName(), item.getName());
+        for (String tag : tags(item)) {
+            index(byTag, tag, item.getName());
+        }
+    }
+
+    private void unindex(Item item) {
+        if (items.remove(item.getName(), item)) {
+            states.remove(item.getName());
+        }
+        unindex(byLabel, item.getLabel(), item.getName());
+        unindex(byName, item.getName(), item.getName());
+        for (String tag : tags(item)) {
+            unindex(byTag, tag, item.getName());
+        }
+    }
+
+    private void fireChanged() {
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * To bring a spoken name or a label to the form used as key: lower case, without punctuation, words separated
+     * by single spaces, and without a leading "the".
+     *
+     * @param name The name
+     * @return the key
+     */
+    static String normalize(String name) {
+        StringBuilder key = new StringBuilder(name.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                pendingSpace = key.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                key.append(' ');
+                pendingSpace = false;
+            }
+            key.append(Character.toLowerCase(c));
+        }
+        String normalized = key.toString();
+        return normalized.startsWith("the ") ? normalized.substring(4) : normalized;
+    }
+
+    private static String deviceName(Item item) {
+        return item.getLabel() != null && !item.getLabel().isEmpty() ? item.getLabel() : item.getName();
+    }
+
+    private static String toString(State state) {
+        if (state == null || state instanceof UnDefType) {
+            return null;
+        }
+        // a percentage is told apart from other numbers, like a temperature, by its unit
+        return state instanceof PercentType && !(state instanceof HSBType) ? state + "%" : state.toString();
+    }
+
+    /**
+     * @return the tags naming devices, without the tags configuring the binding
+     */
+    private static Set<String> tags(Item item) {
+        Set<String> tags = item.getTags();
+        if (tags == null) {
+            return Collections.<String> emptySet();
+        }
+        for (String tag : tags) {
+            if (tag.startsWith(TAG_PREFIX)) {
+                Set<String> names = new LinkedHashSet<>(tags);
+                names.removeIf(name -> name.startsWith(TAG_PREFIX));
+                return names;
+            }
+        }
+        return tags;
+    }
+
+    private static void index(Map<String, Set<String>> index, String name, String itemName) {
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        // the sets are replaced, never changed, so a lookup can iterate them without locking
+        index.compute(normalize(name), (key, itemNames) -> {
+            Set<String> updated = itemNames == null ? new HashSet<>() : new HashSet<>(itemNames);
+            updated.add(itemName);
+            return Collections.unmodifiableSet(updated);
+        });
+    }
+
+    private static void unindex(Map<String, Set<String>> index, String name, String itemName) {
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        index.computeIfPresent(normalize(name), (key, itemNames) -> {
+            Set<String> updated = new HashSet<>(itemNames);
+            updated.remove(itemName);
+            return updated.isEmpty() ? null : Collections.unmodifiableSet(updated);
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package de.qaware.smarthome.alexa.handler;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter for reconnect attempts. The delay doubles with every failed attempt up to a
+ * maximum. Only half of it is fixed, the other half is random, so many gateways that lost the connection at the same
+ * time do not all come back at the same moment. A delay the server asked for is used instead, also with jitter.
+ *
+ * @author Andreas Mayer
+ */
+public class ReconnectBackoff {
+
+    private final long initialDelayMs;
+    private final long maxDelayMs;
+    private int attempts;
+
+    /**
+     * Default-Constructor
+     *
+     * @param initialDelayMs the delay before the first reconnect attempt
+     * @param maxDelayMs the upper bound for the delay
+     */
+    public ReconnectBackoff(long initialDelayMs, long maxDelayMs) {
+        this.initialDelayMs = initialDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * @return the delay in milliseconds before the next attempt
+     */
+    public synchronized long nextDelay() {
+        long delay = Math.min(maxDelayMs, initialDelayMs << Math.min(attempts, 30));
+        attempts++;
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * To get the delay before reconnecting when the server asked for one, because it is shutting down or too busy.
+     * Up to half of the requested delay is added at random, at least up to the initial delay, so the bindings told the
+     * same delay do not come back at the same moment. The exponential backoff is not advanced.
+     *
+     * @param requestedDelayMs the delay the server asked for
+     * @return the delay in milliseconds before the next attempt
+     */
+    public long requestedDelay(long requestedDelayMs) {
+        long jitter = Math.max(requestedDelayMs / 2, initialDelayMs);
+        return Math.max(requestedDelayMs, 0) + ThreadLocalRandom.current().nextLong(jitter + 1);
+    }
+
+    /**
+     * To start over after a successful connection.
+     */
+    public synchronized void reset() {
+        attempts = 0;
+    }
+}
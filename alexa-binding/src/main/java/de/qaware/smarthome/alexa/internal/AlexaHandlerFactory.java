@@ -5,29 +5,86 @@ import static de.qaware.smarthome.alexa.AlexaBindingConstants.THING_TYPE_ALEXA;
 import java.util.Collections;
 import java.util.Set;
 
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.eclipse.smarthome.core.events.Event;
+import org.eclipse.smarthome.core.events.EventFilter;
 import org.eclipse.smarthome.core.events.EventPublisher;
+import org.eclipse.smarthome.core.events.EventSubscriber;
+import org.eclipse.smarthome.core.items.ItemRegistry;
+import org.eclipse.smarthome.core.items.events.ItemStateChangedEvent;
 import org.eclipse.smarthome.core.thing.Thing;
 import org.eclipse.smarthome.core.thing.ThingTypeUID;
 import org.eclipse.smarthome.core.thing.binding.BaseThingHandlerFactory;
 import org.eclipse.smarthome.core.thing.binding.ThingHandler;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import de.qaware.smarthome.alexa.handler.AlexaHandler;;
+import de.qaware.smarthome.alexa.handler.AlexaHandler;
+import de.qaware.smarthome.alexa.handler.CommandDispatcher;
+import de.qaware.smarthome.alexa.handler.ItemIndex;
+import de.qaware.smarthome.alexa.websocket.HeartbeatScheduler;
 
 /**
  * The {@link AlexaHandlerFactory} is responsible for creating things and thing
- * handlers.
+ * handlers. It also passes the state changes of the items to the {@link ItemIndex}.
  *
  * @author Andreas Mayer
  */
-public class AlexaHandlerFactory extends BaseThingHandlerFactory {
+public class AlexaHandlerFactory extends BaseThingHandlerFactory implements EventSubscriber {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlexaHandlerFactory.class);
     private final static Set<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS = Collections.singleton(THING_TYPE_ALEXA);
+    private final static Set<String> SUBSCRIBED_EVENT_TYPES = Collections.singleton(ItemStateChangedEvent.TYPE);
+    private static final long HEARTBEAT_TICK_MS = 100;
+    private static final int HEARTBEAT_WHEEL_SIZE = 512;
+    private static final int COMMAND_STRIPES = 4;
+    private static final int COMMAND_LANE_CAPACITY = 64;
+
     private EventPublisher eventPublisher;
+    private final ItemIndex itemIndex = new ItemIndex();
+    private WebSocketClient webSocketClient;
+    private HeartbeatScheduler heartbeatScheduler;
+    private CommandDispatcher commandDispatcher;
 
     public AlexaHandlerFactory() {
         // do nothing
     }
 
+    @Override
+    protected void activate(ComponentContext componentContext) {
+        super.activate(componentContext);
+        // one client for all things, so its selector and thread pool are not created per connection
+        webSocketClient = new WebSocketClient(new SslContextFactory(true));
+        try {
+            webSocketClient.start();
+        } catch (Exception e) {
+            LOGGER.error("Exception while starting the websocket client", e);
+        }
+        // pings run on the thread pool of the client
+        heartbeatScheduler = new HeartbeatScheduler(HEARTBEAT_TICK_MS, HEARTBEAT_WHEEL_SIZE,
+                webSocketClient.getExecutor());
+        commandDispatcher = new CommandDispatcher(COMMAND_STRIPES, COMMAND_LANE_CAPACITY);
+    }
+
+    @Override
+    protected void deactivate(ComponentContext componentContext) {
+        heartbeatScheduler.shutdown();
+        heartbeatScheduler = null;
+        LOGGER.info("Dispatched commands waited {} ms on average, at most {} ms", commandDispatcher.getAverageWaitMs(),
+                commandDispatcher.getMaxWaitMs());
+        commandDispatcher.shutdown();
+        commandDispatcher = null;
+        try {
+            webSocketClient.stop();
+        } catch (Exception e) {
+            LOGGER.error("Exception while stopping the websocket client", e);
+        }
+        webSocketClient = null;
+        super.deactivate(componentContext);
+    }
+
     @Override
     public boolean supportsThingType(ThingTypeUID thingTypeUID) {
         return SUPPORTED_THING_TYPES_UIDS.contains(thingTypeUID);
@@ -41,13 +98,40 @@ public class AlexaHandlerFactory extends BaseThingHandlerFactory {
         this.eventPublisher = null;
     }
 
+    protected void setItemRegistry(ItemRegistry itemRegistry) {
+        itemIndex.open(itemRegistry);
+    }
+
+    protected void unsetItemRegistry(ItemRegistry itemRegistry) {
+        itemIndex.close();
+    }
+
+    @Override
+    public Set<String> getSubscribedEventTypes() {
+        return SUBSCRIBED_EVENT_TYPES;
+    }
+
+    @Override
+    public EventFilter getEventFilter() {
+        return null;
+    }
+
+    @Override
+    public void receive(Event event) {
+        if (event instanceof ItemStateChangedEvent) {
+            ItemStateChangedEvent stateChangedEvent = (ItemStateChangedEvent) event;
+            itemIndex.stateChanged(stateChangedEvent.getItemName(), stateChangedEvent.getItemState());
+        }
+    }
+
     @Override
     protected ThingHandler createHandler(Thing thing) {
 
         ThingTypeUID thingTypeUID = thing.getThingTypeUID();
 
         if (thingTypeUID.equals(THING_TYPE_ALEXA)) {
-            return new AlexaHandler(thing, eventPublisher);
+            return new AlexaHandler(thing, eventPublisher, itemIndex, webSocketClient, heartbeatScheduler,
+                    commandDispatcher);
         }
 
         return null;
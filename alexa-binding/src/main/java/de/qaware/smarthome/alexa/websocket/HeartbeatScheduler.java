@@ -0,0 +1,143 @@
+package de.qaware.smarthome.alexa.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the heartbeats of all websocket connections of the binding on a single hashed timing wheel.
+ *
+ * The wheel is an array of buckets that one thread advances every tick. A heartbeat is put into the bucket of the
+ * tick it is due at, so scheduling and cancelling are O(1) and the number of threads does not depend on the number
+ * of connections. The heartbeats themselves run on the passed executor, a slow ping does not delay the wheel.
+ *
+ * @author Andreas Mayer
+ */
+public class HeartbeatScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HeartbeatScheduler.class);
+
+    private final long tickMs;
+    private final List<Set<Heartbeat>> wheel;
+    private final Executor executor;
+    private final Thread worker;
+
+    private volatile long currentTick;
+    private volatile boolean running = true;
+
+    /**
+     * Default-Constructor
+     *
+     * @param tickMs the duration of one tick, heartbeats fire with this resolution
+     * @param wheelSize the number of buckets
+     * @param executor the executor that runs the heartbeats
+     */
+    public HeartbeatScheduler(long tickMs, int wheelSize, Executor executor) {
+        this.tickMs = tickMs;
+        this.executor = executor;
+        this.wheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+        worker = new Thread(this::run, "AlexaHeartbeat");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * To run a task periodically until the returned heartbeat is cancelled.
+     *
+     * @param intervalMs the interval between two runs
+     * @param task the task, e.g. sending a ping
+     * @return the heartbeat to cancel
+     */
+    public Heartbeat schedule(long intervalMs, Runnable task) {
+        Heartbeat heartbeat = new Heartbeat(Math.max(1, (intervalMs + tickMs - 1) / tickMs), task);
+        insert(heartbeat);
+        return heartbeat;
+    }
+
+    /**
+     * To stop the wheel. Scheduled heartbeats do not run anymore.
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void insert(Heartbeat heartbeat) {
+        heartbeat.deadline = currentTick + heartbeat.intervalTicks;
+        wheel.get((int) (heartbeat.deadline % wheel.size())).add(heartbeat);
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        while (running) {
+            long nextTick = currentTick + 1;
+            long sleepMs = start / 1000000 + nextTick * tickMs - System.nanoTime() / 1000000;
+            if (sleepMs > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleepMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            currentTick = nextTick;
+            expire(wheel.get((int) (nextTick % wheel.size())), nextTick);
+        }
+    }
+
+    private void expire(Set<Heartbeat> bucket, long tick) {
+        for (Heartbeat heartbeat : bucket) {
+            if (heartbeat.cancelled) {
+                bucket.remove(heartbeat);
+            } else if (heartbeat.deadline <= tick) {
+                // due in this round, later rounds stay in the bucket
+                bucket.remove(heartbeat);
+                executor.execute(() -> fire(heartbeat));
+            }
+        }
+    }
+
+    private void fire(Heartbeat heartbeat) {
+        if (heartbeat.cancelled) {
+            return;
+        }
+        try {
+            heartbeat.task.run();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Exception in heartbeat", e);
+        }
+        if (!heartbeat.cancelled) {
+            insert(heartbeat);
+        }
+    }
+
+    /**
+     * A periodic task on the wheel.
+     */
+    public static class Heartbeat {
+        private final long intervalTicks;
+        private final Runnable task;
+        private volatile long deadline;
+        private volatile boolean cancelled;
+
+        private Heartbeat(long intervalTicks, Runnable task) {
+            this.intervalTicks = intervalTicks;
+            this.task = task;
+        }
+
+        /**
+         * To stop the heartbeat. Does not block, a run in progress is finished.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
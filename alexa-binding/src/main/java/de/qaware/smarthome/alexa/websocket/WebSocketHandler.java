@@ -2,8 +2,10 @@ package de.qaware.smarthome.alexa.websocket;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
@@ -13,24 +15,45 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 
+import de.qaware.smarthome.alexa.websocket.protocol.BinaryCodec;
 import de.qaware.smarthome.alexa.websocket.protocol.Message;
+import de.qaware.smarthome.alexa.websocket.protocol.MessageDeserializer;
 
 /**
- * To send and receivce messages via the websocket connections.
+ * To send and receivce messages via the websocket connections. Messages are binary encoded by the {@link BinaryCodec}
+ * if the server accepted its subprotocol, JSON text otherwise.
  *
  * @author Andreas Mayer
  */
-@WebSocket(maxTextMessageSize = 64 * 1024)
+@WebSocket(maxTextMessageSize = 64 * 1024, maxBinaryMessageSize = 64 * 1024)
 public class WebSocketHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(WebSocketHandler.class);
-
+    // a connection that falls this far behind is closed, the reconnect is quicker than waiting for it
+    private static final int MAX_PENDING_SENDS = 1000;
     private OnCloseHandler onCloseHandler;
     private OnConnectHandler onConnectHandler;
     private OnErrorHandler onErrorHandler;
     private OnMessageHandler onMessageHandler;
 
-    private final Gson gson = new Gson();
+    private final Gson gson = new GsonBuilder().registerTypeAdapter(Message.class, new MessageDeserializer())
+            .create();
+    private volatile boolean binary;
+    private final AtomicInteger pendingSends = new AtomicInteger();
+    private final WriteCallback sendCallback = new WriteCallback() {
+        @Override
+        public void writeSuccess() {
+            pendingSends.decrementAndGet();
+        }
+
+        @Override
+        public void writeFailed(Throwable error) {
+            pendingSends.decrementAndGet();
+            LOGGER.warn("Unable to send message", error);
+        }
+    };
 
     public void setOnCloseHandler(OnCloseHandler onCloseHandler) {
         this.onCloseHandler = onCloseHandler;
@@ -57,6 +80,8 @@ public class WebSocketHandler {
 
     @OnWebSocketConnect
     public void onConnect(Session session) {
+        binary = BinaryCodec.SUBPROTOCOL.equals(session.getUpgradeResponse().getAcceptedSubProtocol());
+        LOGGER.debug("Using {} encoding", binary ? "binary" : "JSON");
         if (onConnectHandler != null) {
             onConnectHandler.onConnect(session);
         }
@@ -67,12 +92,38 @@ public class WebSocketHandler {
         if (onMessageHandler != null) {
             LOGGER.debug("Got message {} from websocket", msg);
 
-            Message dummyMessage = gson.fromJson(msg, Message.class);
-            if (dummyMessage.getType() == null) {
+            Message message;
+            try {
+                message = gson.fromJson(msg, Message.class);
+            } catch (JsonParseException e) {
+                LOGGER.error("Received malformed message {}", msg, e);
+                return;
+            }
+            if (message == null) {
+                LOGGER.error("Received unsupported message. Check that the binding version and server matches.");
+                return;
+            }
+
+            onMessageHandler.onMessage(message);
+        }
+    }
+
+    @OnWebSocketMessage
+    public void onMessage(byte[] payload, int offset, int length) {
+        if (onMessageHandler != null) {
+            LOGGER.debug("Got binary message of {} bytes from websocket", length);
+
+            Message message;
+            try {
+                message = BinaryCodec.decode(ByteBuffer.wrap(payload, offset, length));
+            } catch (IOException e) {
+                LOGGER.error("Received malformed binary message", e);
+                return;
+            }
+            if (message == null) {
                 LOGGER.error("Received unsupported message. Check that the binding version and server matches.");
                 return;
             }
-            Message message = gson.fromJson(msg, dummyMessage.getType().getMessageClass());
 
             onMessageHandler.onMessage(message);
         }
@@ -86,12 +137,36 @@ public class WebSocketHandler {
     }
 
     public void sendPing(Session session) throws IOException {
-        ByteBuffer payload = ByteBuffer.wrap(new byte[] { 'A' });
-        session.getRemote().sendPing(payload);
+        // the client masks the payload in place, so every ping needs its own writable buffer
+        session.getRemote().sendPing(ByteBuffer.wrap(new byte[] { 'A' }));
     }
 
+    /**
+     * To send a message without waiting for it to be written. Acknowledgements, reports and pushes are sent from
+     * the threads of the command dispatcher, which are shared by all connections, so a slow connection must not
+     * hold them up. The messages are written in the order they are sent, a failed write is logged and the
+     * connection is closed by the client.
+     *
+     * @param message the message
+     * @param session the session to send it on
+     * @throws IOException If too many messages are still waiting to be written, the connection is closed then
+     */
     public void sendMessage(Message message, Session session) throws IOException {
-        String json = gson.toJson(message);
-        session.getRemote().sendString(json);
+        if (pendingSends.incrementAndGet() > MAX_PENDING_SENDS) {
+            pendingSends.decrementAndGet();
+            session.close();
+            throw new IOException("Too many messages waiting to be sent, closed the connection");
+        }
+        try {
+            if (binary) {
+                session.getRemote().sendBytes(ByteBuffer.wrap(BinaryCodec.encode(message)), sendCallback);
+            } else {
+                session.getRemote().sendString(gson.toJson(message), sendCallback);
+            }
+        } catch (RuntimeException e) {
+            // the callback is not called if the message was not taken
+            pendingSends.decrementAndGet();
+            throw e;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,36 @@
+package de.qaware.smarthome.alexa.websocket.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several commands the server sent in one websocket frame. They are executed in the given order, every command keeps
+ * its own correlation ID and is acknowledged on its own.
+ *
+ * @author Andreas Mayer
+ */
+public class BatchMessage extends Message {
+    private List<Message> commands = new ArrayList<>();
+
+    public BatchMessage() {
+        super(MessageType.BATCH);
+    }
+
+    public BatchMessage(List<Message> commands) {
+        this();
+        this.commands = commands;
+    }
+
+    public List<Message> getCommands() {
+        return commands;
+    }
+
+    public void setCommands(List<Message> commands) {
+        this.commands = commands;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchMessage{" + "commands=" + commands + '}';
+    }
+}
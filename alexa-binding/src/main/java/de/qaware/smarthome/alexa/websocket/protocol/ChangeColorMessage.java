@@ -1,7 +1,8 @@
 package de.qaware.smarthome.alexa.websocket.protocol;
 
 /**
- * To change the color of a thing.
+ * To change the color of a thing. The server sends the hsb-value along with the rgb-value, so the binding does not
+ * have to convert it. The hsb-value is null when sent by an older server.
  *
  * @author Andreas Mayer
  */
@@ -11,6 +12,9 @@ public class ChangeColorMessage extends Message {
     private int redProportion;
     private int greenProportion;
     private int blueProportion;
+    private Integer hue;
+    private Integer saturation;
+    private Integer brightness;
 
     public ChangeColorMessage() {
         super(MessageType.CHANGE_COLOR);
@@ -25,6 +29,14 @@ public class ChangeColorMessage extends Message {
         blueProportion = b;
     }
 
+    public ChangeColorMessage(String thing, String color, int r, int g, int b, int hue, int saturation,
+                              int brightness) {
+        this(thing, color, r, g, b);
+        this.hue = hue;
+        this.saturation = saturation;
+        this.brightness = brightness;
+    }
+
     public String getThing() {
         return thing;
     }
@@ -65,9 +77,43 @@ public class ChangeColorMessage extends Message {
         this.blueProportion = blueProportion;
     }
 
+    /**
+     * @return the hue in degrees, 0 to 360, or null if not sent
+     */
+    public Integer getHue() {
+        return hue;
+    }
+
+    public void setHue(Integer hue) {
+        this.hue = hue;
+    }
+
+    /**
+     * @return the saturation in percent, or null if not sent
+     */
+    public Integer getSaturation() {
+        return saturation;
+    }
+
+    public void setSaturation(Integer saturation) {
+        this.saturation = saturation;
+    }
+
+    /**
+     * @return the brightness in percent, or null if not sent
+     */
+    public Integer getBrightness() {
+        return brightness;
+    }
+
+    public void setBrightness(Integer brightness) {
+        this.brightness = brightness;
+    }
+
     @Override
     public String toString() {
         return "ChangeColorMessage{" + "thing='" + thing + '\'' + ", color='" + color + "\', " + "rgb-value=["
-                + redProportion + ',' + greenProportion + ',' + blueProportion + "]}";
+                + redProportion + ',' + greenProportion + ',' + blueProportion + "], " +
+                "hsb-value=[" + hue + ',' + saturation + ',' + brightness + "]}";
     }
 }
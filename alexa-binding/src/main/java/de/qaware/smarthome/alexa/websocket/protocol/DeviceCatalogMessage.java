@@ -0,0 +1,36 @@
+package de.qaware.smarthome.alexa.websocket.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * To tell the server the names of all devices, sent by the binding after registering and whenever the devices change.
+ * Always carries the complete list, it replaces the previous one.
+ *
+ * @author Andreas Mayer
+ */
+public class DeviceCatalogMessage extends Message {
+    private List<String> devices = new ArrayList<>();
+
+    public DeviceCatalogMessage() {
+        super(MessageType.DEVICE_CATALOG);
+    }
+
+    public DeviceCatalogMessage(List<String> devices) {
+        this();
+        this.devices = devices;
+    }
+
+    public List<String> getDevices() {
+        return devices;
+    }
+
+    public void setDevices(List<String> devices) {
+        this.devices = devices;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceCatalogMessage{" + "devices=" + devices.size() + '}';
+    }
+}
@@ -0,0 +1,34 @@
+package de.qaware.smarthome.alexa.websocket.protocol;
+
+import java.lang.reflect.Type;
+
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+
+/**
+ * To deserialize a {@link Message} into the class given by its type in one pass. Also used for the commands inside a
+ * {@link BatchMessage}.
+ *
+ * @author Andreas Mayer
+ */
+public class MessageDeserializer implements JsonDeserializer<Message> {
+
+    /**
+     * @return the message or null if its type is missing or unknown
+     */
+    @Override
+    public Message deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
+            throws JsonParseException {
+        if (!json.isJsonObject()) {
+            throw new JsonParseException("Message is not a JSON object: " + json);
+        }
+        MessageType type = context.deserialize(json.getAsJsonObject().get("type"), MessageType.class);
+        if (type == null) {
+            return null;
+        }
+        // registered for Message only, so the subclass is read by the default adapter
+        return context.deserialize(json, type.getMessageClass());
+    }
+}
@@ -9,7 +9,13 @@ public enum MessageType {
     ON(OnMessage.class),
     OFF(OffMessage.class),
     CHANGE_COLOR(ChangeColorMessage.class),
-    REGISTER(RegisterMessage.class);
+    REGISTER(RegisterMessage.class),
+    ACK(AckMessage.class),
+    BATCH(BatchMessage.class),
+    DEVICE_CATALOG(DeviceCatalogMessage.class),
+    STATE_REPORT(StateReportMessage.class),
+    QUERY_STATE(QueryStateMessage.class),
+    RECONNECT(ReconnectMessage.class);
 
     private final Class<? extends Message> messageClass;
 
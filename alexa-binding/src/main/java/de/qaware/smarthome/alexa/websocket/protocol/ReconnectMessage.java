@@ -0,0 +1,37 @@
+package de.qaware.smarthome.alexa.websocket.protocol;
+
+/**
+ * To ask the binding to close its connection and to connect again after the given delay, sent before a planned
+ * shutdown of the server or when the server is too busy to accept the connection. The binding adds some jitter,
+ * so not all bindings come back at the same time.
+ *
+ * @author Andreas Mayer
+ */
+public class ReconnectMessage extends Message {
+    private int delay;
+
+    public ReconnectMessage() {
+        super(MessageType.RECONNECT);
+    }
+
+    public ReconnectMessage(int delay) {
+        this();
+        this.delay = delay;
+    }
+
+    /**
+     * @return the time in milliseconds to wait before connecting again
+     */
+    public int getDelay() {
+        return delay;
+    }
+
+    public void setDelay(int delay) {
+        this.delay = delay;
+    }
+
+    @Override
+    public String toString() {
+        return "ReconnectMessage{" + "delay=" + delay + '}';
+    }
+}
@@ -1,12 +1,22 @@
 package de.qaware.smarthome.alexa.websocket.protocol;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * To register the Amazon Echo ID at the webserver.
+ * The binding lists the optional protocol features it understands, older bindings send none.
  *
  * @author Andreas Mayer
  */
 public class RegisterMessage extends Message {
+    /** The binding unpacks {@link BatchMessage}s. */
+    public static final String FEATURE_BATCH = "BATCH";
+    /** The binding answers every command that has a correlation ID with an {@link AckMessage}. */
+    public static final String FEATURE_ACK = "ACK";
+
     private String amazonEchoId;
+    private List<String> features = new ArrayList<>();
 
     public RegisterMessage() {
         super(MessageType.REGISTER);
@@ -25,8 +35,24 @@ public class RegisterMessage extends Message {
         this.amazonEchoId = amazonEchoId;
     }
 
+    public List<String> getFeatures() {
+        return features;
+    }
+
+    public void setFeatures(List<String> features) {
+        this.features = features;
+    }
+
+    /**
+     * @param feature one of the FEATURE constants
+     * @return whether the binding announced the feature
+     */
+    public boolean hasFeature(String feature) {
+        return features != null && features.contains(feature);
+    }
+
     @Override
     public String toString() {
-        return "RegisterMessage{" + "amazonEchoId='" + amazonEchoId + '\'' + '}';
+        return "RegisterMessage{" + "amazonEchoId='" + amazonEchoId + '\'' + ", features=" + features + '}';
     }
 }
@@ -0,0 +1,30 @@
+package de.qaware.smarthome.alexa.handler;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.smarthome.core.library.types.HSBType;
+import org.junit.Test;
+
+public class ColorCacheTest {
+
+    private final ColorCache cache = new ColorCache(2);
+
+    @Test
+    public void returnsTheSameColorForTheSameRgbValueAndGamut() {
+        HSBType red = cache.get(255, 0, 0, ColorGamut.B);
+
+        assertSame(red, cache.get(255, 0, 0, ColorGamut.B));
+        assertNotSame(red, cache.get(255, 0, 0, null));
+    }
+
+    @Test
+    public void dropsTheLeastRecentlyUsedColor() {
+        HSBType red = cache.get(255, 0, 0, null);
+        HSBType green = cache.get(0, 255, 0, null);
+        cache.get(255, 0, 0, null);
+        cache.get(0, 0, 255, null);
+
+        assertSame(red, cache.get(255, 0, 0, null));
+        assertNotSame(green, cache.get(0, 255, 0, null));
+    }
+}
@@ -0,0 +1,79 @@
+package de.qaware.smarthome.alexa.handler;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class ColorGamutTest {
+
+    @Test
+    public void leavesColorsInsideTheGamut() {
+        assertEquals(0xFFFFFF, ColorGamut.B.clamp(0xFFFFFF));
+        assertEquals(0xFF8080, ColorGamut.B.clamp(0xFF8080));
+        assertEquals(0x000000, ColorGamut.B.clamp(0x000000));
+    }
+
+    @Test
+    public void movesColorsOutsideTheGamutOntoItsEdge() {
+        int green = ColorGamut.B.clamp(0x00FF00);
+
+        assertNotEquals(0x00FF00, green);
+        // the green corner of gamut B is a yellowish green, the nearest edge is the one from red to green
+        assertTrue(((green >> 8) & 0xFF) > ((green >> 16) & 0xFF));
+        assertTrue(((green >> 8) & 0xFF) > (green & 0xFF));
+        double[] xy = toXy(green);
+        assertEquals(0, distanceToEdge(xy, 0.675, 0.322, 0.409, 0.518), 0.005);
+        // the moved color is inside the gamut, up to the rounding to whole rgb-values
+        assertNear(green, ColorGamut.B.clamp(green));
+    }
+
+    @Test
+    public void movesOnlyColorsOutsideOfTheWiderGamuts() {
+        assertNotEquals(0x80C080, ColorGamut.B.clamp(0x80C080));
+        assertEquals(0x80C080, ColorGamut.A.clamp(0x80C080));
+        assertEquals(0x80C080, ColorGamut.C.clamp(0x80C080));
+    }
+
+    @Test
+    public void findsTheGamutInTheTags() {
+        assertEquals(ColorGamut.B, ColorGamut.fromTags(new HashSet<>(Arrays.asList("Lighting", "alexa:gamut=b"))));
+        assertNull(ColorGamut.fromTags(Collections.singleton("alexa:gamut=D")));
+        assertNull(ColorGamut.fromTags(Collections.<String> emptySet()));
+    }
+
+    /**
+     * To get the CIE xy chromaticity of a color, the same way the Hue bridge does.
+     */
+    private static double[] toXy(int rgb) {
+        double red = toLinear((rgb >> 16) & 0xFF);
+        double green = toLinear((rgb >> 8) & 0xFF);
+        double blue = toLinear(rgb & 0xFF);
+        double bigX = red * 0.664511 + green * 0.154324 + blue * 0.162028;
+        double bigY = red * 0.283881 + green * 0.668433 + blue * 0.047685;
+        double bigZ = red * 0.000088 + green * 0.072310 + blue * 0.986039;
+        double sum = bigX + bigY + bigZ;
+        return new double[] { bigX / sum, bigY / sum };
+    }
+
+    private static double toLinear(int value) {
+        double v = value / 255.0;
+        return v > 0.04045 ? Math.pow((v + 0.055) / 1.055, 2.4) : v / 12.92;
+    }
+
+    private static double distanceToEdge(double[] xy, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double t = Math.max(0, Math.min(1, ((xy[0] - ax) * dx + (xy[1] - ay) * dy) / (dx * dx + dy * dy)));
+        return Math.hypot(xy[0] - ax - t * dx, xy[1] - ay - t * dy);
+    }
+
+    private static void assertNear(int expected, int actual) {
+        for (int shift = 0; shift <= 16; shift += 8) {
+            assertEquals(((expected >> shift) & 0xFF), ((actual >> shift) & 0xFF), 2);
+        }
+    }
+}
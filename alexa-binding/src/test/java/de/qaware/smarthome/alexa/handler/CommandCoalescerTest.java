@@ -0,0 +1,126 @@
+package de.qaware.smarthome.alexa.handler;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.smarthome.core.library.types.HSBType;
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.types.Command;
+import org.junit.After;
+import org.junit.Test;
+
+public class CommandCoalescerTest {
+
+    private static final HSBType RED = new HSBType("0,100,100");
+    private static final HSBType BLUE = new HSBType("240,100,100");
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final List<Command> posted = new ArrayList<>();
+    private final CommandCoalescer coalescer = new CommandCoalescer(500, scheduler,
+            (itemName, command) -> posted.add(command));
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void postsTheFirstCommandRightAway() {
+        assertTrue(coalescer.post("lamp", RED).join());
+        assertEquals(Arrays.asList(RED), posted);
+    }
+
+    @Test
+    public void postsOnlyTheNewestColorOfAWindow() {
+        coalescer.post("lamp", OnOffType.ON);
+        CompletableFuture<Boolean> red = coalescer.post("lamp", RED);
+        CompletableFuture<Boolean> blue = coalescer.post("lamp", BLUE);
+        assertFalse(red.join());
+        assertFalse(blue.isDone());
+
+        scheduler.endWindow();
+        assertTrue(blue.join());
+        assertEquals(Arrays.asList(OnOffType.ON, BLUE), posted);
+    }
+
+    @Test
+    public void leavesTheLampOffForRedThenOff() {
+        coalescer.post("lamp", OnOffType.ON);
+        CompletableFuture<Boolean> red = coalescer.post("lamp", RED);
+        CompletableFuture<Boolean> off = coalescer.post("lamp", OnOffType.OFF);
+        assertFalse(red.join());
+
+        scheduler.endWindow();
+        assertTrue(off.join());
+        assertEquals(Arrays.asList(OnOffType.ON, OnOffType.OFF), posted);
+    }
+
+    @Test
+    public void leavesTheLampRedForOffThenRed() {
+        coalescer.post("lamp", OnOffType.ON);
+        CompletableFuture<Boolean> off = coalescer.post("lamp", OnOffType.OFF);
+        CompletableFuture<Boolean> red = coalescer.post("lamp", RED);
+
+        scheduler.endWindow();
+        assertTrue(off.join());
+        assertTrue(red.join());
+        assertEquals(Arrays.asList(OnOffType.ON, OnOffType.OFF, RED), posted);
+    }
+
+    @Test
+    public void keepsItemsApart() {
+        coalescer.post("lamp", RED);
+        assertTrue(coalescer.post("desk", BLUE).join());
+        assertEquals(Arrays.asList(RED, BLUE), posted);
+    }
+
+    @Test
+    public void closesAnIdleWindow() {
+        coalescer.post("lamp", RED);
+        scheduler.endWindow();
+        scheduler.endWindow();
+
+        assertTrue(coalescer.post("lamp", BLUE).join());
+        assertEquals(Arrays.asList(RED, BLUE), posted);
+    }
+
+    @Test
+    public void dropsWaitingCommandsWhenCleared() {
+        coalescer.post("lamp", RED);
+        CompletableFuture<Boolean> blue = coalescer.post("lamp", BLUE);
+        coalescer.clear();
+
+        assertFalse(blue.join());
+        assertEquals(Arrays.asList(RED), posted);
+    }
+
+    /**
+     * Runs the end of a window only when the test says so.
+     */
+    private static class ManualScheduler extends ScheduledThreadPoolExecutor {
+        private final List<Runnable> scheduled = new ArrayList<>();
+
+        ManualScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            scheduled.add(command);
+            return null;
+        }
+
+        void endWindow() {
+            List<Runnable> due = new ArrayList<>(scheduled);
+            scheduled.clear();
+            due.forEach(Runnable::run);
+        }
+    }
+}
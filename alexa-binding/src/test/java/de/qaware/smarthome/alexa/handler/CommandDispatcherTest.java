@@ -0,0 +1,96 @@
+package de.qaware.smarthome.alexa.handler;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CommandDispatcherTest {
+
+    private final CommandDispatcher dispatcher = new CommandDispatcher(1, 16);
+    private final List<String> ran = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void onOffOvertakesColorsOfOtherDevicesOnly() throws Exception {
+        CountDownLatch proceed = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        block(dispatcher, proceed);
+
+        dispatcher.dispatch("Kitchen", false, record("kitchen red", done));
+        dispatcher.dispatch("Lamp", false, record("lamp red", done));
+        dispatcher.dispatch("the lamp", true, record("lamp off", done));
+        dispatcher.dispatch("Desk", true, record("desk on", done));
+        proceed.countDown();
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("lamp red", "lamp off", "desk on", "kitchen red"), ran);
+    }
+
+    @Test
+    public void keepsTheOrderWithinALane() throws Exception {
+        CountDownLatch done = new CountDownLatch(3);
+        dispatcher.dispatch("lamp", false, record("red", done));
+        dispatcher.dispatch("lamp", false, record("green", done));
+        dispatcher.dispatch("lamp", false, record("blue", done));
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("red", "green", "blue"), ran);
+    }
+
+    @Test
+    public void refusesCommandsOverTheCapacityOfALane() throws Exception {
+        CommandDispatcher small = new CommandDispatcher(1, 1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        try {
+            block(small, proceed);
+            assertTrue(small.dispatch("lamp", false, () -> {
+            }));
+            assertFalse(small.dispatch("lamp", false, () -> {
+            }));
+            assertTrue(small.dispatch("lamp", true, () -> {
+            }));
+            assertEquals(2, small.getQueueDepth());
+        } finally {
+            proceed.countDown();
+            small.shutdown();
+        }
+    }
+
+    /**
+     * To keep the only worker busy until the latch is counted down, so the following commands queue up.
+     */
+    private static void block(CommandDispatcher dispatcher, CountDownLatch proceed) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        dispatcher.dispatch("blocker", false, () -> {
+            started.countDown();
+            await(proceed);
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+    }
+
+    private Runnable record(String command, CountDownLatch done) {
+        return () -> {
+            ran.add(command);
+            done.countDown();
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package de.qaware.smarthome.alexa.handler;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.eclipse.smarthome.core.library.items.ColorItem;
+import org.eclipse.smarthome.core.library.items.NumberItem;
+import org.eclipse.smarthome.core.library.items.SwitchItem;
+import org.eclipse.smarthome.core.library.types.HSBType;
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.junit.Test;
+
+public class ItemIndexTest {
+
+    private final ItemIndex index = new ItemIndex();
+
+    @Test
+    public void normalizesSpokenNames() {
+        assertEquals("living room lamp", ItemIndex.normalize("The Living-Room  Lamp!"));
+        assertEquals("lamp 2", ItemIndex.normalize("lamp_2"));
+        assertEquals("theater", ItemIndex.normalize("Theater"));
+        assertEquals("", ItemIndex.normalize(" ... "));
+    }
+
+    @Test
+    public void resolvesByLabelThenNameThenTag() {
+        SwitchItem labelled = new SwitchItem("Switch_1");
+        labelled.setLabel("Kitchen");
+        SwitchItem named = new SwitchItem("kitchen");
+        SwitchItem tagged = new SwitchItem("Switch_2");
+        tagged.addTag("Kitchen");
+        index.added(labelled);
+        index.added(named);
+        index.added(tagged);
+
+        assertEquals(Collections.singleton("Switch_1"), index.resolve("the kitchen", OnOffType.class));
+
+        index.removed(labelled);
+        assertEquals(Collections.singleton("kitchen"), index.resolve("the kitchen", OnOffType.class));
+
+        index.removed(named);
+        assertEquals(Collections.singleton("Switch_2"), index.resolve("the kitchen", OnOffType.class));
+    }
+
+    @Test
+    public void fallsBackWhenNoLabelledItemAcceptsTheCommand() {
+        NumberItem sensor = new NumberItem("Sensor_1");
+        sensor.setLabel("Lamp");
+        SwitchItem named = new SwitchItem("lamp");
+        index.added(sensor);
+        index.added(named);
+
+        assertEquals(Collections.singleton("lamp"), index.resolve("Lamp", OnOffType.class));
+        assertTrue(index.resolve("Lamp", HSBType.class).isEmpty());
+        assertTrue(index.isKnown("Lamp"));
+    }
+
+    @Test
+    public void resolvesATagToAllItemsCarryingIt() {
+        ColorItem first = new ColorItem("Color_1");
+        first.addTag("kitchen lights");
+        ColorItem second = new ColorItem("Color_2");
+        second.addTags("Kitchen Lights", "alexa:gamut=B");
+        index.added(first);
+        index.added(second);
+
+        assertEquals(new HashSet<>(Arrays.asList("Color_1", "Color_2")),
+                index.resolve("kitchen lights", HSBType.class));
+        assertEquals(ColorGamut.B, index.getGamut("Color_2"));
+        assertFalse(index.getDeviceNames().contains("alexa:gamut=B"));
+    }
+
+    @Test
+    public void resolvesNothingForUnknownNames() {
+        assertTrue(index.resolve("garage", OnOffType.class).isEmpty());
+        assertTrue(index.resolve(null, OnOffType.class).isEmpty());
+        assertFalse(index.isKnown("garage"));
+    }
+}
@@ -0,0 +1,56 @@
+package de.qaware.smarthome.alexa.websocket;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import de.qaware.smarthome.alexa.websocket.HeartbeatScheduler.Heartbeat;
+
+public class HeartbeatSchedulerTest {
+
+    private final HeartbeatScheduler scheduler = new HeartbeatScheduler(5, 8, Runnable::run);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void runsAHeartbeatRepeatedly() throws Exception {
+        CountDownLatch beats = new CountDownLatch(3);
+        scheduler.schedule(20, beats::countDown);
+
+        assertTrue(beats.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void runsHeartbeatsLongerThanARoundOfTheWheel() throws Exception {
+        CountDownLatch beat = new CountDownLatch(1);
+        long start = System.nanoTime();
+        scheduler.schedule(100, beat::countDown);
+
+        assertTrue(beat.await(1, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+    }
+
+    @Test
+    public void stopsACancelledHeartbeat() throws Exception {
+        AtomicInteger beats = new AtomicInteger();
+        CountDownLatch first = new CountDownLatch(1);
+        Heartbeat heartbeat = scheduler.schedule(10, () -> {
+            beats.incrementAndGet();
+            first.countDown();
+        });
+        assertTrue(first.await(1, TimeUnit.SECONDS));
+        heartbeat.cancel();
+        int afterCancel = beats.get();
+
+        Thread.sleep(60);
+        assertTrue(beats.get() <= afterCancel + 1);
+    }
+}
@@ -1,15 +1,28 @@
 package de.qaware.echo;
 
+import com.amazon.speech.Sdk;
 import com.amazon.speech.speechlet.servlet.SpeechletServlet;
+import de.qaware.echo.devices.DeviceCatalogRegistry;
 import de.qaware.echo.skill.qivicon.QiviconSpeechlet;
+import de.qaware.echo.speech.AsyncSpeechletServlet;
+import de.qaware.echo.speech.CachedSignatureVerifier;
+import de.qaware.echo.speech.ReplayCache;
+import de.qaware.echo.speech.RequestDeduplicator;
 import de.qaware.echo.util.PropertyLoader;
 import de.qaware.echo.websocket.QiviconWebSocketHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.embedded.ServletRegistrationBean;
 import org.springframework.boot.web.servlet.ServletComponentScan;
 import org.springframework.context.annotation.Bean;
+import org.springframework.util.StringUtils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * To run the Application including the Servlet for the QIVICON Skill and the QIVICON Websocket Connection
@@ -20,20 +33,85 @@ import org.springframework.context.annotation.Bean;
 @ServletComponentScan
 public class Application {
 
+	private final static Logger LOGGER = LoggerFactory.getLogger(Application.class);
+
 	@Autowired
 	private QiviconWebSocketHandler webSocketHandler;
 
+	@Autowired
+	private DeviceCatalogRegistry deviceCatalogs;
+
+	@Autowired
+	private ExecutorService blockingExecutor;
+
+	@Value("${qivicon.speechlet.async:true}")
+	private boolean asyncSpeechlet;
+
+	@Value("${qivicon.speechlet.deadline:7000}")
+	private long speechletDeadline;
+
+	@Value("${qivicon.speechlet.blocking:false}")
+	private boolean blockingSpeechlet;
+
+	@Value("${qivicon.speechlet.retry-window:60000}")
+	private long retryWindow;
+
+	@Value("${qivicon.speechlet.retry-cache-size:10000}")
+	private int retryCacheSize;
+
+	@Value("${qivicon.signature.certificate-max-age:3600000}")
+	private long certificateMaxAge;
+
+	@Value("${qivicon.signature.replay-window:150000}")
+	private long replayWindow;
+
+	@Value("${qivicon.signature.replay-cache-size:100000}")
+	private int replayCacheSize;
+
 	@Bean
 	public ServletRegistrationBean qiviconServlet() {
-		SpeechletServlet speechServlet = new SpeechletServlet();
-		speechServlet.setSpeechlet(new QiviconSpeechlet(webSocketHandler));
-
-		ServletRegistrationBean servlet = new ServletRegistrationBean(speechServlet, "/qivicon");
+		QiviconSpeechlet speechlet = new QiviconSpeechlet(webSocketHandler, deviceCatalogs);
+		ServletRegistrationBean servlet;
+		if (asyncSpeechlet) {
+			AsyncSpeechletServlet speechServlet = new AsyncSpeechletServlet(speechlet, speechletDeadline,
+					blockingSpeechlet ? blockingExecutor : null);
+			speechServlet.setSignatureVerifier(new CachedSignatureVerifier(certificateMaxAge));
+			if (retryCacheSize > 0) {
+				speechServlet.setDeduplicator(new RequestDeduplicator(retryWindow, retryCacheSize));
+			}
+			if (replayCacheSize > 0) {
+				checkTimestampTolerance();
+				speechServlet.setReplayCache(new ReplayCache(replayWindow, replayCacheSize));
+			}
+			servlet = new ServletRegistrationBean(speechServlet, "/qivicon");
+			servlet.setAsyncSupported(true);
+		} else {
+			SpeechletServlet speechServlet = new SpeechletServlet();
+			speechServlet.setSpeechlet(speechlet);
+			servlet = new ServletRegistrationBean(speechServlet, "/qivicon");
+		}
 		servlet.setName("qivicon");
 
 		return servlet;
 	}
 
+	/**
+	 * To make sure a request is too old to be accepted before it is dropped from the replay cache, else it could be
+	 * replayed once the replay window passed.
+	 *
+	 * @throws IllegalStateException If the timestamp tolerance exceeds the replay window
+	 */
+	private void checkTimestampTolerance() {
+		String tolerance = System.getProperty(Sdk.TIMESTAMP_TOLERANCE_SYSTEM_PROPERTY);
+		if (!StringUtils.hasText(tolerance)) {
+			LOGGER.warn("No timestamp tolerance set, requests older than the replay window of {} ms can be replayed",
+					replayWindow);
+		} else if (TimeUnit.SECONDS.toMillis(Long.parseLong(tolerance.trim())) > replayWindow) {
+			throw new IllegalStateException(String.format("The timestamp tolerance of %s s exceeds the replay window of %d ms",
+					tolerance.trim(), replayWindow));
+		}
+	}
+
 	public static void main(String[] args) {
 		PropertyLoader.loadProperty("amazon.properties");
 		SpringApplication.run(Application.class, args);
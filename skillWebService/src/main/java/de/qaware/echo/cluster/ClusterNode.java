@@ -0,0 +1,185 @@
+package de.qaware.echo.cluster;
+
+import de.qaware.echo.websocket.CommandResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * This node's view of the cluster. Announces the Echo IDs whose bindings are connected here and
+ * finds the node holding the binding for all others. Lookups that found a node are cached for a
+ * while, and the cache entry of an Echo ID is dropped whenever the backend reports a change for it.
+ *
+ * @author Andreas Mayer
+ */
+public class ClusterNode {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(ClusterNode.class);
+
+	/** The time after which a cached route is looked up again, in case a change notification was lost. */
+	static final long ROUTE_TTL = TimeUnit.SECONDS.toMillis(30);
+
+	/** The number of cached routes, lookups are not cached while the cache is full. */
+	static final int MAX_ROUTES = 10000;
+
+	private final boolean enabled;
+	private final String nodeId;
+	private final RoutingBackend backend;
+	private final NodeChannel channel;
+	private final LongSupplier clock;
+	private final Map<String, Route> routes = new ConcurrentHashMap<>();
+	private final AtomicLong changes = new AtomicLong();
+	private final Set<String> announced = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param enabled
+	 *      Whether the cluster mode is enabled, all methods do nothing otherwise
+	 * @param nodeId
+	 *      The id of this node
+	 * @param backend
+	 *      The membership and routing backend shared by all nodes
+	 * @param channel
+	 *      The channel to forward commands to other nodes
+	 */
+	public ClusterNode(boolean enabled, String nodeId, RoutingBackend backend, NodeChannel channel) {
+		this(enabled, nodeId, backend, channel, System::currentTimeMillis);
+	}
+
+	ClusterNode(boolean enabled, String nodeId, RoutingBackend backend, NodeChannel channel, LongSupplier clock) {
+		if (enabled && (nodeId == null || nodeId.isEmpty())) {
+			throw new IllegalArgumentException("A node id is required in cluster mode");
+		}
+		this.enabled = enabled;
+		this.nodeId = nodeId;
+		this.backend = backend;
+		this.channel = channel;
+		this.clock = clock;
+		if (enabled) {
+			backend.addListener(this::invalidate);
+		}
+	}
+
+	/**
+	 * @return whether the cluster mode is enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * To announce that a binding for the Echo ID is connected to this node.
+	 *
+	 * @param amazonEchoId the Echo ID
+	 */
+	public void announce(String amazonEchoId) {
+		if (enabled && announced.add(amazonEchoId)) {
+			backend.announce(amazonEchoId, nodeId);
+		}
+	}
+
+	/**
+	 * To withdraw the announcement after the last binding for the Echo ID disconnected from this node.
+	 *
+	 * @param amazonEchoId the Echo ID
+	 */
+	public void withdraw(String amazonEchoId) {
+		if (enabled && announced.remove(amazonEchoId)) {
+			backend.withdraw(amazonEchoId, nodeId);
+		}
+	}
+
+	/**
+	 * @param amazonEchoId the Echo ID
+	 * @return the id of another node holding a binding for the Echo ID or null
+	 */
+	public String findNode(String amazonEchoId) {
+		if (!enabled) {
+			return null;
+		}
+		long now = clock.getAsLong();
+		Route route = routes.get(amazonEchoId);
+		Set<String> nodes = route != null && route.expiresAt > now ? route.nodes : lookup(amazonEchoId, now);
+		for (String node : nodes) {
+			if (!node.equals(nodeId)) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * To look up the nodes of an Echo ID in the backend and cache them. No nodes are not cached, as the binding
+	 * may just be connecting to another node.
+	 */
+	private Set<String> lookup(String amazonEchoId, long now) {
+		long changesBefore = changes.get();
+		Set<String> nodes = backend.lookup(amazonEchoId);
+		if (nodes.isEmpty()) {
+			return nodes;
+		}
+		if (routes.size() >= MAX_ROUTES) {
+			routes.values().removeIf(cached -> cached.expiresAt <= now);
+			if (routes.size() >= MAX_ROUTES) {
+				return nodes;
+			}
+		}
+		Route route = new Route(nodes, now + ROUTE_TTL);
+		routes.put(amazonEchoId, route);
+		if (changes.get() != changesBefore) {
+			// a change was reported during the lookup, the result may be outdated already
+			routes.remove(amazonEchoId, route);
+		}
+		return nodes;
+	}
+
+	/**
+	 * To drop the cached route of an Echo ID whose nodes changed.
+	 */
+	private void invalidate(String amazonEchoId) {
+		changes.incrementAndGet();
+		routes.remove(amazonEchoId);
+	}
+
+	/**
+	 * To forward a command to the node holding the binding.
+	 *
+	 * @param node the id of the target node
+	 * @param amazonEchoId the Echo ID the command is for
+	 * @param json the serialized command
+	 * @return the outcome of the command
+	 */
+	public CommandResult forward(String node, String amazonEchoId, String json) {
+		LOGGER.info("Forwarding command for {} to node {}", amazonEchoId, node);
+		return channel.forward(node, amazonEchoId, json);
+	}
+
+	/**
+	 * To withdraw all announcements of this node before it shuts down.
+	 */
+	public void shutdown() {
+		for (String amazonEchoId : announced) {
+			withdraw(amazonEchoId);
+		}
+	}
+
+	/**
+	 * The cached nodes of an Echo ID.
+	 */
+	private static class Route {
+		private final Set<String> nodes;
+		private final long expiresAt;
+
+		Route(Set<String> nodes, long expiresAt) {
+			this.nodes = nodes;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package de.qaware.echo.cluster;
+
+import de.qaware.echo.websocket.CommandResult;
+
+/**
+ * Sends a command that was forwarded by another node to a locally connected binding.
+ *
+ * @author Andreas Mayer
+ */
+public interface CommandReceiver {
+
+	/**
+	 * @param amazonEchoId the Echo ID the command is for
+	 * @param json the serialized command
+	 * @return the outcome of the command
+	 */
+	CommandResult receive(String amazonEchoId, String json);
+}
@@ -0,0 +1,42 @@
+package de.qaware.echo.cluster;
+
+import de.qaware.echo.websocket.QiviconWebSocketHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Internal endpoint that receives commands forwarded by other nodes of the cluster.
+ *
+ * @author Andreas Mayer
+ */
+@RestController
+@ConditionalOnProperty(name = "qivicon.cluster.enabled", havingValue = "true")
+public class ForwardController {
+
+	@Autowired
+	private QiviconWebSocketHandler webSocketHandler;
+
+	@Value("${qivicon.cluster.secret}")
+	private String secret;
+
+	@RequestMapping(value = HttpNodeChannel.FORWARD_PATH, method = RequestMethod.POST)
+	public ResponseEntity<String> forward(@RequestHeader(HttpNodeChannel.SECRET_HEADER) String clusterSecret,
+										  @RequestParam String amazonEchoId, @RequestBody String json) {
+		if (secret.isEmpty() || !MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8), clusterSecret.getBytes(StandardCharsets.UTF_8))) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		return new ResponseEntity<>(webSocketHandler.receive(amazonEchoId, json).name(), HttpStatus.OK);
+	}
+}
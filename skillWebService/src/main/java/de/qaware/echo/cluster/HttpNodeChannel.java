@@ -0,0 +1,82 @@
+package de.qaware.echo.cluster;
+
+import de.qaware.echo.websocket.CommandResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link NodeChannel} that posts the command to the internal forward endpoint of the target node.
+ * The node id is the base URL of the node.
+ *
+ * @author Andreas Mayer
+ */
+public class HttpNodeChannel implements NodeChannel {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(HttpNodeChannel.class);
+
+	static final String FORWARD_PATH = "/internal/forward";
+	static final String SECRET_HEADER = "X-Qivicon-Cluster-Secret";
+
+	private final String secret;
+	private final int timeout;
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param secret
+	 *      The secret shared by all nodes
+	 * @param timeout
+	 *      The connect and read timeout in milliseconds
+	 */
+	public HttpNodeChannel(String secret, int timeout) {
+		this.secret = secret;
+		this.timeout = timeout;
+	}
+
+	@Override
+	public CommandResult forward(String nodeId, String amazonEchoId, String json) {
+		try {
+			URL url = new URL(nodeId + FORWARD_PATH + "?amazonEchoId=" + URLEncoder.encode(amazonEchoId, "UTF-8"));
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(timeout);
+			connection.setReadTimeout(timeout);
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json");
+			connection.setRequestProperty(SECRET_HEADER, secret);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(json.getBytes(StandardCharsets.UTF_8));
+			}
+
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+				LOGGER.warn("Forwarding to {} failed with status {}", nodeId, connection.getResponseCode());
+				return CommandResult.NOT_DELIVERED;
+			}
+			try (InputStream in = connection.getInputStream()) {
+				return CommandResult.valueOf(read(in).trim());
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			LOGGER.warn("Exception while forwarding to {}", nodeId, e);
+			return CommandResult.NOT_DELIVERED;
+		}
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[256];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
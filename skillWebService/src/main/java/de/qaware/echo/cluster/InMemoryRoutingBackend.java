@@ -0,0 +1,57 @@
+package de.qaware.echo.cluster;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A {@link RoutingBackend} within a single JVM. Used when only one node runs and as a stand-in
+ * for the real membership service when several nodes are tested in one process.
+ *
+ * @author Andreas Mayer
+ */
+public class InMemoryRoutingBackend implements RoutingBackend {
+
+	private final Map<String, Set<String>> nodesByEchoId = new ConcurrentHashMap<>();
+	private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+	@Override
+	public void announce(String amazonEchoId, String nodeId) {
+		nodesByEchoId.compute(amazonEchoId, (echoId, nodes) -> {
+			Set<String> result = nodes != null ? nodes : ConcurrentHashMap.newKeySet();
+			result.add(nodeId);
+			return result;
+		});
+		notifyListeners(amazonEchoId);
+	}
+
+	@Override
+	public void withdraw(String amazonEchoId, String nodeId) {
+		nodesByEchoId.computeIfPresent(amazonEchoId, (echoId, nodes) -> {
+			nodes.remove(nodeId);
+			return nodes.isEmpty() ? null : nodes;
+		});
+		notifyListeners(amazonEchoId);
+	}
+
+	@Override
+	public Set<String> lookup(String amazonEchoId) {
+		Set<String> nodes = nodesByEchoId.get(amazonEchoId);
+		return nodes != null ? Collections.unmodifiableSet(nodes) : Collections.emptySet();
+	}
+
+	@Override
+	public void addListener(Consumer<String> listener) {
+		listeners.add(listener);
+	}
+
+	private void notifyListeners(String amazonEchoId) {
+		for (Consumer<String> listener : listeners) {
+			listener.accept(amazonEchoId);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package de.qaware.echo.cluster;
+
+import de.qaware.echo.websocket.CommandResult;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link NodeChannel} between nodes running in the same JVM, used as a stand-in for the network in tests.
+ *
+ * @author Andreas Mayer
+ */
+public class InProcessNodeChannel implements NodeChannel {
+
+	private final Map<String, CommandReceiver> receivers = new ConcurrentHashMap<>();
+
+	/**
+	 * @param nodeId the id of the node
+	 * @param receiver the receiver of the node
+	 */
+	public void register(String nodeId, CommandReceiver receiver) {
+		receivers.put(nodeId, receiver);
+	}
+
+	@Override
+	public CommandResult forward(String nodeId, String amazonEchoId, String json) {
+		CommandReceiver receiver = receivers.get(nodeId);
+		return receiver != null ? receiver.receive(amazonEchoId, json) : CommandResult.NOT_DELIVERED;
+	}
+}
@@ -0,0 +1,21 @@
+package de.qaware.echo.cluster;
+
+import de.qaware.echo.websocket.CommandResult;
+
+/**
+ * Forwards a command to the node that holds the binding connection.
+ *
+ * @author Andreas Mayer
+ */
+public interface NodeChannel {
+
+	/**
+	 * To let another node send a command to its binding and wait for the outcome.
+	 *
+	 * @param nodeId the id of the target node
+	 * @param amazonEchoId the Echo ID the command is for
+	 * @param json the serialized command
+	 * @return the outcome of the command on the target node
+	 */
+	CommandResult forward(String nodeId, String amazonEchoId, String json);
+}
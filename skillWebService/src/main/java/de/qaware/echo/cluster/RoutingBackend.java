@@ -0,0 +1,42 @@
+package de.qaware.echo.cluster;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Shares which node holds the binding connections of which Amazon Echo ID.
+ * Implementations may be backed by any membership service the nodes can reach.
+ *
+ * @author Andreas Mayer
+ */
+public interface RoutingBackend {
+
+	/**
+	 * To announce that a node holds a binding connection for an Echo ID.
+	 *
+	 * @param amazonEchoId the Echo ID
+	 * @param nodeId the id of the announcing node
+	 */
+	void announce(String amazonEchoId, String nodeId);
+
+	/**
+	 * To withdraw an announcement, e.g. because the last binding connection was closed.
+	 *
+	 * @param amazonEchoId the Echo ID
+	 * @param nodeId the id of the withdrawing node
+	 */
+	void withdraw(String amazonEchoId, String nodeId);
+
+	/**
+	 * @param amazonEchoId the Echo ID
+	 * @return the ids of all nodes holding a connection for the Echo ID, never null
+	 */
+	Set<String> lookup(String amazonEchoId);
+
+	/**
+	 * To get notified whenever the nodes of an Echo ID change.
+	 *
+	 * @param listener called with the changed Echo ID
+	 */
+	void addListener(Consumer<String> listener);
+}
@@ -0,0 +1,235 @@
+package de.qaware.echo.devices;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+import org.apache.commons.codec.language.Soundex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The devices of one home, indexed to match what the speech recognition made of a device name.
+ *
+ * A spoken name is looked up in the following order, the first hit wins:
+ * the normalized name, its Double Metaphone key, its Soundex key, and finally the names within a small edit distance.
+ * If a phonetic key fits several devices, the one with the smallest edit distance wins. Even a phonetic match must be
+ * within an edit distance relative to the length of the name, as short keys like Soundex put quite different names
+ * into one bucket, e.g. "bathroom light" and "bedroom light".
+ * All keys are computed once when the catalog is built, so a lookup costs two phonetic encodings of the spoken
+ * name plus a few map lookups, and only misses compare against the devices of a similar length.
+ *
+ * @author Andreas Mayer
+ */
+public final class DeviceCatalog {
+
+	private static final DoubleMetaphone METAPHONE = new DoubleMetaphone();
+	private static final Soundex SOUNDEX = new Soundex();
+	private static final int MAX_EDIT_DISTANCE = 3;
+	// the number of letters per allowed edit, Double Metaphone keys are precise enough to allow a few more edits
+	private static final int LETTERS_PER_EDIT_METAPHONE = 4;
+	private static final int LETTERS_PER_EDIT = 5;
+
+	private final List<String> deviceNames;
+	private final Map<String, String> byName = new HashMap<>();
+	private final Map<String, List<Entry>> byMetaphone = new HashMap<>();
+	private final Map<String, List<Entry>> bySoundex = new HashMap<>();
+	private final Map<Integer, List<Entry>> byLength = new HashMap<>();
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param deviceNames
+	 *      The names of the devices as the binding knows them
+	 */
+	public DeviceCatalog(Collection<String> deviceNames) {
+		this.deviceNames = Collections.unmodifiableList(new ArrayList<>(deviceNames));
+		for (String deviceName : this.deviceNames) {
+			String normalized = normalize(deviceName);
+			if (normalized.isEmpty() || byName.putIfAbsent(normalized, deviceName) != null) {
+				continue;
+			}
+			Entry entry = new Entry(deviceName, normalized);
+			byMetaphone.computeIfAbsent(metaphone(normalized), key -> new ArrayList<>(1)).add(entry);
+			bySoundex.computeIfAbsent(soundex(normalized), key -> new ArrayList<>(1)).add(entry);
+			byLength.computeIfAbsent(normalized.length(), key -> new ArrayList<>()).add(entry);
+		}
+	}
+
+	/**
+	 * @return the names of the devices as the binding knows them
+	 */
+	public List<String> getDeviceNames() {
+		return deviceNames;
+	}
+
+	/**
+	 * To match a spoken device name against the catalog.
+	 *
+	 * @param spokenName
+	 *      The value of the device slot
+	 * @return the match, never null
+	 */
+	public DeviceMatch match(String spokenName) {
+		if (spokenName == null) {
+			return new DeviceMatch(DeviceMatch.Kind.UNKNOWN, null);
+		}
+		String normalized = normalize(spokenName);
+		String deviceName = byName.get(normalized);
+		if (deviceName != null) {
+			return new DeviceMatch(DeviceMatch.Kind.EXACT, deviceName);
+		}
+		if (normalized.isEmpty()) {
+			return new DeviceMatch(DeviceMatch.Kind.UNKNOWN, spokenName);
+		}
+
+		DeviceMatch match = closest(byMetaphone.get(metaphone(normalized)), normalized,
+				maxDistance(normalized, LETTERS_PER_EDIT_METAPHONE));
+		int maxDistance = maxDistance(normalized, LETTERS_PER_EDIT);
+		if (match == null) {
+			match = closest(bySoundex.get(soundex(normalized)), normalized, maxDistance);
+		}
+		if (match == null) {
+			List<Entry> similar = new ArrayList<>();
+			for (int length = normalized.length() - maxDistance; length <= normalized.length() + maxDistance; length++) {
+				similar.addAll(byLength.getOrDefault(length, Collections.emptyList()));
+			}
+			match = closest(similar, normalized, maxDistance);
+		}
+		return match != null ? match : new DeviceMatch(DeviceMatch.Kind.UNKNOWN, spokenName);
+	}
+
+	private static int maxDistance(String normalized, int lettersPerEdit) {
+		return Math.min(MAX_EDIT_DISTANCE, Math.max(1, normalized.length() / lettersPerEdit));
+	}
+
+	/**
+	 * To pick the candidate with the smallest edit distance.
+	 *
+	 * @return the match, or null if no candidate is within the maximum distance
+	 */
+	private static DeviceMatch closest(List<Entry> candidates, String normalized, int maxDistance) {
+		if (candidates == null || candidates.isEmpty()) {
+			return null;
+		}
+		Entry best = null;
+		int bestDistance = maxDistance + 1;
+		boolean tie = false;
+		for (Entry candidate : candidates) {
+			int distance = editDistance(normalized, candidate.normalized, Math.min(maxDistance, bestDistance));
+			if (distance < bestDistance) {
+				best = candidate;
+				bestDistance = distance;
+				tie = false;
+			} else if (distance == bestDistance && best != null) {
+				tie = true;
+			}
+		}
+		if (best == null) {
+			return null;
+		}
+		return tie ? new DeviceMatch(DeviceMatch.Kind.AMBIGUOUS, null)
+				: new DeviceMatch(DeviceMatch.Kind.CORRECTED, best.deviceName);
+	}
+
+	/**
+	 * To compute the Levenshtein distance, giving up once it exceeds the limit.
+	 *
+	 * @return the distance, or a value greater than the limit
+	 */
+	static int editDistance(String a, String b, int limit) {
+		if (Math.abs(a.length() - b.length()) > limit) {
+			return limit + 1;
+		}
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+			int rowMin = i;
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				rowMin = Math.min(rowMin, current[j]);
+			}
+			if (rowMin > limit) {
+				return limit + 1;
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return previous[b.length()];
+	}
+
+	/**
+	 * To bring a name to the form used as key: lower case, words separated by single spaces,
+	 * and without a leading article.
+	 */
+	static String normalize(String name) {
+		StringBuilder key = new StringBuilder(name.length());
+		boolean pendingSpace = false;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (!Character.isLetterOrDigit(c)) {
+				pendingSpace = key.length() > 0;
+				continue;
+			}
+			if (pendingSpace) {
+				key.append(' ');
+				pendingSpace = false;
+			}
+			key.append(Character.toLowerCase(c));
+		}
+		String normalized = key.toString();
+		if (normalized.startsWith("the ")) {
+			return normalized.substring(4);
+		}
+		if (normalized.startsWith("my ")) {
+			return normalized.substring(3);
+		}
+		return normalized;
+	}
+
+	private static String metaphone(String normalized) {
+		StringBuilder key = new StringBuilder();
+		for (String word : normalized.split(" ")) {
+			String code = METAPHONE.doubleMetaphone(word);
+			// words without letters, like the number of a lamp, are kept as they are
+			key.append(code == null || code.isEmpty() ? word : code).append(' ');
+		}
+		return key.toString();
+	}
+
+	private static String soundex(String normalized) {
+		StringBuilder key = new StringBuilder();
+		for (String word : normalized.split(" ")) {
+			String code;
+			try {
+				code = SOUNDEX.soundex(word);
+			} catch (IllegalArgumentException e) {
+				// the letter can not be mapped, e.g. an umlaut
+				code = null;
+			}
+			key.append(code == null || code.isEmpty() ? word : code).append(' ');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * A device name together with its normalized form.
+	 */
+	private static class Entry {
+		private final String deviceName;
+		private final String normalized;
+
+		Entry(String deviceName, String normalized) {
+			this.deviceName = deviceName;
+			this.normalized = normalized;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package de.qaware.echo.devices;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the device catalogs the bindings pushed, one per Echo ID. A catalog is replaced as a whole
+ * whenever the binding pushes a new one, so lookups never see a half updated index.
+ *
+ * @author Andreas Mayer
+ */
+public class DeviceCatalogRegistry {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(DeviceCatalogRegistry.class);
+
+	private final Map<String, DeviceCatalog> catalogs = new ConcurrentHashMap<>();
+
+	/**
+	 * To replace the catalog of a home.
+	 *
+	 * @param amazonEchoId
+	 *      The Echo ID of the home
+	 * @param deviceNames
+	 *      The names of all devices of the home
+	 */
+	public void update(String amazonEchoId, Collection<String> deviceNames) {
+		LOGGER.info("Updating device catalog of {} with {} devices", amazonEchoId, deviceNames.size());
+		catalogs.put(amazonEchoId, new DeviceCatalog(deviceNames));
+	}
+
+	/**
+	 * To forget the catalog of a home, e.g. because its binding disconnected.
+	 *
+	 * @param amazonEchoId
+	 *      The Echo ID of the home
+	 */
+	public void remove(String amazonEchoId) {
+		catalogs.remove(amazonEchoId);
+	}
+
+	/**
+	 * To match a spoken device name against the catalog of a home.
+	 *
+	 * @param amazonEchoId
+	 *      The Echo ID of the home
+	 * @param spokenName
+	 *      The value of the device slot
+	 * @return the match, {@link DeviceMatch.Kind#UNCHECKED} if the home has no catalog
+	 */
+	public DeviceMatch match(String amazonEchoId, String spokenName) {
+		DeviceCatalog catalog = catalogs.get(amazonEchoId);
+		if (catalog == null) {
+			return new DeviceMatch(DeviceMatch.Kind.UNCHECKED, spokenName);
+		}
+		return catalog.match(spokenName);
+	}
+
+	/**
+	 * @return the number of homes with a catalog
+	 */
+	public int size() {
+		return catalogs.size();
+	}
+}
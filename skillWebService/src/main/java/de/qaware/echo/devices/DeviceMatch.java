@@ -0,0 +1,56 @@
+package de.qaware.echo.devices;
+
+/**
+ * The result of matching a spoken device name against the device catalog of a home.
+ *
+ * @author Andreas Mayer
+ */
+public final class DeviceMatch {
+
+	/**
+	 * How the spoken name was matched.
+	 */
+	public enum Kind {
+		/** The name is in the catalog, apart from case, punctuation and a leading article. */
+		EXACT,
+		/** The name sounds like or is spelled almost like exactly one device. */
+		CORRECTED,
+		/** The name fits several devices equally well. */
+		AMBIGUOUS,
+		/** No device fits the name. */
+		UNKNOWN,
+		/** There is no catalog for the home, the name can not be checked. */
+		UNCHECKED
+	}
+
+	private final Kind kind;
+	private final String deviceName;
+
+	DeviceMatch(Kind kind, String deviceName) {
+		this.kind = kind;
+		this.deviceName = deviceName;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the name of the device as the binding knows it, or the spoken name if there is no unique match
+	 */
+	public String getDeviceName() {
+		return deviceName;
+	}
+
+	/**
+	 * @return whether the command may be sent to the binding
+	 */
+	public boolean isSendable() {
+		return kind == Kind.EXACT || kind == Kind.CORRECTED || kind == Kind.UNCHECKED;
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceMatch{" + "kind=" + kind + ", deviceName='" + deviceName + '\'' + '}';
+	}
+}
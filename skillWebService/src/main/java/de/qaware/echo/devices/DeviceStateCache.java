@@ -0,0 +1,100 @@
+package de.qaware.echo.devices;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the last known state of the devices the bindings reported, one map per Echo ID.
+ * The bindings report every change, also to an undefined state, so a state is trusted as long as the home is kept
+ * here. The home is removed once its last binding disconnected, a binding that registers again sends a full report.
+ *
+ * @author Andreas Mayer
+ */
+public class DeviceStateCache {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(DeviceStateCache.class);
+
+	private final Map<String, Map<String, String>> homes = new ConcurrentHashMap<>();
+	private final int maxDevicesPerHome;
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param maxDevicesPerHome
+	 *      The number of devices kept per home, further devices are ignored
+	 */
+	public DeviceStateCache(int maxDevicesPerHome) {
+		this.maxDevicesPerHome = maxDevicesPerHome;
+	}
+
+	/**
+	 * To take over the states a binding reported.
+	 *
+	 * @param amazonEchoId
+	 *      The Echo ID of the home
+	 * @param full
+	 *      True if the report contains all devices of the home and replaces everything known before
+	 * @param states
+	 *      The state of each reported device by device name, null to forget the state
+	 */
+	public void update(String amazonEchoId, boolean full, Map<String, String> states) {
+		Map<String, String> home = full ? new ConcurrentHashMap<>()
+				: homes.computeIfAbsent(amazonEchoId, key -> new ConcurrentHashMap<>());
+		for (Map.Entry<String, String> state : states.entrySet()) {
+			if (state.getKey() == null) {
+				continue;
+			}
+			String key = DeviceCatalog.normalize(state.getKey());
+			if (state.getValue() == null) {
+				home.remove(key);
+				continue;
+			}
+			if (home.size() >= maxDevicesPerHome && !home.containsKey(key)) {
+				LOGGER.warn("Ignoring state of {}, {} already reports {} devices", state.getKey(), amazonEchoId,
+						maxDevicesPerHome);
+				continue;
+			}
+			home.put(key, state.getValue());
+		}
+		if (full) {
+			homes.put(amazonEchoId, home);
+		}
+	}
+
+	/**
+	 * To look up the state of a device.
+	 *
+	 * @param amazonEchoId
+	 *      The Echo ID of the home
+	 * @param deviceName
+	 *      The name of the device
+	 * @return the state, or null if it is unknown
+	 */
+	public String getState(String amazonEchoId, String deviceName) {
+		Map<String, String> home = homes.get(amazonEchoId);
+		if (home == null || deviceName == null) {
+			return null;
+		}
+		return home.get(DeviceCatalog.normalize(deviceName));
+	}
+
+	/**
+	 * To forget the states of a home, e.g. because its binding disconnected.
+	 *
+	 * @param amazonEchoId
+	 *      The Echo ID of the home
+	 */
+	public void remove(String amazonEchoId) {
+		homes.remove(amazonEchoId);
+	}
+
+	/**
+	 * @return the number of homes with reported states
+	 */
+	public int size() {
+		return homes.size();
+	}
+}
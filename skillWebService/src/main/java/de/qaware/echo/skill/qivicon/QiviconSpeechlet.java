@@ -3,8 +3,13 @@ package de.qaware.echo.skill.qivicon;
 import com.amazon.speech.slu.Intent;
 import com.amazon.speech.slu.Slot;
 import com.amazon.speech.speechlet.*;
+import de.qaware.echo.devices.DeviceCatalogRegistry;
+import de.qaware.echo.devices.DeviceMatch;
+import de.qaware.echo.speech.AsyncSpeechlet;
+import de.qaware.echo.speech.SpeechTemplate;
 import de.qaware.echo.speech.SpeechletWrapper;
 import de.qaware.echo.util.ColorType;
+import de.qaware.echo.websocket.CommandResult;
 import de.qaware.echo.websocket.QiviconWebSocketHandler;
 import de.qaware.echo.websocket.protocol.ChangeColorMessage;
 import de.qaware.echo.websocket.protocol.OffMessage;
@@ -13,32 +18,91 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Handles the requests that where send by Alexa,
  * tries to forward them to the QIVICON environment and
- * returns a proper response.
+ * returns a proper response. Intents that wait for the binding are answered asynchronously.
  *
  * @author Andreas Mayer
  */
-public class QiviconSpeechlet implements Speechlet {
+public class QiviconSpeechlet implements AsyncSpeechlet {
 
 	private static final Logger LOG = LoggerFactory.getLogger(QiviconSpeechlet.class);
 	private static final String INVOCATION_NAME = "Qyvycon";
 	private static final String DEVICE_SLOT = "Device";
 	private static final String COLOR_SLOT = "Color";
+	private static final String REPROMPT = "Now, what do you want to do?";
+	private static final String INTRODUCTION = "control the philips hue light in your " + INVOCATION_NAME + " environment. " +
+			"For example you can say, turn on or turn off the light, or change the color of light to blue. ";
+
+	private static final SpeechTemplate TURNED_ON = SpeechTemplate.compile("Turned on {device}");
+	private static final SpeechTemplate TURN_ON = SpeechTemplate.compile("turn on {device}");
+	private static final SpeechTemplate TURNED_OFF = SpeechTemplate.compile("Turned off {device}");
+	private static final SpeechTemplate TURN_OFF = SpeechTemplate.compile("turn off {device}");
+	private static final SpeechTemplate COLOR_CHANGED = SpeechTemplate.compile("Changed the color of {device} to {color}.");
+	private static final SpeechTemplate CHANGE_COLOR = SpeechTemplate.compile("change the color of {device} to {color}");
+	private static final SpeechTemplate DEVICE_NOT_FOUND = SpeechTemplate.compile(
+			"There is no device called {device} in your " + INVOCATION_NAME + " environment.");
+	private static final SpeechTemplate DEVICE_AMBIGUOUS = SpeechTemplate.compile(
+			"There are several devices that sound like {device}. Please try again with the full name of the device.");
+	private static final SpeechTemplate COMMAND_REJECTED = SpeechTemplate.compile(
+			"Your " + INVOCATION_NAME + " environment was not able to {action}.");
+	private static final SpeechTemplate COMMAND_QUEUED = SpeechTemplate.compile(
+			"Your " + INVOCATION_NAME + " environment is reconnecting right now. I will {action} as soon as it is back.");
+	private static final SpeechTemplate COMMAND_TIMED_OUT = SpeechTemplate.compile(
+			"I sent the command to {action}, but your " + INVOCATION_NAME + " environment did not confirm it in time.");
+	private static final SpeechTemplate COMMAND_FAILED = SpeechTemplate.compile(
+			"Failed to {action}. You should check out the configuration of your Echo ID in your " + INVOCATION_NAME + " environment");
+	private static final SpeechTemplate STATE_UNKNOWN = SpeechTemplate.compile("I could not find out the state of {device} right now.");
+	private static final SpeechTemplate STATE_ON_OFF = SpeechTemplate.compile("{device} is {state}.");
+	private static final SpeechTemplate STATE_BRIGHTNESS = SpeechTemplate.compile("{device} is on at {brightness} percent brightness.");
+	private static final SpeechTemplate STATE_OTHER = SpeechTemplate.compile("The state of {device} is {state}.");
 
 	private final SpeechletWrapper wrapper = new SpeechletWrapper();
+
+	// responses without variable text are created once and shared by all requests
+	private final SpeechletResponse goodbyeResponse = wrapper.newTellResponse("Goodbye");
+	private final SpeechletResponse broadcastErrorResponse = wrapper.newTellResponse(
+			"There was an error while broadcasting your command. Please try again.");
+	private final SpeechletResponse queryErrorResponse = wrapper.newTellResponse(
+			"There was an error while asking for the state. Please try again.");
+	private final SpeechletResponse deadlineResponse = wrapper.newTellResponse(
+			"Your " + INVOCATION_NAME + " environment did not answer in time. Please try again.");
+	private final SpeechletResponse turnOnHelpResponse = wrapper.newAskResponse("I'm not sure which device you meant. " +
+			" To turn on any device, say for example: turn on lamp." + REPROMPT, REPROMPT);
+	private final SpeechletResponse turnOffHelpResponse = wrapper.newAskResponse("I'm not sure which device you meant. " +
+			" To turn off any device, say for example: turn off lamp." + REPROMPT, REPROMPT);
+	private final SpeechletResponse changeColorDeviceResponse = wrapper.newTellResponse("I'm not sure which device you meant. " +
+			" To change the color of your light, say for example: change the color of lamp to red.");
+	private final SpeechletResponse changeColorHelpResponse = wrapper.newAskResponse("I'm not sure which device you meant. " +
+			" To change the color of your light, say for example: change the color of lamp to red." + REPROMPT, REPROMPT);
+	private final SpeechletResponse unknownColorResponse = wrapper.newAskResponse("I'm not sure which color you meant. " +
+			"You can choose for example white, red, navy blue or turquoise. So which color do you want?", "Which color do you want?");
+	private final SpeechletResponse statusHelpResponse = wrapper.newAskResponse("I'm not sure which device you meant. " +
+			" To ask for the state of any device, say for example: is the lamp on." + REPROMPT, REPROMPT);
+	private final SpeechletResponse helpResponse = wrapper.newAskResponse("With " + INVOCATION_NAME + " you can " +
+			INTRODUCTION + " Now, what do u want to do?", "What do you want to do?");
+	private final SpeechletResponse welcomeResponse = wrapper.newAskResponse("Welcome to the " + INVOCATION_NAME + "skill. " +
+			"With this skill, you can " + INTRODUCTION + "Now, what do u want to do?",
+			"With this skill, you can " + INTRODUCTION + "Now, what do u want to do?");
 	private final QiviconWebSocketHandler webSocketHandler;
+	private final DeviceCatalogRegistry deviceCatalogs;
 
 	/**
 	 * Default-Constructor
 	 *
 	 * @param webSocketHandler
 	 *      The handler for the websocket connection
+	 * @param deviceCatalogs
+	 *      The device names the bindings pushed, to correct misheard names
 	 */
-	public QiviconSpeechlet(QiviconWebSocketHandler webSocketHandler) {
+	public QiviconSpeechlet(QiviconWebSocketHandler webSocketHandler, DeviceCatalogRegistry deviceCatalogs) {
 		this.webSocketHandler = webSocketHandler;
+		this.deviceCatalogs = deviceCatalogs;
 	}
 
 	@Override
@@ -54,6 +118,18 @@ public class QiviconSpeechlet implements Speechlet {
 
 	@Override
 	public SpeechletResponse onIntent(IntentRequest request, Session session) throws SpeechletException {
+		try {
+			return onIntentAsync(request, session).toCompletableFuture().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SpeechletException(e);
+		} catch (ExecutionException e) {
+			throw new SpeechletException(e.getCause());
+		}
+	}
+
+	@Override
+	public CompletionStage<SpeechletResponse> onIntentAsync(IntentRequest request, Session session) throws SpeechletException {
 		LOG.info("onIntent requestId={}, sessionId={}", request.getRequestId(), session.getSessionId());
 
 		Intent intent = request.getIntent();
@@ -66,19 +142,27 @@ public class QiviconSpeechlet implements Speechlet {
 				return handleTurnOffIntent(intent, session);
 			case "ChangeColorIntent":
 				return handleChangeColor(intent, session);
+			case "StatusIntent":
+				return handleStatusIntent(intent, session);
 			case "GetEchoIdIntent":
-				return handleGetEchoIdIntent(intent, session);
+				return CompletableFuture.completedFuture(handleGetEchoIdIntent(intent, session));
 
 			case "AMAZON.HelpIntent":
-				return handleHelpIntent();
+				return CompletableFuture.completedFuture(handleHelpIntent());
 			case "AMAZON.StopIntent":
-				return wrapper.newTellResponse("Goodbye");
+				return CompletableFuture.completedFuture(goodbyeResponse);
 
 			default:
 				throw new SpeechletException("Invalid Intent");
 		}
 	}
 
+	@Override
+	public SpeechletResponse onDeadline(IntentRequest request, Session session) {
+		LOG.warn("Intent {} missed its deadline, requestId={}", request.getIntent(), request.getRequestId());
+		return deadlineResponse;
+	}
+
 	@Override
 	public void onSessionEnded(SessionEndedRequest request, Session session) throws SpeechletException {
 		LOG.info("onSessionEnded requestId={}, sessionId={}", request.getRequestId(), session.getSessionId());
@@ -89,32 +173,30 @@ public class QiviconSpeechlet implements Speechlet {
 	 *
 	 * @param intent the intent request to handle
 	 * @param session the session associated with the request
-	 * @return {@link SpeechletResponse} the speechlet response
+	 * @return a stage that completes with the {@link SpeechletResponse}
 	 */
-	private SpeechletResponse handleTurnOnIntent(Intent intent, Session session) {
+	private CompletionStage<SpeechletResponse> handleTurnOnIntent(Intent intent, Session session) {
 		LOG.info("Handling turn on intent {}", intent);
 		Slot deviceSlot = intent.getSlot(DEVICE_SLOT);
 
 		if (deviceSlot != null && deviceSlot.getValue() != null) {
-			String deviceName = deviceSlot.getValue();
 			String echoId = session.getUser().getUserId();
+			DeviceMatch match = deviceCatalogs.match(echoId, deviceSlot.getValue());
+			if (!match.isSendable()) {
+				return CompletableFuture.completedFuture(newDeviceNotFoundResponse(match, deviceSlot.getValue()));
+			}
+			String deviceName = match.getDeviceName();
 
 			try {
-				if(!webSocketHandler.sendToBinding(echoId, new OnMessage(deviceName))) {
-					return wrapper.newTellResponse("Failed to turn on " + deviceName +
-							". You should check out the configuration of your Echo ID in your " + INVOCATION_NAME + " environment");
-				}
+				return webSocketHandler.sendCommandAsync(echoId, new OnMessage(deviceName))
+						.thenApply(result -> newCommandResponse(result, deviceName, TURNED_ON, TURN_ON, deviceName));
 			} catch (IOException e) {
 				LOG.warn("IOException while broadcasting", e);
-				return wrapper.newTellResponse("There was an error while broadcasting your command. Please try again.");
+				return CompletableFuture.completedFuture(broadcastErrorResponse);
 			}
-			return wrapper.newTellResponse("Turned on " + deviceName);
 		}
 
-		String repromt = "Now, what do you want to do?";
-		String outputText = "I'm not sure which device you meant. " +
-				" To turn on any device, say for example: turn on lamp." + repromt;
-		return wrapper.newAskResponse(outputText, repromt);
+		return CompletableFuture.completedFuture(turnOnHelpResponse);
 	}
 
 	/**
@@ -122,32 +204,30 @@ public class QiviconSpeechlet implements Speechlet {
 	 *
 	 * @param intent the intent request to handle
 	 * @param session the session associated with the request
-	 * @return {@link SpeechletResponse} the speechlet response
+	 * @return a stage that completes with the {@link SpeechletResponse}
 	 */
-	private SpeechletResponse handleTurnOffIntent(Intent intent, Session session) {
+	private CompletionStage<SpeechletResponse> handleTurnOffIntent(Intent intent, Session session) {
 		LOG.info("Handling turn off intent {}", intent);
 		Slot deviceSlot = intent.getSlot(DEVICE_SLOT);
 
 		if (deviceSlot != null && deviceSlot.getValue() != null) {
-			String deviceName = deviceSlot.getValue();
 			String echoId = session.getUser().getUserId();
+			DeviceMatch match = deviceCatalogs.match(echoId, deviceSlot.getValue());
+			if (!match.isSendable()) {
+				return CompletableFuture.completedFuture(newDeviceNotFoundResponse(match, deviceSlot.getValue()));
+			}
+			String deviceName = match.getDeviceName();
 
 			try {
-				if(!webSocketHandler.sendToBinding(echoId, new OffMessage(deviceName))) {
-					return wrapper.newTellResponse("Failed to turn off " + deviceName +
-							". You should check out the configuration of your Echo ID in your " + INVOCATION_NAME + " environment");
-				}
+				return webSocketHandler.sendCommandAsync(echoId, new OffMessage(deviceName))
+						.thenApply(result -> newCommandResponse(result, deviceName, TURNED_OFF, TURN_OFF, deviceName));
 			} catch (IOException e) {
 				LOG.warn("IOException while broadcasting", e);
-				return wrapper.newTellResponse("There was an error while broadcasting your command. Please try again.");
+				return CompletableFuture.completedFuture(broadcastErrorResponse);
 			}
-			return wrapper.newTellResponse("Turned off " + deviceName);
 		}
 
-		String repromt = "Now, what do you want to do?";
-		String outputText = "I'm not sure which device you meant. " +
-				" To turn off any device, say for example: turn off lamp." + repromt;
-		return wrapper.newAskResponse(outputText, repromt);
+		return CompletableFuture.completedFuture(turnOffHelpResponse);
 	}
 
 	/**
@@ -155,9 +235,9 @@ public class QiviconSpeechlet implements Speechlet {
 	 *
 	 * @param intent the intent request to handle
 	 * @param session the session associated with the request
-	 * @return {@link SpeechletResponse} the speechlet response
+	 * @return a stage that completes with the {@link SpeechletResponse}
 	 */
-	private SpeechletResponse handleChangeColor(Intent intent, Session session) {
+	private CompletionStage<SpeechletResponse> handleChangeColor(Intent intent, Session session) {
 		LOG.info("Handling change color intent {}", intent);
 		Slot deviceSlot = intent.getSlot(DEVICE_SLOT);
 
@@ -168,8 +248,7 @@ public class QiviconSpeechlet implements Speechlet {
 				if(deviceFromSession != null) {
 					deviceName = (String) deviceFromSession;
 				} else {
-					return wrapper.newTellResponse("I'm not sure which device you meant. " +
-							" To change the color of your light, say for example: change the color of lamp to red.");
+					return CompletableFuture.completedFuture(changeColorDeviceResponse);
 				}
 			}
 
@@ -178,37 +257,159 @@ public class QiviconSpeechlet implements Speechlet {
 				String color = colorSlot.getValue();
 				ColorType colorType = ColorType.getColorType(color);
 
+				if (colorType == ColorType.UNKOWN) {
+					session.setAttribute(DEVICE_SLOT, deviceName);
+					return CompletableFuture.completedFuture(unknownColorResponse);
+				}
+
+				String echoId = session.getUser().getUserId();
+				DeviceMatch match = deviceCatalogs.match(echoId, deviceName);
+				if (!match.isSendable()) {
+					session.removeAttribute(DEVICE_SLOT);
+					return CompletableFuture.completedFuture(newDeviceNotFoundResponse(match, deviceName));
+				}
+				deviceName = match.getDeviceName();
+
 				try {
-					switch (colorType) {
-						case RED:
-						case GREEN:
-						case BLUE:
-						case WHITE:
-							String echoId = session.getUser().getUserId();
-							LOG.info("Color identified as: {}, rgb values are [{},{},{}]", colorType.name(), colorType.getRed(), colorType.getGreen(), colorType.getBlue());
-							if(!webSocketHandler.sendToBinding(echoId, new ChangeColorMessage(deviceName, colorType.name(), colorType.getRed(), colorType.getGreen(), colorType.getBlue()))) {
-								return wrapper.newTellResponse("Failed to change the color of " + deviceName + " to " + color +
-										". You should check out the configuration of your Echo ID in your " + INVOCATION_NAME + " environment");
-							}
-							break;
-						default:
-							session.setAttribute(DEVICE_SLOT, deviceName);
-							return wrapper.newAskResponse("I'm not sure which color you meant. But you can choose between white, red, green and blue. So which color do you want?",
-							"Which color do you want?");
-					}
+					LOG.info("Color identified as: {}, rgb values are [{},{},{}]", colorType.name(), colorType.getRed(), colorType.getGreen(), colorType.getBlue());
+					String matchedName = deviceName;
+					return webSocketHandler.sendCommandAsync(echoId, newChangeColorMessage(deviceName, colorType))
+							.thenApply(result -> newCommandResponse(result, matchedName, COLOR_CHANGED, CHANGE_COLOR, matchedName, color));
 				} catch (IOException e) {
 					LOG.warn("IOException while broadcasting", e);
-					return wrapper.newTellResponse("There was an error while broadcasting your command. Please try again.");
+					return CompletableFuture.completedFuture(broadcastErrorResponse);
 				}
+			}
+		}
+
+		return CompletableFuture.completedFuture(changeColorHelpResponse);
+	}
+
+	/**
+	 * To tell the state of a specific device. The state comes from the cache if the binding reported it recently,
+	 * else the binding is asked for it.
+	 *
+	 * @param intent the intent request to handle
+	 * @param session the session associated with the request
+	 * @return a stage that completes with the {@link SpeechletResponse}
+	 */
+	private CompletionStage<SpeechletResponse> handleStatusIntent(Intent intent, Session session) {
+		LOG.info("Handling status intent {}", intent);
+		Slot deviceSlot = intent.getSlot(DEVICE_SLOT);
+
+		if (deviceSlot != null && deviceSlot.getValue() != null) {
+			String echoId = session.getUser().getUserId();
+			DeviceMatch match = deviceCatalogs.match(echoId, deviceSlot.getValue());
+			if (!match.isSendable()) {
+				return CompletableFuture.completedFuture(newDeviceNotFoundResponse(match, deviceSlot.getValue()));
+			}
+			String deviceName = match.getDeviceName();
 
-				return wrapper.newTellResponse("Changed the color of " + deviceName + " to " + color + ".");
+			try {
+				return webSocketHandler.queryStateAsync(echoId, deviceName).thenApply(state -> state == null
+						? wrapper.newTellResponse(STATE_UNKNOWN, deviceName) : describeState(deviceName, state));
+			} catch (IOException e) {
+				LOG.warn("IOException while querying state", e);
+				return CompletableFuture.completedFuture(queryErrorResponse);
+			}
+		}
+
+		return CompletableFuture.completedFuture(statusHelpResponse);
+	}
+
+	/**
+	 * To put the state of a device into words. Knows the on/off, color and percent states of the binding,
+	 * a color or percent state with a brightness of zero means off. Any other state, like a temperature,
+	 * is told as it is.
+	 *
+	 * @param deviceName the name of the device
+	 * @param state the state as reported by the binding, e.g. "ON", "50%" or "120,100,50"
+	 * @return {@link SpeechletResponse} the speechlet response
+	 */
+	private SpeechletResponse describeState(String deviceName, String state) {
+		if ("ON".equals(state)) {
+			return wrapper.newTellResponse(STATE_ON_OFF, deviceName, "on");
+		}
+		if ("OFF".equals(state)) {
+			return wrapper.newTellResponse(STATE_ON_OFF, deviceName, "off");
+		}
+		String brightnessValue;
+		if (state.endsWith("%")) {
+			brightnessValue = state.substring(0, state.length() - 1);
+		} else {
+			String[] hsb = state.split(",");
+			if (hsb.length != 3) {
+				return wrapper.newTellResponse(STATE_OTHER, deviceName, state);
 			}
+			brightnessValue = hsb[2];
 		}
+		try {
+			int brightness = (int) Math.round(Double.parseDouble(brightnessValue));
+			if (brightness == 0) {
+				return wrapper.newTellResponse(STATE_ON_OFF, deviceName, "off");
+			}
+			return wrapper.newTellResponse(STATE_BRIGHTNESS, deviceName, Integer.toString(brightness));
+		} catch (NumberFormatException e) {
+			return wrapper.newTellResponse(STATE_OTHER, deviceName, state);
+		}
+	}
 
-		String repromt = "Now, what do you want to do?";
-		String outputText = "I'm not sure which device you meant. " +
-				" To change the color of your light, say for example: change the color of lamp to red." + repromt;
-		return wrapper.newAskResponse(outputText, repromt);
+	/**
+	 * To tell the user that the spoken device name does not fit the devices of the home,
+	 * without having asked the binding.
+	 *
+	 * @param match the result of matching the name against the device catalog
+	 * @param spokenName the value of the device slot
+	 * @return {@link SpeechletResponse} the speechlet response
+	 */
+	private SpeechletResponse newDeviceNotFoundResponse(DeviceMatch match, String spokenName) {
+		LOG.info("Device {} not found in catalog: {}", spokenName, match.getKind());
+		if (match.getKind() == DeviceMatch.Kind.AMBIGUOUS) {
+			return wrapper.newTellResponse(DEVICE_AMBIGUOUS, spokenName);
+		}
+		return wrapper.newTellResponse(DEVICE_NOT_FOUND, spokenName);
+	}
+
+	/**
+	 * To build the command for a color, with the hsb-value computed once per color, so the binding does not have
+	 * to convert it.
+	 *
+	 * @param deviceName the device to change the color of
+	 * @param colorType the color
+	 * @return the command
+	 */
+	private static ChangeColorMessage newChangeColorMessage(String deviceName, ColorType colorType) {
+		return new ChangeColorMessage(deviceName, colorType.name(), colorType.getRed(), colorType.getGreen(), colorType.getBlue(),
+				(int) Math.round(colorType.getHue()) % 360, (int) Math.round(colorType.getSaturation()),
+				(int) Math.round(colorType.getBrightness()));
+	}
+
+	/**
+	 * To tell the user what happened to a command sent to the binding.
+	 *
+	 * @param result the outcome of the command
+	 * @param deviceName the device the command was meant for
+	 * @param confirmed the text to speak if the command was executed
+	 * @param action what the command should have done, e.g. "turn on {device}"
+	 * @param values the values of the placeholders, the same for both templates
+	 * @return {@link SpeechletResponse} the speechlet response
+	 */
+	private SpeechletResponse newCommandResponse(CommandResult result, String deviceName, SpeechTemplate confirmed,
+												 SpeechTemplate action, String... values) {
+		switch (result) {
+			case CONFIRMED:
+				return wrapper.newTellResponse(confirmed, values);
+			case REJECTED:
+				return wrapper.newTellResponse(COMMAND_REJECTED, action.render(values));
+			case UNKNOWN_DEVICE:
+				return wrapper.newTellResponse(DEVICE_NOT_FOUND, deviceName);
+			case QUEUED:
+				return wrapper.newTellResponse(COMMAND_QUEUED, action.render(values));
+			case TIMED_OUT:
+				return wrapper.newTellResponse(COMMAND_TIMED_OUT, action.render(values));
+			default:
+				return wrapper.newTellResponse(COMMAND_FAILED, action.render(values));
+		}
 	}
 
 	/**
@@ -235,11 +436,7 @@ public class QiviconSpeechlet implements Speechlet {
 	 */
 	private SpeechletResponse handleHelpIntent() {
 		LOG.info("Sending help message");
-		String outputText = "With " + INVOCATION_NAME + " you can control the philips hue light in your " + INVOCATION_NAME + " environment. " +
-				"For example you can say, turn on or turn off the light, or change the color of light to blue. " +
-				" Now, what do u want to do?";
-		String repromt = "What do you want to do?";
-		return wrapper.newAskResponse(outputText, repromt);
+		return helpResponse;
 	}
 
 	/**
@@ -249,14 +446,7 @@ public class QiviconSpeechlet implements Speechlet {
 	 */
 	private SpeechletResponse getWelcomeMessage() {
 		LOG.info("Sending welcome message.");
-		String outputText = "Welcome to the " + INVOCATION_NAME + "skill. " +
-				"With this skill, you can control the philips hue light in your " + INVOCATION_NAME + " environment. " +
-				"For example you can say, turn on or turn off the light, or change the color of light to blue. " +
-				"Now, what do u want to do?";
-		String repromt = "With this skill, you can control the philips hue light in your " + INVOCATION_NAME + " environment. " +
-				"For example you can say, turn on or turn off the light, or change the color of light to blue. " +
-				"Now, what do u want to do?";
-		return wrapper.newAskResponse(outputText, repromt);
+		return welcomeResponse;
 	}
 
 }
@@ -0,0 +1,39 @@
+package de.qaware.echo.speech;
+
+import com.amazon.speech.speechlet.IntentRequest;
+import com.amazon.speech.speechlet.Session;
+import com.amazon.speech.speechlet.Speechlet;
+import com.amazon.speech.speechlet.SpeechletException;
+import com.amazon.speech.speechlet.SpeechletResponse;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A {@link Speechlet} that answers intents without blocking the thread of the request, e.g. while it waits for the
+ * binding. Served by the {@link AsyncSpeechletServlet}, all other requests are handled synchronously.
+ *
+ * @author Andreas Mayer
+ */
+public interface AsyncSpeechlet extends Speechlet {
+
+	/**
+	 * To handle an intent.
+	 *
+	 * @param request the intent request to handle
+	 * @param session the session associated with the request
+	 * @return a stage that completes with the response
+	 * @throws SpeechletException If the intent can not be handled at all
+	 */
+	CompletionStage<SpeechletResponse> onIntentAsync(IntentRequest request, Session session) throws SpeechletException;
+
+	/**
+	 * To answer an intent whose response was not ready before the deadline of the request.
+	 *
+	 * @param request the intent request
+	 * @param session the session associated with the request
+	 * @return the response, or null to fail the request
+	 */
+	default SpeechletResponse onDeadline(IntentRequest request, Session session) {
+		return null;
+	}
+}
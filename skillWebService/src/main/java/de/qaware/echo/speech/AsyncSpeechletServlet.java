@@ -0,0 +1,343 @@
+package de.qaware.echo.speech;
+
+import com.amazon.speech.Sdk;
+import com.amazon.speech.json.SpeechletRequestEnvelope;
+import com.amazon.speech.json.SpeechletResponseEnvelope;
+import com.amazon.speech.speechlet.*;
+import com.amazon.speech.speechlet.verifier.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serves a {@link Speechlet} like the SpeechletServlet of the SDK, with the same verifications and system properties,
+ * but releases the thread of the request while an {@link AsyncSpeechlet} handles an intent.
+ * The response is written once the intent is handled, or when the deadline of the request is over.
+ * The signature is checked by a {@link CachedSignatureVerifier}, and requests seen before can be rejected by a
+ * {@link ReplayCache}. A retry of a request is answered with the response of the first one by the
+ * {@link RequestDeduplicator}, before it could count as replayed.
+ * Plain speechlets are served synchronously, unless an executor for blocking intents is given: then every intent is
+ * handled by the blocking {@link Speechlet#onIntent} on that executor, e.g. on a virtual thread of its own.
+ *
+ * @author Andreas Mayer
+ */
+public class AsyncSpeechletServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncSpeechletServlet.class);
+	private static final long DEFAULT_CERTIFICATE_MAX_AGE = TimeUnit.HOURS.toMillis(1);
+
+	private final transient Speechlet speechlet;
+	private final long deadline;
+	private final transient Executor blockingExecutor;
+	private transient CachedSignatureVerifier signatureVerifier = new CachedSignatureVerifier(DEFAULT_CERTIFICATE_MAX_AGE);
+	private transient ReplayCache replayCache;
+	private transient RequestDeduplicator deduplicator;
+	private final boolean disableRequestSignatureCheck =
+			Boolean.parseBoolean(System.getProperty(Sdk.DISABLE_REQUEST_SIGNATURE_CHECK_SYSTEM_PROPERTY));
+	private final transient List<SpeechletRequestVerifier> requestVerifiers = new ArrayList<>();
+	private final transient List<SpeechletResponseVerifier> responseVerifiers = Arrays.asList(
+			new ResponseSizeSpeechletResponseVerifier(), new OutputSpeechSpeechletResponseVerifier(),
+			new CardSpeechletResponseVerifier());
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param speechlet
+	 *      The speechlet to serve
+	 * @param deadline
+	 *      The time in milliseconds an intent may take until the request is answered anyway
+	 */
+	public AsyncSpeechletServlet(Speechlet speechlet, long deadline) {
+		this(speechlet, deadline, null);
+	}
+
+	/**
+	 * Constructor for handling the intents in the blocking style
+	 *
+	 * @param speechlet
+	 *      The speechlet to serve
+	 * @param deadline
+	 *      The time in milliseconds an intent may take until the request is answered anyway
+	 * @param blockingExecutor
+	 *      The executor that calls {@link Speechlet#onIntent}, null to call the speechlet on the request thread
+	 */
+	public AsyncSpeechletServlet(Speechlet speechlet, long deadline, Executor blockingExecutor) {
+		this.speechlet = speechlet;
+		this.deadline = deadline;
+		this.blockingExecutor = blockingExecutor;
+		requestVerifiers.add(new ApplicationIdSpeechletRequestVerifier(getSupportedApplicationIds()));
+		String tolerance = System.getProperty(Sdk.TIMESTAMP_TOLERANCE_SYSTEM_PROPERTY);
+		if (StringUtils.hasText(tolerance)) {
+			requestVerifiers.add(new TimestampSpeechletRequestVerifier(Long.parseLong(tolerance), TimeUnit.SECONDS));
+		}
+	}
+
+	/**
+	 * @param signatureVerifier
+	 *      The verifier that checks the signature of the requests, unless the check is disabled
+	 */
+	public void setSignatureVerifier(CachedSignatureVerifier signatureVerifier) {
+		this.signatureVerifier = signatureVerifier;
+	}
+
+	/**
+	 * @param replayCache
+	 *      The cache of the requests seen, null to accept requests seen before
+	 */
+	public void setReplayCache(ReplayCache replayCache) {
+		this.replayCache = replayCache;
+	}
+
+	/**
+	 * @param deduplicator
+	 *      The responses to recent requests, null to handle retried requests again
+	 */
+	public void setDeduplicator(RequestDeduplicator deduplicator) {
+		this.deduplicator = deduplicator;
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+		SpeechletRequestEnvelope envelope;
+		CompletableFuture<SpeechletResponse> result;
+		try {
+			if (disableRequestSignatureCheck) {
+				LOGGER.warn("Warning: Speechlet request signature verification has been disabled!");
+			} else {
+				signatureVerifier.checkRequestSignature(body,
+						request.getHeader(Sdk.SIGNATURE_REQUEST_HEADER),
+						request.getHeader(Sdk.SIGNATURE_CERTIFICATE_CHAIN_URL_REQUEST_HEADER));
+			}
+			envelope = SpeechletRequestEnvelope.fromJson(body);
+			verify(envelope);
+			String requestId = envelope.getRequest().getRequestId();
+			CompletableFuture<SpeechletResponse> first = new CompletableFuture<>();
+			CompletableFuture<SpeechletResponse> earlier = deduplicator != null ? deduplicator.register(requestId, first) : null;
+			if (earlier != null) {
+				LOGGER.info("Answering retried request {} with the response of the first one", requestId);
+			} else {
+				try {
+					if (replayCache != null && !replayCache.markSeen(requestId, envelope.getRequest().getTimestamp())) {
+						throw new SecurityException("Request " + requestId + " was seen before");
+					}
+					dispatch(envelope).whenComplete((speechletResponse, error) -> {
+						if (error != null) {
+							first.completeExceptionally(error);
+						} else {
+							first.complete(speechletResponse);
+						}
+					});
+				} catch (Exception e) {
+					// lets retries of the request waiting for it fail as well
+					first.completeExceptionally(e);
+					throw e;
+				}
+			}
+			result = earlier != null ? earlier : first;
+		} catch (SpeechletRequestHandlerException | SecurityException e) {
+			LOGGER.error("Exception occurred in doPost, returning status code {}", HttpServletResponse.SC_BAD_REQUEST, e);
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		} catch (Exception e) {
+			LOGGER.error("Exception occurred in doPost, returning status code {}", HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+			return;
+		}
+
+		if (result.isDone()) {
+			writeResult(response, envelope, result);
+			return;
+		}
+
+		AsyncContext context = request.startAsync(request, response);
+		context.setTimeout(deadline);
+		AtomicBoolean answered = new AtomicBoolean();
+		context.addListener(new DeadlineListener(envelope, answered));
+		result.whenComplete((speechletResponse, error) -> {
+			if (answered.compareAndSet(false, true)) {
+				// the stage completes on the thread of the websocket or of a timer, the response is written by the container
+				context.start(() -> {
+					writeResult(response, envelope, result);
+					context.complete();
+				});
+			}
+		});
+	}
+
+	/**
+	 * To call the speechlet for the request, like the SpeechletRequestDispatcher of the SDK does.
+	 *
+	 * @return a stage that completes with the response, null for requests without one
+	 */
+	private CompletionStage<SpeechletResponse> dispatch(SpeechletRequestEnvelope envelope)
+			throws SpeechletException, SpeechletRequestHandlerException {
+		SpeechletRequest request = envelope.getRequest();
+		Session session = envelope.getSession();
+		if (session != null && session.isNew()) {
+			speechlet.onSessionStarted(SessionStartedRequest.builder().withRequestId(request.getRequestId()).build(), session);
+		}
+
+		if (request instanceof IntentRequest) {
+			if (blockingExecutor != null) {
+				return CompletableFuture.supplyAsync(() -> {
+					try {
+						return speechlet.onIntent((IntentRequest) request, session);
+					} catch (SpeechletException e) {
+						throw new CompletionException(e);
+					}
+				}, blockingExecutor);
+			}
+			if (speechlet instanceof AsyncSpeechlet) {
+				return ((AsyncSpeechlet) speechlet).onIntentAsync((IntentRequest) request, session);
+			}
+			return CompletableFuture.completedFuture(speechlet.onIntent((IntentRequest) request, session));
+		}
+		if (request instanceof LaunchRequest) {
+			return CompletableFuture.completedFuture(speechlet.onLaunch((LaunchRequest) request, session));
+		}
+		if (request instanceof SessionEndedRequest) {
+			speechlet.onSessionEnded((SessionEndedRequest) request, session);
+			return CompletableFuture.completedFuture(null);
+		}
+		throw new SpeechletRequestHandlerException("Unsupported request type " + request.getClass().getName());
+	}
+
+	private void verify(SpeechletRequestEnvelope envelope) throws SpeechletRequestHandlerException {
+		for (SpeechletRequestVerifier verifier : requestVerifiers) {
+			if (!verifier.verify(envelope.getRequest(), envelope.getSession())) {
+				throw new SpeechletRequestHandlerException(String.format("Could not validate SpeechletRequest %s using verifier %s, rejecting request",
+						envelope.getRequest().getRequestId(), verifier.getClass().getSimpleName()));
+			}
+		}
+	}
+
+	private void writeResult(HttpServletResponse response, SpeechletRequestEnvelope envelope,
+							 CompletableFuture<SpeechletResponse> result) {
+		try {
+			SpeechletResponse speechletResponse;
+			try {
+				speechletResponse = result.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+			writeResponse(response, envelope, speechletResponse);
+		} catch (Exception e) {
+			sendError(response, e);
+		}
+	}
+
+	private void writeResponse(HttpServletResponse response, SpeechletRequestEnvelope envelope,
+							   SpeechletResponse speechletResponse) throws IOException, SpeechletRequestHandlerException {
+		Session session = envelope.getSession();
+		SpeechletResponseEnvelope responseEnvelope = new SpeechletResponseEnvelope();
+		responseEnvelope.setVersion(Sdk.VERSION);
+		responseEnvelope.setResponse(speechletResponse);
+		if (session != null && speechletResponse != null && !speechletResponse.getShouldEndSession()) {
+			responseEnvelope.setSessionAttributes(session.getAttributes());
+		}
+		for (SpeechletResponseVerifier verifier : responseVerifiers) {
+			if (!verifier.verify(responseEnvelope, session)) {
+				throw new SpeechletRequestHandlerException(String.format("Could not validate SpeechletResponse %s using verifier %s, rejecting response",
+						envelope.getRequest().getRequestId(), verifier.getClass().getSimpleName()));
+			}
+		}
+
+		byte[] json = responseEnvelope.toJsonBytes();
+		response.setContentType("application/json");
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentLength(json.length);
+		try (OutputStream out = response.getOutputStream()) {
+			out.write(json);
+		}
+	}
+
+	private static void sendError(HttpServletResponse response, Exception e) {
+		LOGGER.error("Exception occurred in doPost, returning status code {}", HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
+		try {
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+		} catch (IOException sendException) {
+			LOGGER.warn("Unable to send the error", sendException);
+		}
+	}
+
+	private static Set<String> getSupportedApplicationIds() {
+		String applicationIds = System.getProperty(Sdk.SUPPORTED_APPLICATION_IDS_SYSTEM_PROPERTY);
+		if (!StringUtils.hasText(applicationIds)) {
+			return Collections.emptySet();
+		}
+		return new HashSet<>(Arrays.asList(applicationIds.split(",")));
+	}
+
+	/**
+	 * Answers the request when its deadline is over, unless the speechlet was faster.
+	 */
+	private class DeadlineListener implements AsyncListener {
+		private final SpeechletRequestEnvelope envelope;
+		private final AtomicBoolean answered;
+
+		DeadlineListener(SpeechletRequestEnvelope envelope, AtomicBoolean answered) {
+			this.envelope = envelope;
+			this.answered = answered;
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException {
+			if (!answered.compareAndSet(false, true)) {
+				return;
+			}
+			LOGGER.warn("Request {} missed its deadline of {} ms", envelope.getRequest().getRequestId(), deadline);
+			HttpServletResponse response = (HttpServletResponse) event.getAsyncContext().getResponse();
+			SpeechletResponse speechletResponse = speechlet instanceof AsyncSpeechlet ? ((AsyncSpeechlet) speechlet)
+					.onDeadline((IntentRequest) envelope.getRequest(), envelope.getSession()) : null;
+			try {
+				if (speechletResponse == null) {
+					throw new SpeechletException("No response before the deadline");
+				}
+				writeResponse(response, envelope, speechletResponse);
+			} catch (Exception e) {
+				sendError(response, e);
+			}
+			event.getAsyncContext().complete();
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			// nothing to clean up
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			answered.set(true);
+			LOGGER.warn("Request {} failed", envelope.getRequest().getRequestId(), event.getThrowable());
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// not restarted
+		}
+	}
+}
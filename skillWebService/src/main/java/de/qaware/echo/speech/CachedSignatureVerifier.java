@@ -0,0 +1,247 @@
+package de.qaware.echo.speech;
+
+import com.amazon.speech.Sdk;
+import org.apache.commons.codec.binary.Base64;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Checks the signature of a request like the SpeechletRequestSignatureVerifier of the SDK, but cheap enough to stay
+ * enabled: the certificate chain behind a URL is downloaded, parsed and checked against the trust store only once
+ * per maximum age, and every thread keeps its own {@link Signature} instance.
+ * A cached certificate is still checked for its validity on every request.
+ *
+ * The chains are cached by their normalized path, so spellings of the same URL share one entry, and a chain is
+ * loaded by one thread at a time while the others wait for it. Chains that fail to load are not kept.
+ *
+ * @author Andreas Mayer
+ */
+public class CachedSignatureVerifier {
+
+	private static final String CHAIN_URL_PROTOCOL = "https";
+	private static final String CHAIN_URL_HOST = "s3.amazonaws.com";
+	private static final String CHAIN_URL_PATH_PREFIX = "/echo.api/";
+	private static final int DNS_NAME = 2;
+	// Amazon signs with few certificates at a time, more are only seen while it rotates them
+	private static final int MAX_CACHED_CHAINS = 16;
+
+	// least recently used first, so the chain in use stays while others come and go
+	private final Map<String, CachedChain> chains = new LinkedHashMap<String, CachedChain>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedChain> eldest) {
+			return size() > MAX_CACHED_CHAINS;
+		}
+	};
+	private final ThreadLocal<Signature> signatures = ThreadLocal.withInitial(CachedSignatureVerifier::newSignature);
+	private final long maxAge;
+	private final ChainLoader chainLoader;
+	private final X509TrustManager trustManager;
+	private final LongSupplier clock;
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param maxAge
+	 *      The time in milliseconds after which a certificate chain is downloaded and checked again
+	 */
+	public CachedSignatureVerifier(long maxAge) {
+		this(maxAge, URL::openStream, defaultTrustManager(), System::currentTimeMillis);
+	}
+
+	CachedSignatureVerifier(long maxAge, ChainLoader chainLoader, X509TrustManager trustManager, LongSupplier clock) {
+		this.maxAge = maxAge;
+		this.chainLoader = chainLoader;
+		this.trustManager = trustManager;
+		this.clock = clock;
+	}
+
+	/**
+	 * To check that a request was signed by Amazon.
+	 *
+	 * @param body
+	 *      The body of the request
+	 * @param signature
+	 *      The Base64 encoded signature of the body, from the Signature header
+	 * @param chainUrl
+	 *      The URL of the certificate chain, from the SignatureCertChainUrl header
+	 * @throws SecurityException If the signature or the certificate is missing or invalid
+	 */
+	public void checkRequestSignature(byte[] body, String signature, String chainUrl) {
+		if (signature == null || chainUrl == null) {
+			throw new SecurityException("Missing signature/certificate for the provided speechlet request");
+		}
+		boolean valid;
+		try {
+			Signature verifier = signatures.get();
+			// initializing resets whatever a failed check left behind
+			verifier.initVerify(getCertificate(chainUrl).getPublicKey());
+			verifier.update(body);
+			valid = verifier.verify(Base64.decodeBase64(signature));
+		} catch (GeneralSecurityException | IOException e) {
+			throw new SecurityException("Failed to verify the signature/certificate for the provided speechlet request", e);
+		}
+		if (!valid) {
+			throw new SecurityException("Failed to verify the signature/certificate for the provided speechlet request");
+		}
+	}
+
+	private X509Certificate getCertificate(String chainUrl) throws CertificateException, IOException {
+		URL url = verifyChainUrl(chainUrl);
+		// host, protocol and port are fixed, the path tells the chains apart
+		String key = url.getPath();
+		CachedChain chain;
+		synchronized (chains) {
+			chain = chains.computeIfAbsent(key, path -> new CachedChain());
+		}
+		long now = clock.getAsLong();
+		X509Certificate certificate;
+		try {
+			certificate = chain.get(url, now);
+		} catch (CertificateException | IOException e) {
+			synchronized (chains) {
+				chains.remove(key, chain);
+			}
+			throw e;
+		}
+		certificate.checkValidity(new Date(now));
+		return certificate;
+	}
+
+	/**
+	 * To download and check a certificate chain, like the SDK does.
+	 *
+	 * @return the signing certificate
+	 */
+	private X509Certificate load(URL chainUrl, long now) throws CertificateException, IOException {
+		Collection<? extends Certificate> chain;
+		try (InputStream in = chainLoader.open(chainUrl)) {
+			chain = CertificateFactory.getInstance(Sdk.SIGNATURE_CERTIFICATE_TYPE).generateCertificates(in);
+		}
+		if (chain.isEmpty()) {
+			throw new CertificateException("No certificate at URL: " + chainUrl);
+		}
+		X509Certificate[] certificates = chain.toArray(new X509Certificate[chain.size()]);
+		X509Certificate signingCertificate = certificates[0];
+		signingCertificate.checkValidity(new Date(now));
+		trustManager.checkServerTrusted(certificates, Sdk.SIGNATURE_KEY_TYPE);
+		if (!hasEchoApiDomainName(signingCertificate)) {
+			throw new CertificateException("The provided certificate is not valid for the Echo SDK");
+		}
+		return signingCertificate;
+	}
+
+	/**
+	 * To make sure the certificate chain is only ever loaded from where Amazon keeps it.
+	 */
+	static URL verifyChainUrl(String chainUrl) throws CertificateException {
+		URL url;
+		try {
+			url = new URI(chainUrl).normalize().toURL();
+		} catch (URISyntaxException | IOException | IllegalArgumentException e) {
+			throw new CertificateException(String.format("SigningCertificateChainUrl [%s] is malformed", chainUrl), e);
+		}
+		if (!CHAIN_URL_HOST.equalsIgnoreCase(url.getHost())) {
+			throw new CertificateException(String.format("SigningCertificateChainUrl [%s] does not contain the required hostname of [%s]",
+					chainUrl, CHAIN_URL_HOST));
+		}
+		if (!url.getPath().startsWith(CHAIN_URL_PATH_PREFIX)) {
+			throw new CertificateException(String.format("SigningCertificateChainUrl path [%s] is invalid. Expecting path to start with [%s]",
+					url.getPath(), CHAIN_URL_PATH_PREFIX));
+		}
+		if (!CHAIN_URL_PROTOCOL.equalsIgnoreCase(url.getProtocol())) {
+			throw new CertificateException(String.format("SigningCertificateChainUrl [%s] contains an unsupported protocol [%s]",
+					chainUrl, url.getProtocol()));
+		}
+		if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+			throw new CertificateException(String.format("SigningCertificateChainUrl [%s] contains an invalid port [%d]",
+					chainUrl, url.getPort()));
+		}
+		if (url.getQuery() != null || url.getRef() != null) {
+			throw new CertificateException(String.format("SigningCertificateChainUrl [%s] must not contain a query or fragment",
+					chainUrl));
+		}
+		return url;
+	}
+
+	private static boolean hasEchoApiDomainName(X509Certificate certificate) throws CertificateException {
+		Collection<List<?>> names = certificate.getSubjectAlternativeNames();
+		if (names == null) {
+			return false;
+		}
+		for (List<?> name : names) {
+			if (Integer.valueOf(DNS_NAME).equals(name.get(0)) && Sdk.ECHO_API_DOMAIN_NAME.equals(name.get(1))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Signature newSignature() {
+		try {
+			return Signature.getInstance(Sdk.SIGNATURE_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Signature algorithm " + Sdk.SIGNATURE_ALGORITHM + " is not available", e);
+		}
+	}
+
+	private static X509TrustManager defaultTrustManager() {
+		try {
+			TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+			factory.init((KeyStore) null);
+			for (TrustManager trustManager : factory.getTrustManagers()) {
+				if (trustManager instanceof X509TrustManager) {
+					return (X509TrustManager) trustManager;
+				}
+			}
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Unable to load the trust store", e);
+		}
+		throw new IllegalStateException("No X509 TrustManager available. Unable to check certificate chain");
+	}
+
+	/**
+	 * To open the certificate chain behind a verified URL.
+	 */
+	interface ChainLoader {
+		InputStream open(URL url) throws IOException;
+	}
+
+	/**
+	 * The certificate chain behind a path, loaded again once it is older than the maximum age.
+	 */
+	private class CachedChain {
+		private X509Certificate certificate;
+		private long loadedAt;
+
+		synchronized X509Certificate get(URL url, long now) throws CertificateException, IOException {
+			if (certificate == null || now - loadedAt > maxAge) {
+				certificate = load(url, now);
+				loadedAt = now;
+			}
+			return certificate;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package de.qaware.echo.speech;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the requests seen within a time window, so a captured request that is sent again is rejected.
+ * A request is known by its ID and its timestamp, both covered by the signature.
+ *
+ * The cache is bounded: when it is full, the oldest requests are forgotten before their window is over.
+ * A request older than the window must be rejected by its timestamp, so the timestamp tolerance should not
+ * exceed the window.
+ *
+ * @author Andreas Mayer
+ */
+public class ReplayCache {
+
+	// in the order the requests arrived, so the expired ones are always at the head
+	private final Map<String, Long> seen = new LinkedHashMap<>();
+	private final long window;
+	private final int maxSize;
+	private final LongSupplier clock;
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param window
+	 *      The time in milliseconds a request is remembered
+	 * @param maxSize
+	 *      The maximum number of requests remembered
+	 */
+	public ReplayCache(long window, int maxSize) {
+		this(window, maxSize, System::currentTimeMillis);
+	}
+
+	ReplayCache(long window, int maxSize, LongSupplier clock) {
+		this.window = window;
+		this.maxSize = maxSize;
+		this.clock = clock;
+	}
+
+	/**
+	 * To remember a request.
+	 *
+	 * @param requestId
+	 *      The ID of the request
+	 * @param timestamp
+	 *      The timestamp of the request
+	 * @return true if the request is new, false if it was seen within the window
+	 */
+	public synchronized boolean markSeen(String requestId, Date timestamp) {
+		long now = clock.getAsLong();
+		Iterator<Long> arrivals = seen.values().iterator();
+		while (arrivals.hasNext() && now - arrivals.next() > window) {
+			arrivals.remove();
+		}
+
+		String key = requestId + '@' + (timestamp != null ? timestamp.getTime() : "");
+		if (seen.containsKey(key)) {
+			return false;
+		}
+		if (seen.size() >= maxSize) {
+			seen.remove(seen.keySet().iterator().next());
+		}
+		seen.put(key, now);
+		return true;
+	}
+
+	/**
+	 * @return the number of requests remembered
+	 */
+	public synchronized int size() {
+		return seen.size();
+	}
+}
@@ -0,0 +1,107 @@
+package de.qaware.echo.speech;
+
+import com.amazon.speech.speechlet.SpeechletResponse;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the responses to the requests of a time window by request ID. When Alexa retries a request because
+ * the endpoint was slow, the retry gets the response of the first request, or waits for it while it is still
+ * handled, instead of sending the command to the binding a second time.
+ *
+ * A request that failed is forgotten, so its retry is handled again. The number of responses is bounded,
+ * when it is full the oldest are forgotten before their time.
+ *
+ * @author Andreas Mayer
+ */
+public class RequestDeduplicator {
+
+	// in the order the requests arrived, so the expired ones are always at the head
+	private final Map<String, Entry> requests = new LinkedHashMap<>();
+	private final long timeToLive;
+	private final int maxSize;
+	private final LongSupplier clock;
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param timeToLive
+	 *      The time in milliseconds a response is kept for retries
+	 * @param maxSize
+	 *      The maximum number of responses kept
+	 */
+	public RequestDeduplicator(long timeToLive, int maxSize) {
+		this(timeToLive, maxSize, System::currentTimeMillis);
+	}
+
+	RequestDeduplicator(long timeToLive, int maxSize, LongSupplier clock) {
+		this.timeToLive = timeToLive;
+		this.maxSize = maxSize;
+		this.clock = clock;
+	}
+
+	/**
+	 * To register the response to a request, unless there is one for the request ID already.
+	 *
+	 * @param requestId
+	 *      The ID of the request
+	 * @param response
+	 *      The response to the request, completed by the caller once it is handled
+	 * @return the response of the first request with this ID, or null if the request is new and its response
+	 *      was registered
+	 */
+	public synchronized CompletableFuture<SpeechletResponse> register(String requestId,
+																	   CompletableFuture<SpeechletResponse> response) {
+		long now = clock.getAsLong();
+		Iterator<Entry> entries = requests.values().iterator();
+		while (entries.hasNext() && now - entries.next().registeredAt > timeToLive) {
+			entries.remove();
+		}
+
+		Entry first = requests.get(requestId);
+		if (first != null) {
+			return first.response;
+		}
+		if (requests.size() >= maxSize) {
+			requests.remove(requests.keySet().iterator().next());
+		}
+		requests.put(requestId, new Entry(response, now));
+		response.whenComplete((speechletResponse, error) -> {
+			if (error != null) {
+				forget(requestId, response);
+			}
+		});
+		return null;
+	}
+
+	/**
+	 * @return the number of responses kept
+	 */
+	public synchronized int size() {
+		return requests.size();
+	}
+
+	private synchronized void forget(String requestId, CompletableFuture<SpeechletResponse> response) {
+		Entry entry = requests.get(requestId);
+		if (entry != null && entry.response == response) {
+			requests.remove(requestId);
+		}
+	}
+
+	/**
+	 * A response together with the time its request arrived.
+	 */
+	private static class Entry {
+		private final CompletableFuture<SpeechletResponse> response;
+		private final long registeredAt;
+
+		Entry(CompletableFuture<SpeechletResponse> response, long registeredAt) {
+			this.response = response;
+			this.registeredAt = registeredAt;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package de.qaware.echo.speech;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A speech text with placeholders like "Turned on {device}.", compiled once into its literal segments.
+ * Rendering copies the segments and the values into a builder of the exact size, the pattern is never parsed again.
+ *
+ * A placeholder that appears several times refers to the same value. The values are given in the order the
+ * placeholders first appear in the pattern.
+ *
+ * @author Andreas Mayer
+ */
+public final class SpeechTemplate {
+
+	private final String pattern;
+	private final String[] literals;
+	private final int[] slots;
+	private final int slotCount;
+	private final int literalLength;
+
+	private SpeechTemplate(String pattern, String[] literals, int[] slots, int slotCount) {
+		this.pattern = pattern;
+		this.literals = literals;
+		this.slots = slots;
+		this.slotCount = slotCount;
+		int length = 0;
+		for (String literal : literals) {
+			length += literal.length();
+		}
+		this.literalLength = length;
+	}
+
+	/**
+	 * To compile a pattern.
+	 *
+	 * @param pattern
+	 *      The text with placeholders in curly braces
+	 * @return the compiled template
+	 * @throws IllegalArgumentException If a placeholder is not closed
+	 */
+	public static SpeechTemplate compile(String pattern) {
+		List<String> literals = new ArrayList<>();
+		List<Integer> slots = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+		int start = 0;
+		int open;
+		while ((open = pattern.indexOf('{', start)) >= 0) {
+			int close = pattern.indexOf('}', open);
+			if (close < 0) {
+				throw new IllegalArgumentException("Unclosed placeholder in \"" + pattern + "\"");
+			}
+			String name = pattern.substring(open + 1, close);
+			int slot = names.indexOf(name);
+			if (slot < 0) {
+				slot = names.size();
+				names.add(name);
+			}
+			literals.add(pattern.substring(start, open));
+			slots.add(slot);
+			start = close + 1;
+		}
+		literals.add(pattern.substring(start));
+
+		int[] slotArray = new int[slots.size()];
+		for (int i = 0; i < slotArray.length; i++) {
+			slotArray[i] = slots.get(i);
+		}
+		return new SpeechTemplate(pattern, literals.toArray(new String[literals.size()]), slotArray, names.size());
+	}
+
+	/**
+	 * @return the number of distinct placeholders
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * To fill in the placeholders.
+	 *
+	 * @param values
+	 *      The values in the order the placeholders first appear, null is rendered as an empty string
+	 * @return the text to speak
+	 * @throws IllegalArgumentException If the number of values does not match the placeholders
+	 */
+	public String render(String... values) {
+		if (values.length != slotCount) {
+			throw new IllegalArgumentException("\"" + pattern + "\" expects " + slotCount + " values, got " + values.length);
+		}
+		if (slotCount == 0) {
+			return literals[0];
+		}
+		int length = literalLength;
+		for (int slot : slots) {
+			length += values[slot] != null ? values[slot].length() : 0;
+		}
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < slots.length; i++) {
+			text.append(literals[i]);
+			if (values[slots[i]] != null) {
+				text.append(values[slots[i]]);
+			}
+		}
+		return text.append(literals[slots.length]).toString();
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+}
@@ -4,7 +4,9 @@ import com.amazon.speech.speechlet.SpeechletResponse;
 import com.amazon.speech.ui.*;
 
 /**
- * Wrapper for creating various responses
+ * Wrapper for creating various responses.
+ * The responses are never changed after they were created, so a response without variable text can be created once
+ * and returned for every request. Variable texts are rendered from a precompiled {@link SpeechTemplate}.
  *
  * @author Andreas Mayer
  */
@@ -21,6 +23,19 @@ public class SpeechletWrapper {
 		return newTellResponse(outputText, false);
 	}
 
+	/**
+	 * Wrapper for creating the Tell response from a template.
+	 *
+	 * @param template
+	 * 		the output to be spoken, only plain text (no SSML)
+	 * @param values
+	 * 		the values of the placeholders of the template
+	 * @return {@link SpeechletResponse} the speechlet response
+	 */
+	public SpeechletResponse newTellResponse(SpeechTemplate template, String... values) {
+		return newTellResponse(template.render(values), false);
+	}
+
 	/**
 	 * Wrapper for creating the Tell response from the input string
 	 *
@@ -32,15 +47,7 @@ public class SpeechletWrapper {
 	 * @return {@link SpeechletResponse} the speechlet response
 	 */
 	public SpeechletResponse newTellResponse(String outputText, boolean isOutputSsml) {
-		OutputSpeech outputSpeech;
-		if (isOutputSsml) {
-			outputSpeech = new SsmlOutputSpeech();
-			((SsmlOutputSpeech) outputSpeech).setSsml(outputText);
-		} else {
-			outputSpeech = new PlainTextOutputSpeech();
-			((PlainTextOutputSpeech) outputSpeech).setText(outputText);
-		}
-		return SpeechletResponse.newTellResponse(outputSpeech);
+		return SpeechletResponse.newTellResponse(newOutputSpeech(outputText, isOutputSsml));
 	}
 
 	/**
@@ -57,14 +64,7 @@ public class SpeechletWrapper {
 	 * @return {@link SpeechletResponse} the speechlet response
 	 */
 	public SpeechletResponse newTellWithCardResponse(String outputText, boolean isOutputSsml, String cardTitle, String cardContent) {
-		OutputSpeech outputSpeech;
-		if(isOutputSsml) {
-			outputSpeech = new SsmlOutputSpeech();
-			((SsmlOutputSpeech) outputSpeech).setSsml(outputText);
-		} else {
-			outputSpeech = new PlainTextOutputSpeech();
-			((PlainTextOutputSpeech) outputSpeech).setText(outputText);
-		}
+		OutputSpeech outputSpeech = newOutputSpeech(outputText, isOutputSsml);
 		SimpleCard card = new SimpleCard();
 		card.setTitle(cardTitle);
 		card.setContent(cardContent);
@@ -101,25 +101,20 @@ public class SpeechletWrapper {
 	 * @return {@link SpeechletResponse} the speechlet response
 	 */
 	public SpeechletResponse newAskResponse(String outputText, boolean isOutputSsml, String repromptText, boolean isRepromptSsml) {
-		OutputSpeech outputSpeech, repromptOutputSpeech;
-		if (isOutputSsml) {
-			outputSpeech = new SsmlOutputSpeech();
-			((SsmlOutputSpeech) outputSpeech).setSsml(outputText);
-		} else {
-			outputSpeech = new PlainTextOutputSpeech();
-			((PlainTextOutputSpeech) outputSpeech).setText(outputText);
-		}
+		Reprompt reprompt = new Reprompt();
+		reprompt.setOutputSpeech(newOutputSpeech(repromptText, isRepromptSsml));
+		return SpeechletResponse.newAskResponse(newOutputSpeech(outputText, isOutputSsml), reprompt);
+	}
 
-		if (isRepromptSsml) {
-			repromptOutputSpeech = new SsmlOutputSpeech();
-			((SsmlOutputSpeech) repromptOutputSpeech).setSsml(repromptText);
-		} else {
-			repromptOutputSpeech = new PlainTextOutputSpeech();
-			((PlainTextOutputSpeech) repromptOutputSpeech).setText(repromptText);
+	private static OutputSpeech newOutputSpeech(String text, boolean isSsml) {
+		if (isSsml) {
+			SsmlOutputSpeech outputSpeech = new SsmlOutputSpeech();
+			outputSpeech.setSsml(text);
+			return outputSpeech;
 		}
-		Reprompt reprompt = new Reprompt();
-		reprompt.setOutputSpeech(repromptOutputSpeech);
-		return SpeechletResponse.newAskResponse(outputSpeech, reprompt);
+		PlainTextOutputSpeech outputSpeech = new PlainTextOutputSpeech();
+		outputSpeech.setText(text);
+		return outputSpeech;
 	}
 
 }
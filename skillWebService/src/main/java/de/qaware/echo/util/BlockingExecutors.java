@@ -0,0 +1,76 @@
+package de.qaware.echo.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helper class to create the executors that run blocking work, like writing to a slow binding or forwarding a
+ * command to another node of the cluster.
+ *
+ * On a Java runtime with virtual threads every task can get a virtual thread of its own, so the number of
+ * blocked tasks is no longer capped by the size of a pool. The virtual threads are looked up at runtime,
+ * because the application is still built for Java 8. Without them a bounded pool of daemon threads is used.
+ *
+ * @author Andreas Mayer
+ */
+public final class BlockingExecutors {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(BlockingExecutors.class);
+
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private BlockingExecutors() {
+	}
+
+	/**
+	 * To create an executor for blocking tasks.
+	 *
+	 * @param name
+	 *      The prefix of the thread names
+	 * @param virtualThreads
+	 *      True to run every task on a virtual thread of its own, if the runtime supports it
+	 * @param maxThreads
+	 *      The number of threads of the pool that is used without virtual threads
+	 * @return the executor, to be shut down by the caller
+	 */
+	public static ExecutorService newExecutor(String name, boolean virtualThreads, int maxThreads) {
+		if (virtualThreads) {
+			ExecutorService executor = newVirtualThreadPerTaskExecutor();
+			if (executor != null) {
+				LOGGER.info("Running {} tasks on virtual threads", name);
+				return executor;
+			}
+			LOGGER.warn("Virtual threads are not supported by this Java runtime, running {} tasks on {} threads",
+					name, maxThreads);
+		}
+
+		AtomicInteger counter = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// idle threads go away, so a large pool only costs something while it is busy
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * @return the executor of the runtime that starts a virtual thread per task, or null if there is none
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
@@ -1,25 +1,144 @@
 package de.qaware.echo.util;
 
 /**
- * All supported colors with suitable rgb-values
+ * All supported colors with suitable rgb-values, one for every value of the LIST_OF_COLORS slot.
+ *
+ * The hsb-values are computed once, and the names are looked up in a precomputed hash table
+ * that ignores case, hyphens and whitespace without building a normalized copy of the name.
  *
  * @author Andreas Mayer
  */
 public enum ColorType {
-	RED(255, 0, 0),
-	GREEN(0, 255, 0),
+	AMARANTH(229, 43, 80),
+	AMBER(255, 191, 0),
+	AMETHYST(153, 102, 204),
+	APRICOT(251, 206, 177),
+	AQUAMARINE(127, 255, 212),
+	AZURE(0, 127, 255),
+	BABY_BLUE(137, 207, 240),
+	BEIGE(245, 245, 220),
+	BLACK(0, 0, 0),
 	BLUE(0, 0, 255),
+	BLUE_GREEN(0, 149, 182),
+	BLUE_VIOLET(138, 43, 226),
+	BLUSH(222, 93, 131),
+	BRONZE(205, 127, 50),
+	BROWN(150, 75, 0),
+	BURGUNDY(128, 0, 32),
+	BYZANTIUM(112, 41, 99),
+	CARMINE(150, 0, 24),
+	CERISE(222, 49, 99),
+	CERULEAN(0, 123, 167),
+	CHAMPAGNE(247, 231, 206),
+	CHARTREUSE_GREEN(127, 255, 0),
+	CHOCOLATE(123, 63, 0),
+	COBALT_BLUE(0, 71, 171),
+	COFFEE(111, 78, 55),
+	COPPER(184, 115, 51),
+	CORAL(255, 127, 80),
+	CRIMSON(220, 20, 60),
+	CYAN(0, 255, 255),
+	DESERT_SAND(237, 201, 175),
+	ELECTRIC_BLUE(125, 249, 255),
+	EMERALD(80, 200, 120),
+	ERIN(0, 255, 63),
+	GOLD(255, 215, 0),
+	GRAY(128, 128, 128),
+	GREEN(0, 255, 0),
+	HARLEQUIN(63, 255, 0),
+	INDIGO(75, 0, 130),
+	IVORY(255, 255, 240),
+	JADE(0, 168, 107),
+	JUNGLE_GREEN(41, 171, 135),
+	LAVENDER(230, 230, 250),
+	LEMON(255, 247, 0),
+	LILAC(200, 162, 200),
+	LIME(191, 255, 0),
+	MAGENTA(255, 0, 255),
+	MAGENTA_ROSE(255, 0, 175),
+	MAROON(128, 0, 0),
+	MAUVE(224, 176, 255),
+	NAVY_BLUE(0, 0, 128),
+	OCHER(204, 119, 34),
+	OLIVE(128, 128, 0),
+	ORANGE(255, 165, 0),
+	ORANGE_RED(255, 69, 0),
+	ORCHID(218, 112, 214),
+	PEACH(255, 229, 180),
+	PEAR(209, 226, 49),
+	PERIWINKLE(204, 204, 255),
+	PERSIAN_BLUE(28, 57, 187),
+	PINK(255, 192, 203),
+	PLUM(142, 69, 133),
+	PRUSSIAN_BLUE(0, 49, 83),
+	PUCE(204, 136, 153),
+	PURPLE(128, 0, 128),
+	RASPBERRY(227, 11, 92),
+	RED(255, 0, 0),
+	RED_VIOLET(199, 21, 133),
+	ROSE(255, 0, 127),
+	RUBY(224, 17, 95),
+	SALMON(250, 128, 114),
+	SANGRIA(146, 0, 10),
+	SAPPHIRE(15, 82, 186),
+	SCARLET(255, 36, 0),
+	SILVER(192, 192, 192),
+	SLATE_GRAY(112, 128, 144),
+	SPRING_BUD(167, 252, 0),
+	SPRING_GREEN(0, 255, 127),
+	TAN(210, 180, 140),
+	TAUPE(72, 60, 50),
+	TEAL(0, 128, 128),
+	TURQUOISE(64, 224, 208),
+	VIOLET(143, 0, 255),
+	VIRIDIAN(64, 130, 109),
 	WHITE(255, 255, 255),
+	YANKEES_BLUE(28, 40, 65),
+	YELLOW(255, 255, 0),
 	UNKOWN(-1, -1, -1);
 
+	private static final ColorType[] TABLE = new ColorType[256];
+
+	static {
+		for (ColorType type : values()) {
+			if (type != UNKOWN) {
+				int index = hash(type.spokenName) & (TABLE.length - 1);
+				while (TABLE[index] != null) {
+					index = (index + 1) & (TABLE.length - 1);
+				}
+				TABLE[index] = type;
+			}
+		}
+	}
+
 	private final int red;
 	private final int green;
 	private final int blue;
+	private final double hue;
+	private final double saturation;
+	private final double brightness;
+	private final String spokenName;
 
 	ColorType(int red, int green, int blue) {
 		this.red = red;
 		this.green = green;
 		this.blue = blue;
+		this.spokenName = name().toLowerCase().replace('_', ' ');
+
+		int max = Math.max(red, Math.max(green, blue));
+		int min = Math.min(red, Math.min(green, blue));
+		int delta = max - min;
+		this.brightness = max * 100.0 / 255;
+		this.saturation = max <= 0 ? 0 : delta * 100.0 / max;
+		if (delta == 0) {
+			this.hue = 0;
+		} else if (max == red) {
+			this.hue = (60.0 * (green - blue) / delta + 360) % 360;
+		} else if (max == green) {
+			this.hue = 60.0 * (blue - red) / delta + 120;
+		} else {
+			this.hue = 60.0 * (red - green) / delta + 240;
+		}
 	}
 
 	public int getRed() {
@@ -34,13 +153,108 @@ public enum ColorType {
 		return blue;
 	}
 
-	public static ColorType getColorType(String colorName) {
-		for (ColorType type : ColorType.values()) {
-			if (type != UNKOWN && type.name().equalsIgnoreCase(colorName)) {
+	/**
+	 * @return the hue in degrees, 0 to 360
+	 */
+	public double getHue() {
+		return hue;
+	}
+
+	/**
+	 * @return the saturation in percent
+	 */
+	public double getSaturation() {
+		return saturation;
+	}
+
+	/**
+	 * @return the brightness in percent
+	 */
+	public double getBrightness() {
+		return brightness;
+	}
+
+	/**
+	 * @return the name as it is spoken, e.g. "navy blue"
+	 */
+	public String getSpokenName() {
+		return spokenName;
+	}
+
+	/**
+	 * To look up a color by its spoken name. "Orange-Red", "orange red" and " ORANGE  red " are the same color.
+	 *
+	 * @param colorName the value of the color slot
+	 * @return the color or {@link #UNKOWN}
+	 */
+	public static ColorType getColorType(CharSequence colorName) {
+		if (colorName == null) {
+			return UNKOWN;
+		}
+		int index = hash(colorName) & (TABLE.length - 1);
+		ColorType type;
+		while ((type = TABLE[index]) != null) {
+			if (matches(type.spokenName, colorName)) {
 				return type;
 			}
+			index = (index + 1) & (TABLE.length - 1);
 		}
 		return UNKOWN;
 	}
 
+	/**
+	 * Hashes the name as if separators were collapsed to single spaces, leading and trailing ones removed,
+	 * and all letters were lower case.
+	 */
+	private static int hash(CharSequence name) {
+		int hash = 0;
+		boolean started = false;
+		boolean pendingSpace = false;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (isSeparator(c)) {
+				pendingSpace = started;
+				continue;
+			}
+			if (pendingSpace) {
+				hash = 31 * hash + ' ';
+				pendingSpace = false;
+			}
+			hash = 31 * hash + Character.toLowerCase(c);
+			started = true;
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Compares a spoken name with a name normalized the same way as in {@link #hash(CharSequence)}.
+	 */
+	private static boolean matches(String spokenName, CharSequence name) {
+		int position = 0;
+		boolean started = false;
+		boolean pendingSpace = false;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (isSeparator(c)) {
+				pendingSpace = started;
+				continue;
+			}
+			if (pendingSpace) {
+				if (position >= spokenName.length() || spokenName.charAt(position++) != ' ') {
+					return false;
+				}
+				pendingSpace = false;
+			}
+			if (position >= spokenName.length() || spokenName.charAt(position++) != Character.toLowerCase(c)) {
+				return false;
+			}
+			started = true;
+		}
+		return position == spokenName.length();
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == '-' || c == '_' || Character.isWhitespace(c);
+	}
+
 }
@@ -0,0 +1,133 @@
+package de.qaware.echo.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel: the deadlines are sorted into a ring of buckets, one per tick, instead of a priority queue.
+ * Scheduling and cancelling cost O(1), and a tick only looks at the entries of one bucket. That makes it cheap to
+ * keep a deadline for every one of a huge number of sessions, at the price of a precision of one tick.
+ *
+ * Any thread may schedule and cancel, a single thread advances the wheel.
+ *
+ * @param <T>
+ *      The type of the entries
+ * @author Andreas Mayer
+ */
+public class TimingWheel<T> {
+
+	private final Queue<Timeout<T>>[] buckets;
+	private final Queue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+	private final long tickDuration;
+	private final long start;
+	private final int mask;
+	private long tick;
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param tickDuration
+	 *      The time in milliseconds of a tick, the precision of the deadlines
+	 * @param wheelSize
+	 *      The number of buckets, rounded up to a power of two. Deadlines further away than a round of the wheel
+	 *      are looked at once per round
+	 * @param start
+	 *      The time in milliseconds of the first tick
+	 */
+	public TimingWheel(long tickDuration, int wheelSize, long start) {
+		int size = Integer.highestOneBit(Math.max(wheelSize, 1) * 2 - 1);
+		@SuppressWarnings("unchecked")
+		Queue<Timeout<T>>[] buckets = (Queue<Timeout<T>>[]) new Queue<?>[size];
+		this.buckets = buckets;
+		for (int i = 0; i < size; i++) {
+			buckets[i] = new ArrayDeque<>();
+		}
+		this.tickDuration = Math.max(tickDuration, 1);
+		this.start = start;
+		this.mask = size - 1;
+	}
+
+	/**
+	 * To schedule an entry. It is sorted into its bucket by the next call of {@link #advance(long, Consumer)}.
+	 *
+	 * @param entry
+	 *      The entry
+	 * @param deadline
+	 *      The time in milliseconds at which the entry expires
+	 * @return the handle to cancel the entry
+	 */
+	public Timeout<T> schedule(T entry, long deadline) {
+		Timeout<T> timeout = new Timeout<>(entry, Math.max(deadline - start, 0) / tickDuration);
+		scheduled.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * To run all ticks up to now, handing every entry whose deadline has passed to the consumer. The consumer may
+	 * schedule again, those entries expire no earlier than the next call.
+	 *
+	 * @param now
+	 *      The current time in milliseconds
+	 * @param expired
+	 *      Called with the expired entries
+	 */
+	public void advance(long now, Consumer<T> expired) {
+		long target = (now - start) / tickDuration;
+		if (target < tick) {
+			return;
+		}
+		Timeout<T> timeout;
+		while ((timeout = scheduled.poll()) != null) {
+			if (!timeout.cancelled) {
+				buckets[(int) (Math.max(timeout.deadlineTick, tick) & mask)].add(timeout);
+			}
+		}
+
+		// after a long pause every bucket is looked at once, not once per missed tick
+		long last = Math.min(target, tick + mask);
+		for (long current = tick; current <= last; current++) {
+			Iterator<Timeout<T>> timeouts = buckets[(int) (current & mask)].iterator();
+			while (timeouts.hasNext()) {
+				timeout = timeouts.next();
+				if (timeout.cancelled) {
+					timeouts.remove();
+				} else if (timeout.deadlineTick <= target) {
+					timeouts.remove();
+					expired.accept(timeout.entry);
+				}
+			}
+		}
+		tick = target + 1;
+	}
+
+	/**
+	 * @return the time in milliseconds of a tick
+	 */
+	public long getTickDuration() {
+		return tickDuration;
+	}
+
+	/**
+	 * A scheduled entry.
+	 */
+	public static class Timeout<T> {
+		private final T entry;
+		private final long deadlineTick;
+		private volatile boolean cancelled;
+
+		Timeout(T entry, long deadlineTick) {
+			this.entry = entry;
+			this.deadlineTick = deadlineTick;
+		}
+
+		/**
+		 * To drop the entry, it does not expire anymore.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+	}
+}
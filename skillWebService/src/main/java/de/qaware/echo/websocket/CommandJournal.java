@@ -0,0 +1,224 @@
+package de.qaware.echo.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Append-only journal of stored commands in a memory-mapped file.
+ *
+ * Every stored command is appended as an ADD record, every delivered or expired one as a REMOVE record
+ * with its sequence number. The type byte of a record is written last, so a record that was cut off by
+ * a crash reads as the end of the journal. When the file is full, the live commands are written into a
+ * fresh file that replaces the old one.
+ *
+ * @author Andreas Mayer
+ */
+class CommandJournal {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(CommandJournal.class);
+
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final int REMOVE_RECORD_SIZE = 1 + 8;
+
+	private final Path file;
+	private final int capacity;
+	private MappedByteBuffer buffer;
+
+	/**
+	 * Opens or creates the journal.
+	 *
+	 * @param file
+	 *      The journal file
+	 * @param capacity
+	 *      The size of the file in bytes
+	 * @throws IOException If the file cannot be mapped
+	 */
+	CommandJournal(Path file, int capacity) throws IOException {
+		this.file = file;
+		this.capacity = capacity;
+		this.buffer = map(file);
+	}
+
+	/**
+	 * Reads all commands that were added and not removed, in the order they were added,
+	 * and positions the journal behind the last record. A corrupt record ends the journal,
+	 * it and everything behind it is dropped.
+	 *
+	 * @return the live commands
+	 */
+	synchronized Collection<StoredCommand> replay() {
+		Map<Long, StoredCommand> live = new LinkedHashMap<>();
+		buffer.position(0);
+		while (buffer.remaining() > 0) {
+			int start = buffer.position();
+			byte type = buffer.get();
+			try {
+				if (type == ADD) {
+					StoredCommand command = readAdd();
+					if (command == null) {
+						truncate(start);
+						break;
+					}
+					live.put(command.getSequence(), command);
+				} else if (type == REMOVE) {
+					live.remove(buffer.getLong());
+				} else {
+					// the unused rest of the file is zero, which marks the end
+					buffer.position(start);
+					break;
+				}
+			} catch (BufferUnderflowException e) {
+				truncate(start);
+				break;
+			}
+		}
+		return live.values();
+	}
+
+	/**
+	 * Appends a stored command, compacting the journal first if it does not fit.
+	 *
+	 * @param command
+	 *      The command to append
+	 * @param live
+	 *      Supplies all commands that are still stored, only called for compaction
+	 * @return false if the command does not fit even into a compacted journal
+	 * @throws IOException If the compacted journal cannot be written
+	 */
+	synchronized boolean add(StoredCommand command, Supplier<Collection<StoredCommand>> live) throws IOException {
+		if (write(command)) {
+			return true;
+		}
+		compact(live);
+		return write(command);
+	}
+
+	/**
+	 * Appends the removal of a command.
+	 *
+	 * @param sequence
+	 *      The sequence number of the removed command
+	 * @param live
+	 *      Supplies all commands that are still stored, only called for compaction
+	 * @throws IOException If the compacted journal cannot be written
+	 */
+	synchronized void remove(long sequence, Supplier<Collection<StoredCommand>> live) throws IOException {
+		if (!fits(REMOVE_RECORD_SIZE)) {
+			// the compacted journal does not contain the removed command anymore
+			compact(live);
+			return;
+		}
+		int start = buffer.position();
+		buffer.position(start + 1);
+		buffer.putLong(sequence);
+		buffer.put(start, REMOVE);
+	}
+
+	/**
+	 * Writes the changes to the disk.
+	 */
+	synchronized void force() {
+		buffer.force();
+	}
+
+	private boolean write(StoredCommand command) {
+		byte[] echoId = command.getAmazonEchoId().getBytes(StandardCharsets.UTF_8);
+		byte[] json = command.getJson().getBytes(StandardCharsets.UTF_8);
+		if (!fits(1 + 8 + 8 + 4 + echoId.length + 4 + json.length)) {
+			return false;
+		}
+
+		int start = buffer.position();
+		buffer.position(start + 1);
+		buffer.putLong(command.getSequence());
+		buffer.putLong(command.getExpiresAt());
+		buffer.putInt(echoId.length);
+		buffer.put(echoId);
+		buffer.putInt(json.length);
+		buffer.put(json);
+		buffer.put(start, ADD);
+		return true;
+	}
+
+	private boolean fits(int size) {
+		// one byte stays free for the end marker
+		return buffer.remaining() > size;
+	}
+
+	/**
+	 * @return the command, or null if a length does not fit into the rest of the journal
+	 */
+	private StoredCommand readAdd() {
+		long sequence = buffer.getLong();
+		long expiresAt = buffer.getLong();
+		byte[] echoId = readBytes();
+		byte[] json = echoId != null ? readBytes() : null;
+		if (json == null) {
+			return null;
+		}
+		return new StoredCommand(sequence, new String(echoId, StandardCharsets.UTF_8), expiresAt,
+				new String(json, StandardCharsets.UTF_8));
+	}
+
+	private byte[] readBytes() {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * To drop a corrupt record and everything behind it. The rest of the file is cleared, so the records
+	 * written from now on are not followed by leftovers that could be read as records.
+	 */
+	private void truncate(int start) {
+		LOGGER.warn("Command journal {} is corrupt at byte {}, dropping the rest of it", file, start);
+		buffer.position(start);
+		while (buffer.hasRemaining()) {
+			buffer.put((byte) 0);
+		}
+		buffer.position(start);
+	}
+
+	private void compact(Supplier<Collection<StoredCommand>> liveSupplier) throws IOException {
+		Collection<StoredCommand> live = liveSupplier.get();
+		LOGGER.info("Compacting command journal {} with {} live commands", file, live.size());
+		Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+		Files.deleteIfExists(compacted);
+		buffer = map(compacted);
+		for (StoredCommand command : live) {
+			if (!write(command)) {
+				LOGGER.warn("Command journal {} is too small for all stored commands", file);
+				break;
+			}
+		}
+		buffer.force();
+		Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private MappedByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			// the mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package de.qaware.echo.websocket;
+
+/**
+ * The outcome of a command sent to a binding.
+ *
+ * @author Andreas Mayer
+ */
+public enum CommandResult {
+	/** The binding executed the command. */
+	CONFIRMED,
+	/** The binding received the command, but could not execute it. */
+	REJECTED,
+	/** The binding knows no device by the name in the command. */
+	UNKNOWN_DEVICE,
+	/** The command could not be sent, no binding is connected for the Echo ID. */
+	NOT_DELIVERED,
+	/** The command was sent, but the binding did not answer in time. */
+	TIMED_OUT,
+	/** No binding is connected right now, the command is stored until one registers. */
+	QUEUED
+}
@@ -0,0 +1,200 @@
+package de.qaware.echo.websocket;
+
+import de.qaware.echo.websocket.protocol.AckMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Matches acknowledgements from the bindings with the commands that are waiting for them
+ * and keeps track of the round trip latency per Amazon Echo ID.
+ * A command that is not acknowledged in time fails with a {@link TimeoutException}, so nobody has to block a thread
+ * to wait for its deadline.
+ *
+ * @author Andreas Mayer
+ */
+public class CommandTracker {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(CommandTracker.class);
+
+	private final Map<String, PendingCommand> pending = new ConcurrentHashMap<>();
+	private final Map<String, AckLatency> latencies = new ConcurrentHashMap<>();
+	private final long ackTimeout;
+	private final ScheduledThreadPoolExecutor timeouts = new ScheduledThreadPoolExecutor(1, runnable -> {
+		Thread thread = new Thread(runnable, "command-timeouts");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param ackTimeout
+	 *      The time in milliseconds a command may take from sending until it is acknowledged
+	 */
+	public CommandTracker(long ackTimeout) {
+		this.ackTimeout = ackTimeout;
+		// most commands are acknowledged long before their deadline, their timers should not pile up
+		timeouts.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * @return a new unique correlation ID
+	 */
+	public String newCorrelationId() {
+		return UUID.randomUUID().toString();
+	}
+
+	/**
+	 * Registers a command that is about to be sent.
+	 *
+	 * @param amazonEchoId
+	 *      The Echo ID the command is sent to
+	 * @param correlationId
+	 *      The correlation ID of the command
+	 * @param timeout
+	 *      The time in milliseconds the binding has to acknowledge the command
+	 * @return a future that completes with the acknowledgement of the binding, or with a {@link TimeoutException}
+	 */
+	public CompletableFuture<AckMessage> expect(String amazonEchoId, String correlationId, long timeout) {
+		PendingCommand command = new PendingCommand(amazonEchoId);
+		pending.put(correlationId, command);
+		ScheduledFuture<?> timer = timeouts.schedule(() -> {
+			if (pending.remove(correlationId, command)) {
+				command.ack.completeExceptionally(new TimeoutException());
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+		command.ack.whenComplete((ack, error) -> timer.cancel(false));
+		return command.ack;
+	}
+
+	/**
+	 * Completes the command the acknowledgement belongs to.
+	 *
+	 * @param amazonEchoId
+	 *      The Echo ID of the binding that sent the acknowledgement
+	 * @param ack
+	 *      The acknowledgement
+	 */
+	public void acknowledge(String amazonEchoId, AckMessage ack) {
+		PendingCommand command = ack.getCorrelationId() != null ? pending.remove(ack.getCorrelationId()) : null;
+		if (command == null) {
+			LOGGER.info("Received late or unknown acknowledgement {}", ack);
+			return;
+		}
+		if (!command.amazonEchoId.equals(amazonEchoId)) {
+			LOGGER.warn("Acknowledgement {} came from {} instead of {}", ack, amazonEchoId, command.amazonEchoId);
+			return;
+		}
+
+		long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - command.sentAt);
+		latencies.computeIfAbsent(amazonEchoId, id -> new AckLatency()).record(latency);
+		if (latency > ackTimeout / 2) {
+			LOGGER.warn("Slow acknowledgement from {}: {} ms", amazonEchoId, latency);
+		}
+		command.ack.complete(ack);
+	}
+
+	/**
+	 * Forgets a command, e.g. because its deadline is over.
+	 *
+	 * @param correlationId
+	 *      The correlation ID of the command
+	 */
+	public void forget(String correlationId) {
+		pending.remove(correlationId);
+	}
+
+	/**
+	 * Drops the latency statistics of an Echo ID that has no binding connected anymore.
+	 *
+	 * @param amazonEchoId
+	 *      The Echo ID
+	 */
+	public void forgetEchoId(String amazonEchoId) {
+		latencies.remove(amazonEchoId);
+	}
+
+	/**
+	 * @return the time in milliseconds a command may take until it is acknowledged
+	 */
+	public long getAckTimeout() {
+		return ackTimeout;
+	}
+
+	/**
+	 * To stop the timer of the deadlines.
+	 */
+	public void shutdown() {
+		timeouts.shutdownNow();
+	}
+
+	/**
+	 * @return the acknowledgement latencies per Echo ID
+	 */
+	public Map<String, AckLatency> getLatencies() {
+		return Collections.unmodifiableMap(latencies);
+	}
+
+	/**
+	 * A command waiting for its acknowledgement.
+	 */
+	private static class PendingCommand {
+		private final String amazonEchoId;
+		private final long sentAt = System.nanoTime();
+		private final CompletableFuture<AckMessage> ack = new CompletableFuture<>();
+
+		PendingCommand(String amazonEchoId) {
+			this.amazonEchoId = amazonEchoId;
+		}
+	}
+
+	/**
+	 * Round trip statistics of a single Echo ID.
+	 */
+	public static class AckLatency {
+		private long count;
+		private long lastMillis;
+		private long maxMillis;
+		private double averageMillis;
+
+		synchronized void record(long millis) {
+			count++;
+			lastMillis = millis;
+			maxMillis = Math.max(maxMillis, millis);
+			// exponentially weighted, so a home that became slow shows up quickly
+			averageMillis = count == 1 ? millis : averageMillis * 0.8 + millis * 0.2;
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized long getLastMillis() {
+			return lastMillis;
+		}
+
+		public synchronized long getMaxMillis() {
+			return maxMillis;
+		}
+
+		public synchronized double getAverageMillis() {
+			return averageMillis;
+		}
+
+		@Override
+		public synchronized String toString() {
+			return "AckLatency{" + "count=" + count + ", last=" + lastMillis + "ms, max=" + maxMillis +
+					"ms, average=" + Math.round(averageMillis) + "ms}";
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package de.qaware.echo.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the number of bindings that connect at the same time, so a restart of the server, after which every binding
+ * reconnects at once, does not starve the Alexa requests. A binding holds its admission from the handshake until its
+ * registration is handled, at most for the hold timeout. Handshakes over the limit wait in a short queue, and once
+ * that is full they are told to come back after the retry delay.
+ *
+ * A turned away binding still gets its connection, as the websocket client of the binding can not read the headers
+ * of a refused handshake. The handler sends it a reconnect message with the delay and closes the session right away.
+ *
+ * @author Andreas Mayer
+ */
+public class HandshakeAdmission implements HandshakeInterceptor {
+
+	/** The session attribute holding the {@link Ticket} of an admitted binding. */
+	public static final String TICKET_ATTRIBUTE = "qivicon.admission.ticket";
+
+	/** The session attribute holding the delay in milliseconds after which a turned away binding may come back. */
+	public static final String RETRY_AFTER_ATTRIBUTE = "qivicon.admission.retry-after";
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(HandshakeAdmission.class);
+
+	private static final int SWITCHING_PROTOCOLS = 101;
+
+	private final Set<Ticket> admitted = new LinkedHashSet<>();
+	private final int maxConcurrent;
+	private final int queueSize;
+	private final long queueTimeout;
+	private final long holdTimeout;
+	private final int retryAfter;
+	private final LongSupplier clock;
+	private int waiting;
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param maxConcurrent
+	 *      The number of bindings that may be between handshake and registration at the same time, 0 for no limit
+	 * @param queueSize
+	 *      The number of handshakes that may wait for an admission
+	 * @param queueTimeout
+	 *      The time in milliseconds a handshake waits for an admission
+	 * @param holdTimeout
+	 *      The time in milliseconds after which an admission is given back, even if the binding did not register
+	 * @param retryAfter
+	 *      The time in milliseconds a turned away binding should wait before it connects again
+	 */
+	public HandshakeAdmission(int maxConcurrent, int queueSize, long queueTimeout, long holdTimeout, int retryAfter) {
+		this(maxConcurrent, queueSize, queueTimeout, holdTimeout, retryAfter, System::currentTimeMillis);
+	}
+
+	HandshakeAdmission(int maxConcurrent, int queueSize, long queueTimeout, long holdTimeout, int retryAfter,
+					   LongSupplier clock) {
+		this.maxConcurrent = maxConcurrent;
+		this.queueSize = queueSize;
+		this.queueTimeout = queueTimeout;
+		this.holdTimeout = holdTimeout;
+		this.retryAfter = retryAfter;
+		this.clock = clock;
+	}
+
+	@Override
+	public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler,
+								   Map<String, Object> attributes) {
+		Ticket ticket;
+		try {
+			ticket = admit();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			ticket = null;
+		}
+		if (ticket == null) {
+			LOGGER.info("Too many bindings connecting, telling {} to come back in {} ms", request.getRemoteAddress(),
+					retryAfter);
+			attributes.put(RETRY_AFTER_ATTRIBUTE, retryAfter);
+			return true;
+		}
+		attributes.put(TICKET_ATTRIBUTE, ticket);
+		if (request instanceof ServletServerHttpRequest) {
+			// the attributes are not passed to afterHandshake, a failed handshake finds its ticket here
+			((ServletServerHttpRequest) request).getServletRequest().setAttribute(TICKET_ATTRIBUTE, ticket);
+		}
+		return true;
+	}
+
+	@Override
+	public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler,
+							   Exception exception) {
+		if (!(request instanceof ServletServerHttpRequest)) {
+			return;
+		}
+		Object ticket = ((ServletServerHttpRequest) request).getServletRequest().getAttribute(TICKET_ATTRIBUTE);
+		boolean upgraded = !(response instanceof ServletServerHttpResponse)
+				|| ((ServletServerHttpResponse) response).getServletResponse().getStatus() == SWITCHING_PROTOCOLS;
+		if (ticket instanceof Ticket && (exception != null || !upgraded)) {
+			((Ticket) ticket).release();
+		}
+	}
+
+	/**
+	 * To admit a binding, waiting in the queue if the limit is reached and the queue is not full.
+	 *
+	 * @return the admission, to be released once the binding registered, or null if the binding is turned away
+	 * @throws InterruptedException If interrupted while waiting in the queue
+	 */
+	public synchronized Ticket admit() throws InterruptedException {
+		long now = clock.getAsLong();
+		if (maxConcurrent <= 0) {
+			return new Ticket(now);
+		}
+		if (admitted.size() >= maxConcurrent) {
+			expire(now);
+		}
+		if (admitted.size() >= maxConcurrent) {
+			if (waiting >= queueSize) {
+				return null;
+			}
+			waiting++;
+			try {
+				long deadline = now + queueTimeout;
+				while (admitted.size() >= maxConcurrent && now < deadline) {
+					// no release may come, so wake up at the latest when the oldest admission expires
+					long oldestExpiry = admitted.iterator().next().admittedAt + holdTimeout + 1;
+					wait(Math.max(Math.min(deadline, oldestExpiry) - now, 1));
+					now = clock.getAsLong();
+					if (expire(now)) {
+						notifyAll();
+					}
+				}
+			} finally {
+				waiting--;
+			}
+			if (admitted.size() >= maxConcurrent) {
+				return null;
+			}
+		}
+		Ticket ticket = new Ticket(now);
+		admitted.add(ticket);
+		return ticket;
+	}
+
+	/**
+	 * @return the number of bindings between handshake and registration
+	 */
+	public synchronized int getAdmittedCount() {
+		return admitted.size();
+	}
+
+	private synchronized void release(Ticket ticket) {
+		if (admitted.remove(ticket)) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * To give back the admissions of bindings that did not register in time, oldest first.
+	 *
+	 * @return whether an admission was given back
+	 */
+	private boolean expire(long now) {
+		boolean expired = false;
+		for (Iterator<Ticket> tickets = admitted.iterator(); tickets.hasNext(); ) {
+			Ticket ticket = tickets.next();
+			if (now - ticket.admittedAt <= holdTimeout) {
+				break;
+			}
+			LOGGER.debug("Admission expired after {} ms", now - ticket.admittedAt);
+			tickets.remove();
+			expired = true;
+		}
+		return expired;
+	}
+
+	/**
+	 * The admission of a single binding.
+	 */
+	public class Ticket {
+		private final long admittedAt;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		Ticket(long admittedAt) {
+			this.admittedAt = admittedAt;
+		}
+
+		/**
+		 * To let the next binding in, once the registration is handled or the connection is gone. Only the first
+		 * call has an effect.
+		 */
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				HandshakeAdmission.this.release(this);
+			}
+		}
+	}
+}
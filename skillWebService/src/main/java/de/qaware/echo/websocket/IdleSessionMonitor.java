@@ -0,0 +1,184 @@
+package de.qaware.echo.websocket;
+
+import de.qaware.echo.util.TimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Finds dead bindings before a command is sent to them. Every frame and pong received on a session counts as activity,
+ * a session idle for a ping interval is pinged, and a session that missed the given number of pings is evicted.
+ *
+ * Receiving a frame only stores a timestamp. The sessions are checked on a {@link TimingWheel}, so every session is
+ * looked at about once per ping interval, however many there are, and there is no timer per session.
+ *
+ * @author Andreas Mayer
+ */
+public class IdleSessionMonitor {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(IdleSessionMonitor.class);
+
+	private static final int WHEEL_SIZE = 64;
+	private static final int TICKS_PER_INTERVAL = 32;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final long pingInterval;
+	private final int maxMissedPings;
+	private final Listener listener;
+	private final LongSupplier clock;
+	private final TimingWheel<Entry> wheel;
+	private final ScheduledExecutorService ticker;
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param pingInterval
+	 *      The time in milliseconds a session may be idle before it is pinged, 0 turns off the monitoring
+	 * @param maxMissedPings
+	 *      The number of pings in a row a session may leave unanswered before it is evicted
+	 * @param listener
+	 *      Pings and evicts the sessions
+	 */
+	public IdleSessionMonitor(long pingInterval, int maxMissedPings, Listener listener) {
+		this(pingInterval, maxMissedPings, listener, System::currentTimeMillis);
+		if (pingInterval > 0) {
+			ticker.scheduleAtFixedRate(this::tick, wheel.getTickDuration(), wheel.getTickDuration(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	IdleSessionMonitor(long pingInterval, int maxMissedPings, Listener listener, LongSupplier clock) {
+		this.pingInterval = pingInterval;
+		this.maxMissedPings = Math.max(maxMissedPings, 1);
+		this.listener = listener;
+		this.clock = clock;
+		this.wheel = new TimingWheel<>(pingInterval / TICKS_PER_INTERVAL, WHEEL_SIZE, clock.getAsLong());
+		this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "websocket-idle");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * To start monitoring a new session.
+	 *
+	 * @param session
+	 *      The session
+	 */
+	public void add(WebSocketSession session) {
+		if (pingInterval <= 0) {
+			return;
+		}
+		long now = clock.getAsLong();
+		Entry entry = new Entry(session, now);
+		entries.put(session.getId(), entry);
+		wheel.schedule(entry, now + pingInterval);
+	}
+
+	/**
+	 * To note that a frame or pong was received on a session.
+	 *
+	 * @param sessionId
+	 *      The ID of the session
+	 */
+	public void touch(String sessionId) {
+		Entry entry = entries.get(sessionId);
+		if (entry != null) {
+			entry.lastActivity = clock.getAsLong();
+		}
+	}
+
+	/**
+	 * To stop monitoring a closed session.
+	 *
+	 * @param sessionId
+	 *      The ID of the session
+	 */
+	public void remove(String sessionId) {
+		Entry entry = entries.remove(sessionId);
+		if (entry != null) {
+			// its last timer expires without effect
+			entry.removed = true;
+		}
+	}
+
+	/**
+	 * @return the number of monitored sessions
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Stops the ticker.
+	 */
+	public void shutdown() {
+		ticker.shutdown();
+	}
+
+	/**
+	 * To check the sessions due up to now, called once per tick.
+	 */
+	void tick() {
+		long now = clock.getAsLong();
+		try {
+			wheel.advance(now, entry -> check(entry, now));
+		} catch (RuntimeException e) {
+			LOGGER.warn("Exception while checking idle sessions", e);
+		}
+	}
+
+	private void check(Entry entry, long now) {
+		if (entry.removed) {
+			return;
+		}
+		long idle = now - entry.lastActivity;
+		if (idle >= pingInterval * (maxMissedPings + 1)) {
+			LOGGER.info("Evicting session {}, idle for {} ms", entry.session.getId(), idle);
+			remove(entry.session.getId());
+			listener.evict(entry.session);
+		} else if (idle >= pingInterval) {
+			listener.ping(entry.session);
+			wheel.schedule(entry, now + pingInterval);
+		} else {
+			wheel.schedule(entry, entry.lastActivity + pingInterval);
+		}
+	}
+
+	/**
+	 * Acts on the sessions found idle.
+	 */
+	public interface Listener {
+
+		/**
+		 * To ping a session that was idle for a ping interval.
+		 */
+		void ping(WebSocketSession session);
+
+		/**
+		 * To close a session that left too many pings unanswered.
+		 */
+		void evict(WebSocketSession session);
+	}
+
+	/**
+	 * A monitored session together with the time of its last activity.
+	 */
+	private static class Entry {
+		private final WebSocketSession session;
+		private volatile long lastActivity;
+		private volatile boolean removed;
+
+		Entry(WebSocketSession session, long lastActivity) {
+			this.session = session;
+			this.lastActivity = lastActivity;
+		}
+	}
+}
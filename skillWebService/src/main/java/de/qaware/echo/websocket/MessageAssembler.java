@@ -0,0 +1,116 @@
+package de.qaware.echo.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Joins the parts of websocket messages that did not fit into the frame buffer of the container.
+ *
+ * The container buffers are allocated for every session, whether it is busy or idle, so they are kept small.
+ * Nearly all messages fit into them and are passed on as they are. Only the rare large message, like the
+ * device catalog of a big home, is copied together here, and only while its parts arrive.
+ *
+ * @author Andreas Mayer
+ */
+public class MessageAssembler {
+
+	private final Map<String, StringBuilder> texts = new ConcurrentHashMap<>();
+	private final Map<String, ByteBuffer> binaries = new ConcurrentHashMap<>();
+	private final int maxMessageSize;
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param maxMessageSize
+	 *      The maximum number of characters of a text message or bytes of a binary message
+	 */
+	public MessageAssembler(int maxMessageSize) {
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	/**
+	 * To add a part of a text message.
+	 *
+	 * @param sessionId
+	 *      The session the part was received on
+	 * @param part
+	 *      The part
+	 * @param last
+	 *      True if it is the last part of the message
+	 * @return the whole message once its last part arrived, null before
+	 * @throws IOException If the message gets larger than the maximum message size
+	 */
+	public String appendText(String sessionId, String part, boolean last) throws IOException {
+		StringBuilder parts = texts.get(sessionId);
+		if (parts == null) {
+			if (last) {
+				return part;
+			}
+			parts = new StringBuilder(part.length() * 2);
+			texts.put(sessionId, parts);
+		}
+		if (parts.length() + part.length() > maxMessageSize) {
+			texts.remove(sessionId);
+			throw new IOException("Text message of session " + sessionId + " exceeds " + maxMessageSize + " characters");
+		}
+		parts.append(part);
+		if (!last) {
+			return null;
+		}
+		texts.remove(sessionId);
+		return parts.toString();
+	}
+
+	/**
+	 * To add a part of a binary message.
+	 *
+	 * @param sessionId
+	 *      The session the part was received on
+	 * @param part
+	 *      The part, read from its position to its limit
+	 * @param last
+	 *      True if it is the last part of the message
+	 * @return the whole message once its last part arrived, null before
+	 * @throws IOException If the message gets larger than the maximum message size
+	 */
+	public ByteBuffer appendBinary(String sessionId, ByteBuffer part, boolean last) throws IOException {
+		ByteBuffer parts = binaries.get(sessionId);
+		if (parts == null) {
+			if (last) {
+				return part;
+			}
+			parts = ByteBuffer.allocate(Math.min(part.remaining() * 2, maxMessageSize));
+		}
+		if (parts.position() + part.remaining() > maxMessageSize) {
+			binaries.remove(sessionId);
+			throw new IOException("Binary message of session " + sessionId + " exceeds " + maxMessageSize + " bytes");
+		}
+		if (parts.remaining() < part.remaining()) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.min(Math.max(parts.capacity() * 2,
+					parts.position() + part.remaining()), maxMessageSize));
+			parts.flip();
+			parts = larger.put(parts);
+		}
+		parts.put(part);
+		if (!last) {
+			binaries.put(sessionId, parts);
+			return null;
+		}
+		binaries.remove(sessionId);
+		parts.flip();
+		return parts;
+	}
+
+	/**
+	 * To drop the parts received on a closed session.
+	 *
+	 * @param sessionId
+	 *      The closed session
+	 */
+	public void remove(String sessionId) {
+		texts.remove(sessionId);
+		binaries.remove(sessionId);
+	}
+}
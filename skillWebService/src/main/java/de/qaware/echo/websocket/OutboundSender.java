@@ -0,0 +1,428 @@
+package de.qaware.echo.websocket;
+
+import de.qaware.echo.websocket.protocol.BinaryCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends websocket messages without blocking the calling thread.
+ *
+ * Every session gets a bounded outbox that is drained by a small pool of writer threads, one writer per session at a
+ * time. The writing can also be handed to another executor, e.g. one with a virtual thread per task, so a slow session
+ * does not hold one of few threads. If the outbox of a session overflows or its writer is stuck longer than the send
+ * time limit, the send fails right away instead of waiting. A timer closes the sessions whose writer is stuck, which
+ * also frees the writer, so a few half-dead bindings can not take all writer threads. Sessions are closed on threads of
+ * their own, never on the writer threads.
+ *
+ * A command for an idle session is written right away. Commands queued for a session that supports batching
+ * while a send to it is in progress are written together as one BATCH frame once it is done, so a burst of
+ * commands costs few frames instead of many, and a single command is never held back.
+ *
+ * @author Andreas Mayer
+ */
+public class OutboundSender {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(OutboundSender.class);
+
+	private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService timers;
+	private final ExecutorService writerThreads;
+	private final Executor writers;
+	private final ExecutorService closers;
+	private final long sendTimeLimit;
+	private final int bufferSizeLimit;
+	private final int queueCapacity;
+	private final int maxBatchSize;
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param writerThreads
+	 *      The number of threads that write to the sessions
+	 * @param sendTimeLimit
+	 *      The time in milliseconds a single send may take before the session counts as stuck
+	 * @param bufferSizeLimit
+	 *      The maximum number of payload bytes that may be queued per session
+	 * @param queueCapacity
+	 *      The maximum number of messages that may be queued per session
+	 * @param maxBatchSize
+	 *      The maximum number of commands in one BATCH frame, 1 disables batching
+	 */
+	public OutboundSender(int writerThreads, long sendTimeLimit, int bufferSizeLimit, int queueCapacity,
+			int maxBatchSize) {
+		this(writerThreads, null, sendTimeLimit, bufferSizeLimit, queueCapacity, maxBatchSize);
+	}
+
+	/**
+	 * Constructor for writing on an executor of the caller
+	 *
+	 * @param writerThreads
+	 *      The number of threads that write to the sessions, unused if there is a write executor
+	 * @param writeExecutor
+	 *      The executor that writes to the sessions, null to use the writer threads. It is not shut down here
+	 * @param sendTimeLimit
+	 *      The time in milliseconds a single send may take before the session counts as stuck
+	 * @param bufferSizeLimit
+	 *      The maximum number of payload bytes that may be queued per session
+	 * @param queueCapacity
+	 *      The maximum number of messages that may be queued per session
+	 * @param maxBatchSize
+	 *      The maximum number of commands in one BATCH frame, 1 disables batching
+	 */
+	public OutboundSender(int writerThreads, Executor writeExecutor, long sendTimeLimit, int bufferSizeLimit,
+			int queueCapacity, int maxBatchSize) {
+		this.timers = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("WebsocketTimer"));
+		this.writerThreads = writeExecutor == null
+				? Executors.newFixedThreadPool(writerThreads, new NamedThreadFactory("WebsocketWriter")) : null;
+		this.writers = writeExecutor != null ? writeExecutor : this.writerThreads;
+		this.closers = Executors.newCachedThreadPool(new NamedThreadFactory("WebsocketCloser"));
+		this.sendTimeLimit = sendTimeLimit;
+		this.bufferSizeLimit = bufferSizeLimit;
+		this.queueCapacity = queueCapacity;
+		this.maxBatchSize = maxBatchSize;
+		long checkInterval = Math.max(sendTimeLimit / 2, 1);
+		timers.scheduleWithFixedDelay(this::closeStuckSessions, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Queues a message for a session.
+	 *
+	 * @param session
+	 *      The target session
+	 * @param message
+	 *      The message to be send
+	 * @return a future that completes with true once the message was written, or with false
+	 *      if it could not be written
+	 */
+	public CompletableFuture<Boolean> send(WebSocketSession session, WebSocketMessage<?> message) {
+		return send(session, message, false);
+	}
+
+	/**
+	 * Queues a command for a session. If the session supports batching, the command may be written
+	 * together with other commands in one BATCH frame.
+	 *
+	 * @param session
+	 *      The target session
+	 * @param command
+	 *      The command, as JSON text or binary encoded depending on the session
+	 * @return a future that completes with true once the command was written, or with false
+	 *      if it could not be written
+	 */
+	public CompletableFuture<Boolean> sendCommand(WebSocketSession session, WebSocketMessage<?> command) {
+		return send(session, command, true);
+	}
+
+	private CompletableFuture<Boolean> send(WebSocketSession session, WebSocketMessage<?> message, boolean batchable) {
+		Outbox outbox = outboxFor(session);
+		if (outbox == null) {
+			return CompletableFuture.completedFuture(false);
+		}
+		return outbox.enqueue(message, batchable);
+	}
+
+	/**
+	 * @return the outbox of the session, created on first use, or null if the session is closed
+	 */
+	private Outbox outboxFor(WebSocketSession session) {
+		Outbox outbox = outboxes.get(session.getId());
+		if (outbox != null || !session.isOpen()) {
+			return outbox;
+		}
+		outbox = outboxes.computeIfAbsent(session.getId(), id -> new Outbox(session));
+		if (!session.isOpen()) {
+			// closed meanwhile, it may have been removed before the outbox was created
+			remove(session);
+			return null;
+		}
+		return outbox;
+	}
+
+	/**
+	 * Lets the commands for a session be written as BATCH frames, called once the binding announced support for it.
+	 *
+	 * @param session
+	 *      The session of the binding
+	 */
+	public void enableBatching(WebSocketSession session) {
+		Outbox outbox = maxBatchSize > 1 ? outboxFor(session) : null;
+		if (outbox != null) {
+			outbox.batching = true;
+		}
+	}
+
+	/**
+	 * Drops the outbox of a closed session and fails everything still queued for it.
+	 *
+	 * @param session
+	 *      The closed session
+	 */
+	public void remove(WebSocketSession session) {
+		Outbox outbox = outboxes.remove(session.getId());
+		if (outbox != null) {
+			outbox.discard();
+		}
+	}
+
+	/**
+	 * Closes a session on a thread of its own, so neither the caller nor the writers are blocked by a dead peer.
+	 *
+	 * @param session
+	 *      The session to close
+	 * @param status
+	 *      The reason for closing
+	 */
+	public void close(WebSocketSession session, CloseStatus status) {
+		remove(session);
+		closers.execute(() -> {
+			try {
+				session.close(status);
+			} catch (IOException e) {
+				// do nothing
+			}
+			// a message sent while closing may have created a new outbox
+			remove(session);
+		});
+	}
+
+	/**
+	 * To close the sessions whose writer is stuck in a send for longer than the send time limit.
+	 */
+	private void closeStuckSessions() {
+		long now = System.currentTimeMillis();
+		for (Outbox outbox : outboxes.values()) {
+			long startedAt = outbox.sendStartedAt.get();
+			if (startedAt != 0 && now - startedAt > sendTimeLimit) {
+				LOGGER.warn("Send to {} takes longer than {} ms, closing the session", outbox.session.getId(),
+						sendTimeLimit);
+				close(outbox.session, CloseStatus.SESSION_NOT_RELIABLE);
+			}
+		}
+	}
+
+	/**
+	 * @return the time in milliseconds a single send may take
+	 */
+	public long getSendTimeLimit() {
+		return sendTimeLimit;
+	}
+
+	/**
+	 * Stops the writer threads.
+	 */
+	public void shutdown() {
+		timers.shutdown();
+		if (writerThreads != null) {
+			writerThreads.shutdown();
+		}
+		closers.shutdown();
+	}
+
+	/**
+	 * The queued messages of a single session.
+	 */
+	private class Outbox {
+		private final WebSocketSession session;
+		// a linked queue costs nothing while the session is idle, unlike an array of the full capacity
+		private final Queue<PendingMessage> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger queuedMessages = new AtomicInteger();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private final AtomicInteger bufferedBytes = new AtomicInteger();
+		private final AtomicLong sendStartedAt = new AtomicLong();
+		private volatile boolean batching;
+		private volatile boolean discarded;
+
+		Outbox(WebSocketSession session) {
+			this.session = session;
+		}
+
+		CompletableFuture<Boolean> enqueue(WebSocketMessage<?> message, boolean batchable) {
+			CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+			long startedAt = sendStartedAt.get();
+			if (startedAt != 0 && System.currentTimeMillis() - startedAt > sendTimeLimit) {
+				LOGGER.warn("Send to {} takes longer than {} ms", session.getId(), sendTimeLimit);
+				result.complete(false);
+				return result;
+			}
+
+			int size = message.getPayloadLength();
+			PendingMessage pending = new PendingMessage(message, batchable && batching, result);
+			int queued = queuedMessages.incrementAndGet();
+			if (bufferedBytes.addAndGet(size) > bufferSizeLimit || queued > queueCapacity) {
+				bufferedBytes.addAndGet(-size);
+				queuedMessages.decrementAndGet();
+				LOGGER.warn("Outbound buffer of {} is full", session.getId());
+				result.complete(false);
+				return result;
+			}
+			queue.offer(pending);
+
+			schedule();
+			return result;
+		}
+
+		void discard() {
+			discarded = true;
+			// only the draining thread polls, a running drain fails the rest itself
+			if (scheduled.compareAndSet(false, true)) {
+				drain();
+			}
+		}
+
+		private PendingMessage poll() {
+			PendingMessage pending = queue.poll();
+			if (pending != null) {
+				queuedMessages.decrementAndGet();
+			}
+			return pending;
+		}
+
+		private void schedule() {
+			// commands queued while this session is being written to are batched by the running drain
+			if (scheduled.compareAndSet(false, true)) {
+				writers.execute(this::drain);
+			}
+		}
+
+		private void drain() {
+			PendingMessage pending;
+			while ((pending = poll()) != null) {
+				if (discarded) {
+					pending.result.complete(false);
+					continue;
+				}
+				PendingMessage next = queue.peek();
+				if (!pending.batchable || next == null || !next.batchable) {
+					write(pending.message, pending.message.getPayloadLength(), pending.result);
+					continue;
+				}
+
+				// this is the only thread polling, so a peeked message is still there when polled
+				List<PendingMessage> batch = new ArrayList<>();
+				batch.add(pending);
+				while (batch.size() < maxBatchSize && next != null && next.batchable) {
+					batch.add(poll());
+					next = queue.peek();
+				}
+				writeBatch(batch);
+			}
+			scheduled.set(false);
+			if (!queue.isEmpty()) {
+				// a message was queued after the last poll but before the flag was reset
+				schedule();
+			}
+		}
+
+		private void write(WebSocketMessage<?> message, int queuedBytes, CompletableFuture<Boolean> result) {
+			bufferedBytes.addAndGet(-queuedBytes);
+			sendStartedAt.set(System.currentTimeMillis());
+			try {
+				session.sendMessage(message);
+				result.complete(true);
+			} catch (IOException | RuntimeException e) {
+				LOGGER.warn("Exception while sending websocket message to {}", session.getRemoteAddress());
+				result.complete(false);
+			} finally {
+				sendStartedAt.set(0);
+			}
+		}
+
+		/**
+		 * Writes several commands as one BATCH frame. The commands are already encoded,
+		 * so they are joined as they are instead of being parsed and serialized again.
+		 * All commands of a session have the same encoding.
+		 */
+		private void writeBatch(List<PendingMessage> batch) {
+			int queuedBytes = 0;
+			for (PendingMessage pending : batch) {
+				queuedBytes += pending.message.getPayloadLength();
+			}
+
+			WebSocketMessage<?> frame;
+			if (batch.get(0).message instanceof BinaryMessage) {
+				List<byte[]> commands = new ArrayList<>(batch.size());
+				for (PendingMessage pending : batch) {
+					ByteBuffer payload = ((BinaryMessage) pending.message).getPayload().duplicate();
+					byte[] bytes = new byte[payload.remaining()];
+					payload.get(bytes);
+					commands.add(bytes);
+				}
+				frame = new BinaryMessage(BinaryCodec.encodeBatch(commands));
+			} else {
+				StringBuilder json = new StringBuilder("{\"type\":\"BATCH\",\"commands\":[");
+				for (int i = 0; i < batch.size(); i++) {
+					if (i > 0) {
+						json.append(',');
+					}
+					json.append(((TextMessage) batch.get(i).message).getPayload());
+				}
+				frame = new TextMessage(json.append("]}"));
+			}
+
+			CompletableFuture<Boolean> result = new CompletableFuture<>();
+			write(frame, queuedBytes, result);
+			for (PendingMessage pending : batch) {
+				pending.result.complete(result.join());
+			}
+		}
+	}
+
+	/**
+	 * A queued message together with the future of its caller.
+	 */
+	private static class PendingMessage {
+		private final WebSocketMessage<?> message;
+		private final boolean batchable;
+		private final CompletableFuture<Boolean> result;
+
+		PendingMessage(WebSocketMessage<?> message, boolean batchable, CompletableFuture<Boolean> result) {
+			this.message = message;
+			this.batchable = batchable;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Creates named daemon threads for the pools of the sender.
+	 */
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger counter = new AtomicInteger();
+
+		NamedThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package de.qaware.echo.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps commands for bindings that are currently not connected, so they can be sent as soon as the binding
+ * registers again. The commands per Amazon Echo ID are bounded and expire after a time to live. If a journal
+ * file is configured, the commands survive a restart of the server.
+ *
+ * A drained command stays in the journal until it was sent, a command that could not be sent is put back.
+ *
+ * @author Andreas Mayer
+ */
+public class PendingCommandStore {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(PendingCommandStore.class);
+	private final static int PURGE_INTERVAL = 256;
+	private final static Comparator<StoredCommand> BY_SEQUENCE = Comparator.comparingLong(StoredCommand::getSequence);
+
+	private final boolean enabled;
+	private final long timeToLive;
+	private final int maxPerEchoId;
+	private final CommandJournal journal;
+	private final Map<String, Deque<StoredCommand>> commands = new HashMap<>();
+	private final Map<Long, StoredCommand> sending = new HashMap<>();
+	private final AtomicLong expiredCount = new AtomicLong();
+	private long nextSequence;
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param enabled
+	 *      Whether commands are stored at all
+	 * @param timeToLive
+	 *      The time in milliseconds a command is kept
+	 * @param maxPerEchoId
+	 *      The maximum number of commands kept per Echo ID, the oldest one is dropped first
+	 * @param journalFile
+	 *      The journal file or null to keep the commands in memory only
+	 * @param journalSize
+	 *      The size of the journal file in bytes
+	 * @throws IOException If the journal cannot be opened
+	 */
+	public PendingCommandStore(boolean enabled, long timeToLive, int maxPerEchoId, Path journalFile, int journalSize)
+			throws IOException {
+		this.enabled = enabled;
+		this.timeToLive = timeToLive;
+		this.maxPerEchoId = maxPerEchoId;
+		this.journal = enabled && journalFile != null ? new CommandJournal(journalFile, journalSize) : null;
+
+		if (journal != null) {
+			for (StoredCommand command : journal.replay()) {
+				commands.computeIfAbsent(command.getAmazonEchoId(), id -> new ArrayDeque<>()).add(command);
+				nextSequence = Math.max(nextSequence, command.getSequence() + 1);
+			}
+			LOGGER.info("Recovered {} stored commands from {}", countLive(), journalFile);
+		}
+	}
+
+	/**
+	 * @return whether commands are stored
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Stores a command until the binding registers again.
+	 *
+	 * @param amazonEchoId
+	 *      The Echo ID the command is for
+	 * @param json
+	 *      The serialized command
+	 * @return true if the command was stored
+	 */
+	public synchronized boolean offer(String amazonEchoId, String json) {
+		if (!enabled) {
+			return false;
+		}
+
+		long now = System.currentTimeMillis();
+		if (nextSequence % PURGE_INTERVAL == 0) {
+			purgeExpired(now);
+		}
+		Deque<StoredCommand> queue = commands.computeIfAbsent(amazonEchoId, id -> new ArrayDeque<>());
+		dropExpired(queue, now);
+		while (queue.size() >= maxPerEchoId) {
+			StoredCommand dropped = queue.poll();
+			LOGGER.warn("Too many stored commands for {}, dropping the oldest", amazonEchoId);
+			removeFromJournal(dropped);
+		}
+
+		StoredCommand command = new StoredCommand(nextSequence++, amazonEchoId, now + timeToLive, json);
+		try {
+			if (journal != null && !journal.add(command, this::live)) {
+				LOGGER.warn("Command journal is full, could not store command for {}", amazonEchoId);
+				cleanup(amazonEchoId, queue);
+				return false;
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Exception while writing the command journal", e);
+			cleanup(amazonEchoId, queue);
+			return false;
+		}
+		queue.add(command);
+		return true;
+	}
+
+	/**
+	 * Takes all stored commands of an Echo ID that have not expired yet. Each of them has to be handed back with
+	 * {@link #forget(StoredCommand)} or {@link #restore(StoredCommand)}, until then it is kept in the journal.
+	 *
+	 * @param amazonEchoId
+	 *      The Echo ID whose binding registered
+	 * @return the commands in the order they were stored
+	 */
+	synchronized List<StoredCommand> drain(String amazonEchoId) {
+		Deque<StoredCommand> queue = commands.remove(amazonEchoId);
+		if (queue == null) {
+			return Collections.emptyList();
+		}
+
+		dropExpired(queue, System.currentTimeMillis());
+		for (StoredCommand command : queue) {
+			sending.put(command.getSequence(), command);
+		}
+		return new ArrayList<>(queue);
+	}
+
+	/**
+	 * Forgets a drained command once it was sent, or if it can never be sent.
+	 *
+	 * @param command
+	 *      The drained command
+	 */
+	synchronized void forget(StoredCommand command) {
+		if (sending.remove(command.getSequence()) != null) {
+			removeFromJournal(command);
+		}
+	}
+
+	/**
+	 * Puts a drained command that could not be sent back in its place, unless it expired meanwhile.
+	 *
+	 * @param command
+	 *      The drained command
+	 */
+	synchronized void restore(StoredCommand command) {
+		if (sending.remove(command.getSequence()) == null) {
+			return;
+		}
+		if (command.isExpired(System.currentTimeMillis())) {
+			expiredCount.incrementAndGet();
+			LOGGER.info("Dropping expired command for {}", command.getAmazonEchoId());
+			removeFromJournal(command);
+			return;
+		}
+		Deque<StoredCommand> queue = commands.computeIfAbsent(command.getAmazonEchoId(), id -> new ArrayDeque<>());
+		List<StoredCommand> ordered = new ArrayList<>(queue);
+		ordered.add(command);
+		ordered.sort(BY_SEQUENCE);
+		queue.clear();
+		queue.addAll(ordered);
+	}
+
+	/**
+	 * @return the number of commands that expired before they could be sent
+	 */
+	public long getExpiredCount() {
+		return expiredCount.get();
+	}
+
+	/**
+	 * Writes the journal to the disk.
+	 */
+	public synchronized void close() {
+		if (journal != null) {
+			journal.force();
+		}
+	}
+
+	/**
+	 * Drops the expired commands of all Echo IDs, including those whose binding never came back.
+	 */
+	private void purgeExpired(long now) {
+		Iterator<Deque<StoredCommand>> iterator = commands.values().iterator();
+		while (iterator.hasNext()) {
+			Deque<StoredCommand> queue = iterator.next();
+			dropExpired(queue, now);
+			if (queue.isEmpty()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private void dropExpired(Deque<StoredCommand> queue, long now) {
+		Iterator<StoredCommand> iterator = queue.iterator();
+		while (iterator.hasNext()) {
+			StoredCommand command = iterator.next();
+			if (command.isExpired(now)) {
+				iterator.remove();
+				expiredCount.incrementAndGet();
+				LOGGER.info("Dropping expired command for {}", command.getAmazonEchoId());
+				removeFromJournal(command);
+			}
+		}
+	}
+
+	private void removeFromJournal(StoredCommand command) {
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.remove(command.getSequence(), this::live);
+		} catch (IOException e) {
+			LOGGER.warn("Exception while writing the command journal", e);
+		}
+	}
+
+	private void cleanup(String amazonEchoId, Deque<StoredCommand> queue) {
+		if (queue.isEmpty()) {
+			commands.remove(amazonEchoId);
+		}
+	}
+
+	private Collection<StoredCommand> live() {
+		List<StoredCommand> live = new ArrayList<>();
+		for (Deque<StoredCommand> queue : commands.values()) {
+			live.addAll(queue);
+		}
+		live.addAll(sending.values());
+		// a compacted journal keeps the order in which the commands were stored
+		live.sort(BY_SEQUENCE);
+		return live;
+	}
+
+	private int countLive() {
+		int count = 0;
+		for (Deque<StoredCommand> queue : commands.values()) {
+			count += queue.size();
+		}
+		return count;
+	}
+}
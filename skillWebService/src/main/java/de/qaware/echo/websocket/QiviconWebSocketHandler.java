@@ -1,70 +1,274 @@
 package de.qaware.echo.websocket;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.qaware.echo.cluster.ClusterNode;
+import de.qaware.echo.cluster.CommandReceiver;
+import de.qaware.echo.devices.DeviceCatalogRegistry;
+import de.qaware.echo.devices.DeviceStateCache;
+import de.qaware.echo.websocket.protocol.AckMessage;
+import de.qaware.echo.websocket.protocol.BinaryCodec;
+import de.qaware.echo.websocket.protocol.DeviceCatalogMessage;
 import de.qaware.echo.websocket.protocol.Message;
+import de.qaware.echo.websocket.protocol.MessageDecoder;
+import de.qaware.echo.websocket.protocol.QueryStateMessage;
+import de.qaware.echo.websocket.protocol.ReconnectMessage;
 import de.qaware.echo.websocket.protocol.RegisterMessage;
+import de.qaware.echo.websocket.protocol.StateReportMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * To send and receivce messages via the websocket connections.
+ * Messages are JSON text, or binary encoded by the {@link BinaryCodec} if the binding negotiated its subprotocol.
+ * Messages larger than the frame buffer of the container arrive in parts and are joined by the {@link MessageAssembler}.
+ * Dead bindings are found by the {@link IdleSessionMonitor}, so commands are not sent into dead connections.
  *
  * @author Andreas Mayer
  */
-public class QiviconWebSocketHandler extends TextWebSocketHandler {
+public class QiviconWebSocketHandler extends AbstractWebSocketHandler implements CommandReceiver {
 
 	private final static Logger LOGGER = LoggerFactory.getLogger(QiviconWebSocketHandler.class);
 
-	private final static Map<String, WebSocketSession> SESSIONS = new ConcurrentHashMap<>();
-	private final static Map<String, String> USER_TO_SESSION_IDS = new ConcurrentHashMap<>();
+	// set on the sessions of bindings that acknowledge the commands, older bindings never do
+	private static final String ACKS_ATTRIBUTE = "qivicon.acks";
+
+	private final SessionRegistry sessionRegistry = new SessionRegistry();
 
 	private final ObjectMapper objectMapper;
+	private final MessageDecoder messageDecoder;
+	private final MessageAssembler messageAssembler;
+	private final OutboundSender outboundSender;
+	private final CommandTracker commandTracker;
+	private final PendingCommandStore pendingCommandStore;
+	private final ClusterNode clusterNode;
+	private final DeviceCatalogRegistry deviceCatalogs;
+	private final DeviceStateCache deviceStates;
+	private final long stateQueryTimeout;
+	private final Executor blockingExecutor;
+	private final IdleSessionMonitor idleSessionMonitor;
+	private final int reconnectSpread;
 
 	@Autowired
-	public QiviconWebSocketHandler(ObjectMapper objectMapper) {
+	public QiviconWebSocketHandler(ObjectMapper objectMapper, MessageAssembler messageAssembler,
+								   OutboundSender outboundSender, CommandTracker commandTracker,
+								   PendingCommandStore pendingCommandStore, ClusterNode clusterNode,
+								   DeviceCatalogRegistry deviceCatalogs, DeviceStateCache deviceStates,
+								   long stateQueryTimeout, Executor blockingExecutor, long pingInterval, int maxMissedPings,
+								   int reconnectSpread) {
 		this.objectMapper = objectMapper;
+		this.messageDecoder = new MessageDecoder(objectMapper);
+		this.messageAssembler = messageAssembler;
+		this.outboundSender = outboundSender;
+		this.commandTracker = commandTracker;
+		this.pendingCommandStore = pendingCommandStore;
+		this.clusterNode = clusterNode;
+		this.deviceCatalogs = deviceCatalogs;
+		this.deviceStates = deviceStates;
+		this.stateQueryTimeout = stateQueryTimeout;
+		this.blockingExecutor = blockingExecutor;
+		this.idleSessionMonitor = new IdleSessionMonitor(pingInterval, maxMissedPings, new IdleSessions());
+		this.reconnectSpread = reconnectSpread;
+	}
+
+	/**
+	 * Tells every binding to reconnect, each after another delay within the reconnect spread, so they do not all
+	 * come back at once when the server is up again. Waits at most the send time limit for the messages to be
+	 * written, then stops the monitoring of idle sessions.
+	 */
+	public void shutdown() {
+		idleSessionMonitor.shutdown();
+		List<WebSocketSession> sessions = new ArrayList<>(sessionRegistry.getSessions());
+		if (sessions.isEmpty()) {
+			return;
+		}
+		LOGGER.info("Telling {} bindings to reconnect within {} ms", sessions.size(), reconnectSpread);
+		List<CompletableFuture<Void>> closed = new ArrayList<>(sessions.size());
+		for (int i = 0; i < sessions.size(); i++) {
+			int delay = (int) ((long) reconnectSpread * i / sessions.size());
+			closed.add(sendReconnect(sessions.get(i), delay, CloseStatus.SERVICE_RESTARTED));
+		}
+		try {
+			CompletableFuture.allOf(closed.toArray(new CompletableFuture<?>[closed.size()]))
+					.get(outboundSender.getSendTimeLimit(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			LOGGER.warn("Not every binding was told to reconnect: {}", e.toString());
+		}
+	}
+
+	/**
+	 * To tell a binding when to connect again and to close its session once that is written.
+	 *
+	 * @return a future that completes once the session is being closed
+	 */
+	private CompletableFuture<Void> sendReconnect(WebSocketSession session, int delay, CloseStatus status) {
+		WebSocketMessage<?> message;
+		try {
+			message = new EncodedCommand(new ReconnectMessage(delay), null).encodeFor(session);
+		} catch (IOException e) {
+			outboundSender.close(session, status);
+			return CompletableFuture.completedFuture(null);
+		}
+		return outboundSender.send(session, message).thenAccept(sent -> outboundSender.close(session, status));
 	}
 
 	@Override
 	public void afterConnectionEstablished(WebSocketSession session) throws Exception {
 		LOGGER.info("Connection established: {}, id: {}", session.getRemoteAddress(), session.getId());
-		SESSIONS.put(session.getId(), session);
+		Integer retryAfter = (Integer) session.getAttributes().get(HandshakeAdmission.RETRY_AFTER_ATTRIBUTE);
+		if (retryAfter != null) {
+			// turned away by the admission, the session is only used to say when to come back
+			sendReconnect(session, retryAfter, CloseStatus.SERVICE_OVERLOAD);
+			return;
+		}
+		sessionRegistry.add(session);
+		idleSessionMonitor.add(session);
 	}
 
 	@Override
 	public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
 		LOGGER.info("Connection closed: {}, id: {}", session.getRemoteAddress(), session.getId());
-		SESSIONS.remove(session.getId());
+		releaseAdmission(session);
+		forget(session);
+		outboundSender.remove(session);
+		messageAssembler.remove(session.getId());
+	}
+
+	/**
+	 * To let the next binding connect, once this one registered or is gone.
+	 */
+	private void releaseAdmission(WebSocketSession session) {
+		Object ticket = session.getAttributes().remove(HandshakeAdmission.TICKET_ATTRIBUTE);
+		if (ticket instanceof HandshakeAdmission.Ticket) {
+			((HandshakeAdmission.Ticket) ticket).release();
+		}
+	}
+
+	/**
+	 * To stop routing commands to a session, and to forget its Echo ID if it was the last session of it.
+	 */
+	private void forget(WebSocketSession session) {
+		idleSessionMonitor.remove(session.getId());
+		String amazonEchoId = sessionRegistry.getEchoId(session.getId());
+		sessionRegistry.remove(session);
+		if (amazonEchoId != null && sessionRegistry.getSessions(amazonEchoId).isEmpty()) {
+			commandTracker.forgetEchoId(amazonEchoId);
+			deviceCatalogs.remove(amazonEchoId);
+			deviceStates.remove(amazonEchoId);
+			clusterNode.withdraw(amazonEchoId);
+		}
 	}
 
 	@Override
 	public void handleTextMessage(WebSocketSession session, TextMessage payload) throws IOException {
+		idleSessionMonitor.touch(session.getId());
+		String json;
+		try {
+			json = messageAssembler.appendText(session.getId(), payload.getPayload(), payload.isLast());
+		} catch (IOException e) {
+			closeTooBig(session, e);
+			return;
+		}
+		if (json == null) {
+			return;
+		}
 		LOGGER.info("Received new message: {}, id: {}", session.getRemoteAddress(), session.getId());
 
-		String json = payload.getPayload();
+		handleMessage(session, messageDecoder.decode(json));
+	}
+
+	@Override
+	public void handleBinaryMessage(WebSocketSession session, BinaryMessage payload) throws IOException {
+		idleSessionMonitor.touch(session.getId());
+		ByteBuffer bytes;
+		try {
+			bytes = messageAssembler.appendBinary(session.getId(), payload.getPayload(), payload.isLast());
+		} catch (IOException e) {
+			closeTooBig(session, e);
+			return;
+		}
+		if (bytes == null) {
+			return;
+		}
+		LOGGER.info("Received new binary message: {}, id: {}", session.getRemoteAddress(), session.getId());
+
+		handleMessage(session, BinaryCodec.decode(bytes));
+	}
+
+	@Override
+	protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+		idleSessionMonitor.touch(session.getId());
+	}
 
-		Message dummyMessage = objectMapper.readValue(json, Message.class);
-		if (dummyMessage.getType() == null) {
+	/**
+	 * Lets the container pass on the parts of large messages, so its buffers can stay small.
+	 */
+	@Override
+	public boolean supportsPartialMessages() {
+		return true;
+	}
+
+	private void closeTooBig(WebSocketSession session, IOException e) {
+		LOGGER.warn("Closing session {}: {}", session.getId(), e.getMessage());
+		sessionRegistry.remove(session);
+		outboundSender.close(session, CloseStatus.TOO_BIG_TO_PROCESS);
+	}
+
+	/**
+	 * To handle a decoded message, no matter how it was encoded.
+	 *
+	 * @param session The session that send this message
+	 * @param message The message or null if its type is unknown
+	 */
+	private void handleMessage(WebSocketSession session, Message message) {
+		if (session.getAttributes().containsKey(HandshakeAdmission.RETRY_AFTER_ATTRIBUTE)) {
+			// a turned away binding must not register before it reads the reconnect message
+			return;
+		}
+		if (message == null) {
 			LOGGER.error("Received unsupported message. Check that the binding version and server matches.");
 			return;
 		}
-		Message message = objectMapper.readValue(json, dummyMessage.getType().getMessageClass());
 
 		switch (message.getType()) {
 			case REGISTER:
 				handleRegisterMessage(session, (RegisterMessage) message);
 				break;
+			case ACK:
+				handleAckMessage(session, (AckMessage) message);
+				break;
+			case DEVICE_CATALOG:
+				handleDeviceCatalogMessage(session, (DeviceCatalogMessage) message);
+				break;
+			case STATE_REPORT:
+				handleStateReportMessage(session, (StateReportMessage) message);
+				break;
 			default:
-				LOGGER.warn("Unknown message received: {}", json);
+				LOGGER.warn("Unknown message received: {}", message);
 				break;
 		}
 	}
@@ -77,85 +281,449 @@ public class QiviconWebSocketHandler extends TextWebSocketHandler {
 	 */
 	private void handleRegisterMessage(WebSocketSession session, RegisterMessage message) {
 		LOGGER.info("Register echoID: {}, id: {}", message.getAmazonEchoId(), session.getId());
-		USER_TO_SESSION_IDS.put(message.getAmazonEchoId(), session.getId());
+		try {
+			String previousEchoId = sessionRegistry.getEchoId(session.getId());
+			if (message.hasFeature(RegisterMessage.FEATURE_BATCH)) {
+				outboundSender.enableBatching(session);
+			}
+			if (message.hasFeature(RegisterMessage.FEATURE_ACK)) {
+				session.getAttributes().put(ACKS_ATTRIBUTE, Boolean.TRUE);
+			}
+			sessionRegistry.register(message.getAmazonEchoId(), session);
+			if (previousEchoId != null && sessionRegistry.getSessions(previousEchoId).isEmpty()) {
+				deviceCatalogs.remove(previousEchoId);
+				deviceStates.remove(previousEchoId);
+				clusterNode.withdraw(previousEchoId);
+			}
+			clusterNode.announce(message.getAmazonEchoId());
+			flushPendingCommands(message.getAmazonEchoId());
+		} finally {
+			// a failed registration must not keep the next binding waiting until the hold timeout
+			releaseAdmission(session);
+		}
+	}
+
+	/**
+	 * To send the commands that were stored while no binding was connected, in the order they were stored.
+	 * A command is only dropped from the store once it was sent to one of the bindings, else it is put back.
+	 *
+	 * @param amazonEchoId The Echo ID whose binding registered
+	 */
+	private void flushPendingCommands(String amazonEchoId) {
+		Set<WebSocketSession> sessions = sessionRegistry.getSessions(amazonEchoId);
+		if (sessions.isEmpty()) {
+			return;
+		}
+		List<StoredCommand> commands = pendingCommandStore.drain(amazonEchoId);
+		if (!commands.isEmpty()) {
+			LOGGER.info("Sending {} stored commands to {}", commands.size(), amazonEchoId);
+		}
+		for (StoredCommand stored : commands) {
+			EncodedCommand command = new EncodedCommand(null, stored.getJson());
+			List<CompletableFuture<Boolean>> results = new ArrayList<>(sessions.size());
+			try {
+				for (WebSocketSession session : sessions) {
+					results.add(sendOrClose(session, command.encodeFor(session)));
+				}
+			} catch (IOException e) {
+				LOGGER.warn("Dropping stored command {} that can not be encoded", stored.getJson(), e);
+				pendingCommandStore.forget(stored);
+				continue;
+			}
+			CompletableFuture<?>[] all = results.toArray(new CompletableFuture<?>[results.size()]);
+			CompletableFuture.allOf(all).whenComplete((done, error) -> {
+				if (results.stream().anyMatch(result -> !result.isCompletedExceptionally() && result.join())) {
+					pendingCommandStore.forget(stored);
+				} else {
+					LOGGER.warn("Stored command for {} could not be sent, keeping it", amazonEchoId);
+					pendingCommandStore.restore(stored);
+				}
+			});
+		}
+	}
+
+	/**
+	 * To replace the device catalog of the Echo ID the session is registered for.
+	 *
+	 * @param session The session that send this message
+	 * @param message The DeviceCatalogMessage
+	 */
+	private void handleDeviceCatalogMessage(WebSocketSession session, DeviceCatalogMessage message) {
+		String amazonEchoId = sessionRegistry.getEchoId(session.getId());
+		if (amazonEchoId == null) {
+			LOGGER.warn("Received device catalog from unregistered session {}", session.getId());
+			return;
+		}
+		deviceCatalogs.update(amazonEchoId, message.getDevices());
+	}
+
+	/**
+	 * To take over the device states the binding reported, undefined states are forgotten. The answer to a state
+	 * query arrives here too, before its acknowledgement.
+	 *
+	 * @param session The session that send this message
+	 * @param message The StateReportMessage
+	 */
+	private void handleStateReportMessage(WebSocketSession session, StateReportMessage message) {
+		String amazonEchoId = sessionRegistry.getEchoId(session.getId());
+		if (amazonEchoId == null) {
+			LOGGER.warn("Received state report from unregistered session {}", session.getId());
+			return;
+		}
+		Map<String, String> states = message.getStates();
+		if (states.containsValue(StateReportMessage.STATE_UNDEFINED)) {
+			states = new HashMap<>(states);
+			states.replaceAll((device, state) -> StateReportMessage.STATE_UNDEFINED.equals(state) ? null : state);
+		}
+		deviceStates.update(amazonEchoId, message.isFull(), states);
+	}
+
+	/**
+	 * To pass the acknowledgement of a command to the one waiting for it.
+	 *
+	 * @param session The session that send this message
+	 * @param message The AckMessage
+	 */
+	private void handleAckMessage(WebSocketSession session, AckMessage message) {
+		String amazonEchoId = sessionRegistry.getEchoId(session.getId());
+		if (amazonEchoId == null) {
+			LOGGER.warn("Received acknowledgement from unregistered session {}", session.getId());
+			return;
+		}
+		commandTracker.acknowledge(amazonEchoId, message);
+	}
+
+	/**
+	 * To send a command to the bindings which are linked to the amazonEchoId and to wait
+	 * until one of them acknowledged it, at most for the configured acknowledgement timeout. Older bindings do not
+	 * acknowledge commands, for them a command counts as confirmed once it is sent.
+	 * If no binding is connected here, the command is forwarded to the node of the cluster that holds one.
+	 * Otherwise, if storing is enabled, the command is stored until a binding registers.
+	 *
+	 * @param amazonEchoId
+	 *      The id of the amazon echo that wants to send the command
+	 * @param message
+	 *      The command to be send, its correlation ID will be set
+	 * @return the outcome of the command
+	 * @throws IOException If serialization fails
+	 */
+	public CommandResult sendCommand(String amazonEchoId, Message message) throws IOException {
+		return await(sendCommandAsync(amazonEchoId, message));
+	}
+
+	/**
+	 * To send a command like {@link #sendCommand(String, Message)}, without blocking the calling thread while the
+	 * binding handles it. Forwarding the command to another node of the cluster blocks a thread of the blocking executor.
+	 *
+	 * @param amazonEchoId
+	 *      The id of the amazon echo that wants to send the command
+	 * @param message
+	 *      The command to be send, its correlation ID will be set
+	 * @return a future that completes with the outcome of the command, at the latest after the acknowledgement timeout
+	 * @throws IOException If serialization fails
+	 */
+	public CompletableFuture<CommandResult> sendCommandAsync(String amazonEchoId, Message message) throws IOException {
+		return sendCommandAsync(amazonEchoId, message, true, true, commandTracker.getAckTimeout());
+	}
+
+	/**
+	 * To look up the state of a device, from the cache if it is known, else by asking the binding.
+	 * The query is neither forwarded to another node of the cluster nor stored, it is only worth something now.
+	 * The states are only known on the node holding the binding, on the other nodes of a cluster the state of every
+	 * device is unknown.
+	 *
+	 * @param amazonEchoId
+	 *      The id of the amazon echo that asks
+	 * @param deviceName
+	 *      The name of the device
+	 * @return the state of the device or null if it is unknown
+	 * @throws IOException If serialization fails
+	 */
+	public String queryState(String amazonEchoId, String deviceName) throws IOException {
+		try {
+			return queryStateAsync(amazonEchoId, deviceName).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			LOGGER.warn("Exception while querying state of {}", amazonEchoId, e.getCause());
+			return null;
+		}
 	}
 
 	/**
-	 * To send a message to a binding which is linked to the amazonEchoId
+	 * To look up the state of a device like {@link #queryState(String, String)}, without blocking the calling thread.
+	 *
+	 * @param amazonEchoId
+	 *      The id of the amazon echo that asks
+	 * @param deviceName
+	 *      The name of the device
+	 * @return a future that completes with the state of the device or null if it is unknown
+	 * @throws IOException If serialization fails
+	 */
+	public CompletableFuture<String> queryStateAsync(String amazonEchoId, String deviceName) throws IOException {
+		String state = deviceStates.getState(amazonEchoId, deviceName);
+		if (state != null || sessionRegistry.getSessions(amazonEchoId).isEmpty()) {
+			return CompletableFuture.completedFuture(state);
+		}
+		return sendCommandAsync(amazonEchoId, new QueryStateMessage(deviceName), false, false, stateQueryTimeout)
+				// the binding sends the report before the acknowledgement, so it is in the cache by now
+				.thenApply(result -> result == CommandResult.CONFIRMED ? deviceStates.getState(amazonEchoId, deviceName) : null);
+	}
+
+	/**
+	 * To send a command that another node of the cluster forwarded, because the binding is connected here.
+	 * It is never forwarded again.
+	 *
+	 * @param amazonEchoId
+	 *      The id of the amazon echo that wants to send the command
+	 * @param json
+	 *      The serialized command
+	 * @return the outcome of the command
+	 */
+	@Override
+	public CommandResult receive(String amazonEchoId, String json) {
+		try {
+			Message message = messageDecoder.decode(json);
+			if (message == null) {
+				LOGGER.warn("Received unsupported forwarded command {}", json);
+				return CommandResult.NOT_DELIVERED;
+			}
+			return await(sendCommandAsync(amazonEchoId, message, false, true, commandTracker.getAckTimeout()));
+		} catch (IOException e) {
+			LOGGER.warn("Exception while handling forwarded command {}", json, e);
+			return CommandResult.NOT_DELIVERED;
+		}
+	}
+
+	private CompletableFuture<CommandResult> sendCommandAsync(String amazonEchoId, Message message, boolean forwardable,
+															  boolean storable, long timeout) throws IOException {
+		if (forwardable && sessionRegistry.getSessions(amazonEchoId).isEmpty()) {
+			String node = clusterNode.findNode(amazonEchoId);
+			if (node != null) {
+				String json = objectMapper.writeValueAsString(message);
+				return CompletableFuture.supplyAsync(() -> clusterNode.forward(node, amazonEchoId, json), blockingExecutor);
+			}
+		}
+
+		String correlationId = commandTracker.newCorrelationId();
+		message.setCorrelationId(correlationId);
+		CompletableFuture<AckMessage> ack = commandTracker.expect(amazonEchoId, correlationId, timeout);
+
+		boolean queued = false;
+		CompletableFuture<AckMessage> result;
+		try {
+			if (storable && pendingCommandStore.isEnabled() && sessionRegistry.getSessions(amazonEchoId).isEmpty()
+					&& pendingCommandStore.offer(amazonEchoId, objectMapper.writeValueAsString(message))) {
+				LOGGER.info("No binding connected for {}, stored command {}", amazonEchoId, message);
+				queued = true;
+				// the binding may have registered while the command was stored
+				flushPendingCommands(amazonEchoId);
+				result = ack;
+			} else if (acknowledges(amazonEchoId)) {
+				result = sendToBindingAsync(amazonEchoId, message)
+						.thenCompose(sent -> sent ? ack : CompletableFuture.completedFuture(null));
+			} else {
+				// an acknowledgement would never come, having sent the command is all there is to know
+				result = sendToBindingAsync(amazonEchoId, message).thenCompose(sent -> {
+					if (!sent) {
+						return CompletableFuture.completedFuture(null);
+					}
+					ack.complete(new AckMessage(correlationId, true, null));
+					return ack;
+				});
+			}
+		} catch (IOException | RuntimeException e) {
+			commandTracker.forget(correlationId);
+			throw e;
+		}
+
+		// the deadline of the acknowledgement also applies while the command is still being sent
+		CompletableFuture<AckMessage> bounded = result;
+		ack.whenComplete((ackMessage, error) -> {
+			if (error != null) {
+				bounded.completeExceptionally(error);
+			}
+		});
+
+		boolean stored = queued;
+		return bounded.handle((ackMessage, error) -> {
+			commandTracker.forget(correlationId);
+			if (error != null) {
+				Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+				if (!(cause instanceof TimeoutException)) {
+					LOGGER.warn("Exception while sending command to {}", amazonEchoId, cause);
+					return CommandResult.NOT_DELIVERED;
+				}
+				if (stored) {
+					return CommandResult.QUEUED;
+				}
+				LOGGER.warn("Command {} was not acknowledged by {} in time", message, amazonEchoId);
+				return CommandResult.TIMED_OUT;
+			}
+			if (ackMessage == null) {
+				return CommandResult.NOT_DELIVERED;
+			}
+			if (!ackMessage.isSuccess()) {
+				LOGGER.warn("Command {} was rejected by {}: {}", message, amazonEchoId, ackMessage.getReason());
+				return AckMessage.ERROR_UNKNOWN_DEVICE.equals(ackMessage.getError())
+						? CommandResult.UNKNOWN_DEVICE : CommandResult.REJECTED;
+			}
+			return CommandResult.CONFIRMED;
+		});
+	}
+
+	/**
+	 * @return whether every binding linked to the Echo ID announced to acknowledge the commands
+	 */
+	private boolean acknowledges(String amazonEchoId) {
+		Set<WebSocketSession> sessions = sessionRegistry.getSessions(amazonEchoId);
+		return !sessions.isEmpty()
+				&& sessions.stream().allMatch(session -> session.getAttributes().containsKey(ACKS_ATTRIBUTE));
+	}
+
+	/**
+	 * To wait for the outcome of a command. The future always completes in time, so there is no timeout here.
+	 */
+	private static CommandResult await(CompletableFuture<CommandResult> result) {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return CommandResult.TIMED_OUT;
+		} catch (ExecutionException e) {
+			LOGGER.warn("Exception while waiting for a command", e.getCause());
+			return CommandResult.NOT_DELIVERED;
+		}
+	}
+
+	/**
+	 * To send a message to all bindings which are linked to the amazonEchoId.
+	 * Waits at most for the send time limit of the {@link OutboundSender}.
 	 *
 	 * @param amazonEchoId
 	 *      The id of the amazon echo that wants to send the message
 	 * @param message
 	 *      The message to be send
-	 * @return true if the message was successfully sent, false else
+	 * @return true if the message was successfully sent to at least one binding, false else
 	 * @throws IOException If serialization fails
 	 */
 	public boolean sendToBinding(String amazonEchoId, Message message) throws IOException {
-		String sessionId = USER_TO_SESSION_IDS.get(amazonEchoId);
-		if (sessionId == null) {
-			LOGGER.warn("Tried to send to {}, but no session is registered", amazonEchoId);
+		try {
+			return sendToBindingAsync(amazonEchoId, message).get(outboundSender.getSendTimeLimit(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			LOGGER.warn("Sending to {} timed out", amazonEchoId);
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			LOGGER.warn("Exception while sending to {}", amazonEchoId, e.getCause());
 			return false;
 		}
+	}
 
-		WebSocketSession session = SESSIONS.get(sessionId);
-		if (session == null) {
+	/**
+	 * To send a message to all bindings which are linked to the amazonEchoId without blocking.
+	 *
+	 * @param amazonEchoId
+	 *      The id of the amazon echo that wants to send the message
+	 * @param message
+	 *      The message to be send
+	 * @return a future that completes with true if the message was sent to at least one binding
+	 * @throws IOException If serialization fails
+	 */
+	public CompletableFuture<Boolean> sendToBindingAsync(String amazonEchoId, Message message) throws IOException {
+		Set<WebSocketSession> sessions = sessionRegistry.getSessions(amazonEchoId);
+		if (sessions.isEmpty()) {
 			LOGGER.warn("Tried to send to {}, but no session is registered", amazonEchoId);
-			return false;
+			return CompletableFuture.completedFuture(false);
 		}
 
-		String json = objectMapper.writeValueAsString(message);
-		TextMessage webSocketMessage = new TextMessage(json);
+		EncodedCommand command = new EncodedCommand(message, null);
+
+		if (sessions.size() == 1) {
+			WebSocketSession session = sessions.iterator().next();
+			return sendOrClose(session, command.encodeFor(session));
+		}
 
-		boolean success = send(session, webSocketMessage);
-		if (!success) {
-			// Close session, send failed
-			cleanupSession(session.getId());
-			close(session);
-			SESSIONS.remove(sessionId);
+		List<CompletableFuture<Boolean>> results = new ArrayList<>(sessions.size());
+		for (WebSocketSession session : sessions) {
+			results.add(sendOrClose(session, command.encodeFor(session)));
 		}
-		return success;
+		return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[results.size()]))
+				.thenApply(done -> results.stream().anyMatch(CompletableFuture::join));
 	}
 
 	/**
-	 * Sends a message to a specific session.
+	 * Queues a command for a specific session and closes the session if sending fails.
 	 *
 	 * @param session
 	 *      The target session
 	 * @param message
 	 *      The message to be send
-	 * @return true if successful, false else
+	 * @return a future that completes with true if successful, false else
 	 */
-	private boolean send(WebSocketSession session, TextMessage message) {
-		try {
-			session.sendMessage(message);
-		} catch (IOException e) {
-			LOGGER.warn("IOException while sending websocket message to {}", session.getRemoteAddress());
-			return false;
-		}
-		return true;
+	private CompletableFuture<Boolean> sendOrClose(WebSocketSession session, WebSocketMessage<?> message) {
+		return outboundSender.sendCommand(session, message).thenApply(success -> {
+			if (!success) {
+				// Close session, send failed
+				sessionRegistry.remove(session);
+				outboundSender.close(session, CloseStatus.SESSION_NOT_RELIABLE);
+			}
+			return success;
+		});
 	}
 
 	/**
-	 * Removes a specific session.
-	 *
-	 * @param sessionId
-	 *      The id of the session that will be removed
+	 * Pings idle sessions and closes those that stopped answering, before a command is sent to them.
 	 */
-	private void cleanupSession(String sessionId) {
-		USER_TO_SESSION_IDS.values().remove(sessionId);
+	private class IdleSessions implements IdleSessionMonitor.Listener {
+
+		@Override
+		public void ping(WebSocketSession session) {
+			outboundSender.send(session, new PingMessage());
+		}
+
+		@Override
+		public void evict(WebSocketSession session) {
+			forget(session);
+			outboundSender.close(session, CloseStatus.SESSION_NOT_RELIABLE);
+		}
 	}
 
 	/**
-	 * To close the connection with a specific session.
-	 *
-	 * @param session
-	 *      The session that will be closed
+	 * A command that is encoded at most once per encoding, however many sessions it is sent to.
+	 * Either the message or its JSON is known up front.
 	 */
-	private void close(WebSocketSession session) {
-		try {
-			session.close();
-		} catch (IOException e) {
-			// do nothing
+	private class EncodedCommand {
+		private Message message;
+		private String json;
+		private TextMessage text;
+		private BinaryMessage binary;
+
+		EncodedCommand(Message message, String json) {
+			this.message = message;
+			this.json = json;
+		}
+
+		WebSocketMessage<?> encodeFor(WebSocketSession session) throws IOException {
+			if (!BinaryCodec.SUBPROTOCOL.equals(session.getAcceptedProtocol())) {
+				if (text == null) {
+					text = new TextMessage(json != null ? json : objectMapper.writeValueAsString(message));
+				}
+				return text;
+			}
+			if (binary == null) {
+				if (message == null) {
+					message = messageDecoder.decode(json);
+					if (message == null) {
+						throw new IOException("Unsupported message " + json);
+					}
+				}
+				binary = new BinaryMessage(BinaryCodec.encode(message));
+			}
+			return binary;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package de.qaware.echo.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the open websocket sessions and the Amazon Echo IDs they registered for.
+ *
+ * Both directions are indexed, so removing a session never has to scan the Echo IDs.
+ * One Echo ID can be served by several bindings, each with its own session.
+ *
+ * @author Andreas Mayer
+ */
+public class SessionRegistry {
+
+	private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+	private final Map<String, String> sessionToEchoId = new ConcurrentHashMap<>();
+	private final Map<String, Set<WebSocketSession>> echoIdToSessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Adds a newly opened session that has not registered an Echo ID yet.
+	 *
+	 * @param session the opened session
+	 */
+	public void add(WebSocketSession session) {
+		sessions.put(session.getId(), session);
+	}
+
+	/**
+	 * Links an added session to an Echo ID. If the session was registered for another Echo ID
+	 * before, it is moved over.
+	 *
+	 * @param amazonEchoId the Echo ID the binding registered for
+	 * @param session the session of the binding
+	 */
+	public void register(String amazonEchoId, WebSocketSession session) {
+		String previousEchoId = sessionToEchoId.put(session.getId(), amazonEchoId);
+		if (previousEchoId != null && !previousEchoId.equals(amazonEchoId)) {
+			unlink(previousEchoId, session);
+		}
+		echoIdToSessions.compute(amazonEchoId, (echoId, linked) -> {
+			Set<WebSocketSession> result = linked != null ? linked : ConcurrentHashMap.newKeySet();
+			result.add(session);
+			return result;
+		});
+		if (sessions.get(session.getId()) != session) {
+			// closed while registering
+			sessionToEchoId.remove(session.getId(), amazonEchoId);
+			unlink(amazonEchoId, session);
+		}
+	}
+
+	/**
+	 * Removes a session together with its Echo ID mapping.
+	 *
+	 * @param session the session to remove
+	 */
+	public void remove(WebSocketSession session) {
+		sessions.remove(session.getId());
+		String amazonEchoId = sessionToEchoId.remove(session.getId());
+		if (amazonEchoId != null) {
+			unlink(amazonEchoId, session);
+		}
+	}
+
+	/**
+	 * @param amazonEchoId the Echo ID
+	 * @return all sessions registered for the Echo ID, never null
+	 */
+	public Set<WebSocketSession> getSessions(String amazonEchoId) {
+		Set<WebSocketSession> linked = echoIdToSessions.get(amazonEchoId);
+		return linked != null ? Collections.unmodifiableSet(linked) : Collections.emptySet();
+	}
+
+	/**
+	 * @param sessionId the id of the session
+	 * @return the Echo ID the session registered for or null
+	 */
+	public String getEchoId(String sessionId) {
+		return sessionToEchoId.get(sessionId);
+	}
+
+	/**
+	 * @return all open sessions, registered or not
+	 */
+	public Collection<WebSocketSession> getSessions() {
+		return Collections.unmodifiableCollection(sessions.values());
+	}
+
+	/**
+	 * @return the number of open sessions
+	 */
+	public int sessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * @return the number of Echo IDs with at least one registered session
+	 */
+	public int echoIdCount() {
+		return echoIdToSessions.size();
+	}
+
+	private void unlink(String amazonEchoId, WebSocketSession session) {
+		echoIdToSessions.computeIfPresent(amazonEchoId, (echoId, linked) -> {
+			linked.remove(session);
+			return linked.isEmpty() ? null : linked;
+		});
+	}
+}
@@ -0,0 +1,40 @@
+package de.qaware.echo.websocket;
+
+/**
+ * A serialized command waiting for its binding to come back.
+ *
+ * @author Andreas Mayer
+ */
+class StoredCommand {
+	private final long sequence;
+	private final String amazonEchoId;
+	private final long expiresAt;
+	private final String json;
+
+	StoredCommand(long sequence, String amazonEchoId, long expiresAt, String json) {
+		this.sequence = sequence;
+		this.amazonEchoId = amazonEchoId;
+		this.expiresAt = expiresAt;
+		this.json = json;
+	}
+
+	long getSequence() {
+		return sequence;
+	}
+
+	String getAmazonEchoId() {
+		return amazonEchoId;
+	}
+
+	long getExpiresAt() {
+		return expiresAt;
+	}
+
+	String getJson() {
+		return json;
+	}
+
+	boolean isExpired(long now) {
+		return now >= expiresAt;
+	}
+}
@@ -1,12 +1,27 @@
 package de.qaware.echo.websocket;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.qaware.echo.cluster.ClusterNode;
+import de.qaware.echo.cluster.HttpNodeChannel;
+import de.qaware.echo.cluster.InMemoryRoutingBackend;
+import de.qaware.echo.cluster.RoutingBackend;
+import de.qaware.echo.devices.DeviceCatalogRegistry;
+import de.qaware.echo.devices.DeviceStateCache;
+import de.qaware.echo.util.BlockingExecutors;
+import de.qaware.echo.websocket.protocol.BinaryCodec;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.embedded.ServletContextInitializer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Configuration for the QiviconWebsocketHandler.
@@ -20,14 +35,181 @@ public class WebSocketConfig implements WebSocketConfigurer {
 	@Autowired
 	private ObjectMapper objectMapper;
 
+	@Value("${qivicon.websocket.writer-threads:4}")
+	private int writerThreads;
+
+	@Value("${qivicon.blocking.virtual-threads:false}")
+	private boolean virtualThreads;
+
+	@Value("${qivicon.blocking.max-threads:200}")
+	private int blockingMaxThreads;
+
+	@Value("${qivicon.websocket.send-time-limit:5000}")
+	private long sendTimeLimit;
+
+	@Value("${qivicon.websocket.buffer-size-limit:65536}")
+	private int bufferSizeLimit;
+
+	@Value("${qivicon.websocket.queue-capacity:64}")
+	private int queueCapacity;
+
+	@Value("${qivicon.websocket.frame-buffer-size:2048}")
+	private int frameBufferSize;
+
+	@Value("${qivicon.websocket.max-message-size:1048576}")
+	private int maxMessageSize;
+
+	@Value("${qivicon.websocket.ping-interval:30000}")
+	private long pingInterval;
+
+	@Value("${qivicon.websocket.max-missed-pings:2}")
+	private int maxMissedPings;
+
+	@Value("${qivicon.websocket.admission.max-concurrent:64}")
+	private int admissionMaxConcurrent;
+
+	@Value("${qivicon.websocket.admission.queue-size:32}")
+	private int admissionQueueSize;
+
+	@Value("${qivicon.websocket.admission.queue-timeout:200}")
+	private long admissionQueueTimeout;
+
+	@Value("${qivicon.websocket.admission.hold-timeout:10000}")
+	private long admissionHoldTimeout;
+
+	@Value("${qivicon.websocket.admission.retry-after:5000}")
+	private int admissionRetryAfter;
+
+	@Value("${qivicon.websocket.reconnect-spread:30000}")
+	private int reconnectSpread;
+
+	@Value("${qivicon.websocket.binary-protocol:true}")
+	private boolean binaryProtocol;
+
+	@Value("${qivicon.websocket.batch-max-size:32}")
+	private int maxBatchSize;
+
+	@Value("${qivicon.command.ack-timeout:3000}")
+	private long ackTimeout;
+
+	@Value("${qivicon.device-state.query-timeout:1500}")
+	private long deviceStateQueryTimeout;
+
+	@Value("${qivicon.device-state.max-devices-per-home:512}")
+	private int deviceStateMaxDevicesPerHome;
+
+	@Value("${qivicon.pending-commands.enabled:false}")
+	private boolean pendingCommandsEnabled;
+
+	@Value("${qivicon.pending-commands.time-to-live:60000}")
+	private long pendingCommandsTimeToLive;
+
+	@Value("${qivicon.pending-commands.max-per-echo-id:16}")
+	private int pendingCommandsPerEchoId;
+
+	@Value("${qivicon.pending-commands.journal:}")
+	private String pendingCommandsJournal;
+
+	@Value("${qivicon.pending-commands.journal-size:4194304}")
+	private int pendingCommandsJournalSize;
+
+	@Value("${qivicon.cluster.enabled:false}")
+	private boolean clusterEnabled;
+
+	@Value("${qivicon.cluster.node-url:}")
+	private String clusterNodeUrl;
+
+	@Value("${qivicon.cluster.secret:}")
+	private String clusterSecret;
+
+	@Autowired(required = false)
+	private RoutingBackend routingBackend;
+
 	@Override
 	public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-		registry.addHandler(getQiviconHandler(), "/qiviconWebsocket").setAllowedOrigins("*");
+		DefaultHandshakeHandler handshakeHandler = new DefaultHandshakeHandler();
+		if (binaryProtocol) {
+			// bindings that do not ask for the subprotocol, or servers without it, fall back to JSON
+			handshakeHandler.setSupportedProtocols(BinaryCodec.SUBPROTOCOL);
+		}
+		registry.addHandler(getQiviconHandler(), "/qiviconWebsocket").setHandshakeHandler(handshakeHandler)
+				.addInterceptors(new HandshakeAdmission(admissionMaxConcurrent, admissionQueueSize,
+						admissionQueueTimeout, admissionHoldTimeout, admissionRetryAfter))
+				.setAllowedOrigins("*");
 	}
 
-	@Bean
+	@Bean(destroyMethod = "shutdown")
 	public QiviconWebSocketHandler getQiviconHandler() {
-		return new QiviconWebSocketHandler(objectMapper);
+		return new QiviconWebSocketHandler(objectMapper, new MessageAssembler(maxMessageSize), getOutboundSender(),
+				getCommandTracker(), getPendingCommandStore(), getClusterNode(), getDeviceCatalogRegistry(),
+				getDeviceStateCache(), deviceStateQueryTimeout, getBlockingExecutor(), pingInterval, maxMissedPings,
+				reconnectSpread);
+	}
+
+	/**
+	 * Tomcat allocates the frame buffers for every session up front, idle or not. They are kept small,
+	 * larger messages arrive in parts. The sizes are read when its websocket container is created,
+	 * which is after the initializers ran.
+	 */
+	@Bean
+	public ServletContextInitializer getWebSocketBufferSizes() {
+		return servletContext -> {
+			servletContext.setInitParameter("org.apache.tomcat.websocket.textBufferSize", String.valueOf(frameBufferSize));
+			servletContext.setInitParameter("org.apache.tomcat.websocket.binaryBufferSize", String.valueOf(frameBufferSize));
+		};
+	}
+
+	/**
+	 * Runs the blocking work: the websocket writes if virtual threads are enabled, forwarded commands,
+	 * and the intents of a blocking speechlet.
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public ExecutorService getBlockingExecutor() {
+		return BlockingExecutors.newExecutor("Blocking", virtualThreads, blockingMaxThreads);
+	}
+
+	@Bean
+	public DeviceCatalogRegistry getDeviceCatalogRegistry() {
+		return new DeviceCatalogRegistry();
+	}
+
+	@Bean
+	public DeviceStateCache getDeviceStateCache() {
+		return new DeviceStateCache(deviceStateMaxDevicesPerHome);
+	}
+
+	@Bean(destroyMethod = "close")
+	public PendingCommandStore getPendingCommandStore() {
+		try {
+			return new PendingCommandStore(pendingCommandsEnabled, pendingCommandsTimeToLive, pendingCommandsPerEchoId,
+					pendingCommandsJournal.isEmpty() ? null : Paths.get(pendingCommandsJournal), pendingCommandsJournalSize);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to open command journal \"" + pendingCommandsJournal + "\"", e);
+		}
+	}
+
+	/**
+	 * The routing backend can be replaced by declaring another {@link RoutingBackend} bean, the in-memory
+	 * one only knows the Echo IDs of this node.
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public ClusterNode getClusterNode() {
+		RoutingBackend backend = routingBackend != null ? routingBackend : new InMemoryRoutingBackend();
+		// the forwarded command waits for the acknowledgement on the other node
+		HttpNodeChannel channel = new HttpNodeChannel(clusterSecret, (int) ackTimeout + 1000);
+		return new ClusterNode(clusterEnabled, clusterNodeUrl, backend, channel);
+	}
+
+	@Bean(destroyMethod = "shutdown")
+	public CommandTracker getCommandTracker() {
+		return new CommandTracker(ackTimeout);
+	}
+
+	@Bean(destroyMethod = "shutdown")
+	public OutboundSender getOutboundSender() {
+		// platform threads are too expensive to give every slow binding one, so the writes only move with virtual threads
+		return new OutboundSender(writerThreads, virtualThreads ? getBlockingExecutor() : null, sendTimeLimit,
+				bufferSizeLimit, queueCapacity, maxBatchSize);
 	}
 
 }
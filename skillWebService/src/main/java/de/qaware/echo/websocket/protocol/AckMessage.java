@@ -0,0 +1,60 @@
+package de.qaware.echo.websocket.protocol;
+
+/**
+ * To acknowledge a command, sent by the binding with the correlation ID of the command.
+ * A negative acknowledgement carries the reason why the command was not executed,
+ * and an error code if the reason is one the server can explain to the user.
+ *
+ * @author Andreas Mayer
+ */
+public class AckMessage extends Message {
+	/** No item is known by the device name of the command. */
+	public static final String ERROR_UNKNOWN_DEVICE = "UNKNOWN_DEVICE";
+	/** Items are known by the device name, but none of them accepts the command. */
+	public static final String ERROR_UNSUPPORTED_COMMAND = "UNSUPPORTED_COMMAND";
+
+	private boolean success;
+	private String reason;
+	private String error;
+
+	public AckMessage() {
+		super(MessageType.ACK);
+	}
+
+	public AckMessage(String correlationId, boolean success, String reason) {
+		this();
+		setCorrelationId(correlationId);
+		this.success = success;
+		this.reason = reason;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public void setSuccess(boolean success) {
+		this.success = success;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	public void setReason(String reason) {
+		this.reason = reason;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	@Override
+	public String toString() {
+		return "AckMessage{" + "correlationId='" + getCorrelationId() + '\'' + ", success=" + success +
+				", reason='" + reason + '\'' + ", error=" + error + '}';
+	}
+}
@@ -0,0 +1,38 @@
+package de.qaware.echo.websocket.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * To send several commands in one websocket frame. The binding executes them in the given order,
+ * every command keeps its own correlation ID and is acknowledged on its own.
+ *
+ * Only sent to bindings that announced {@link RegisterMessage#FEATURE_BATCH} when registering.
+ *
+ * @author Andreas Mayer
+ */
+public class BatchMessage extends Message {
+	private List<Message> commands = new ArrayList<>();
+
+	public BatchMessage() {
+		super(MessageType.BATCH);
+	}
+
+	public BatchMessage(List<Message> commands) {
+		this();
+		this.commands = commands;
+	}
+
+	public List<Message> getCommands() {
+		return commands;
+	}
+
+	public void setCommands(List<Message> commands) {
+		this.commands = commands;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchMessage{" + "commands=" + commands + '}';
+	}
+}
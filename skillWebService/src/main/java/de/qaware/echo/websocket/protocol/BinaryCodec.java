@@ -0,0 +1,357 @@
+package de.qaware.echo.websocket.protocol;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the messages, used instead of JSON when the binding asks for
+ * {@link #SUBPROTOCOL} in the Sec-WebSocket-Protocol header.
+ *
+ * A message is a type code followed by the correlation ID and the fields of its type in a fixed order.
+ * Integers are zigzag varints, strings are a varint of the UTF-8 length plus one (0 for null) followed by
+ * the bytes, booleans are a single byte. The commands of a batch are prefixed with their length, so a
+ * command of an unknown type can be skipped. New fields are only ever appended to a type and read if there
+ * are bytes left, so older encoders stay compatible.
+ *
+ * The type codes are fixed here and must never be reused, they do not depend on the order of {@link MessageType}.
+ * The binding has a copy of this class that must be kept in sync.
+ *
+ * @author Andreas Mayer
+ */
+public final class BinaryCodec {
+
+	/** The subprotocol a binding requests to use this encoding. */
+	public static final String SUBPROTOCOL = "qivicon-binary.v1";
+
+	private static final int CODE_ON = 1;
+	private static final int CODE_OFF = 2;
+	private static final int CODE_CHANGE_COLOR = 3;
+	private static final int CODE_REGISTER = 4;
+	private static final int CODE_ACK = 5;
+	private static final int CODE_BATCH = 6;
+	private static final int CODE_DEVICE_CATALOG = 7;
+	private static final int CODE_STATE_REPORT = 8;
+	private static final int CODE_QUERY_STATE = 9;
+	private static final int CODE_RECONNECT = 10;
+
+	private BinaryCodec() {
+	}
+
+	/**
+	 * To encode a message.
+	 *
+	 * @param message
+	 *      The message to be encoded
+	 * @return the encoded bytes
+	 */
+	public static byte[] encode(Message message) {
+		Output out = new Output();
+		write(out, message);
+		return out.toByteArray();
+	}
+
+	/**
+	 * To join already encoded commands to one encoded batch, without decoding them again.
+	 *
+	 * @param commands
+	 *      The encoded commands in the order they shall be executed
+	 * @return the encoded batch
+	 */
+	public static byte[] encodeBatch(List<byte[]> commands) {
+		Output out = new Output();
+		out.writeVarint(CODE_BATCH);
+		out.writeString(null);
+		out.writeVarint(commands.size());
+		for (byte[] command : commands) {
+			out.writeVarint(command.length);
+			out.writeBytes(command);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * To decode a message.
+	 *
+	 * @param buffer
+	 *      The encoded message, read from its position to its limit
+	 * @return the message or null if its type is unknown
+	 * @throws IOException If the message is malformed
+	 */
+	public static Message decode(ByteBuffer buffer) throws IOException {
+		try {
+			return read(buffer, false);
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Malformed binary message", e);
+		}
+	}
+
+	private static void write(Output out, Message message) {
+		switch (message.getType()) {
+			case ON:
+				out.writeVarint(CODE_ON);
+				out.writeString(message.getCorrelationId());
+				out.writeString(((OnMessage) message).getThing());
+				break;
+			case OFF:
+				out.writeVarint(CODE_OFF);
+				out.writeString(message.getCorrelationId());
+				out.writeString(((OffMessage) message).getThing());
+				break;
+			case CHANGE_COLOR:
+				ChangeColorMessage changeColor = (ChangeColorMessage) message;
+				out.writeVarint(CODE_CHANGE_COLOR);
+				out.writeString(message.getCorrelationId());
+				out.writeString(changeColor.getThing());
+				out.writeString(changeColor.getColor());
+				out.writeInt(changeColor.getRedProportion());
+				out.writeInt(changeColor.getGreenProportion());
+				out.writeInt(changeColor.getBlueProportion());
+				if (changeColor.getHue() != null && changeColor.getSaturation() != null
+						&& changeColor.getBrightness() != null) {
+					out.writeInt(changeColor.getHue());
+					out.writeInt(changeColor.getSaturation());
+					out.writeInt(changeColor.getBrightness());
+				}
+				break;
+			case REGISTER:
+				RegisterMessage register = (RegisterMessage) message;
+				out.writeVarint(CODE_REGISTER);
+				out.writeString(message.getCorrelationId());
+				out.writeString(register.getAmazonEchoId());
+				List<String> features = register.getFeatures();
+				out.writeVarint(features == null ? 0 : features.size());
+				if (features != null) {
+					features.forEach(out::writeString);
+				}
+				break;
+			case ACK:
+				AckMessage ack = (AckMessage) message;
+				out.writeVarint(CODE_ACK);
+				out.writeString(message.getCorrelationId());
+				out.writeBoolean(ack.isSuccess());
+				out.writeString(ack.getReason());
+				out.writeString(ack.getError());
+				break;
+			case DEVICE_CATALOG:
+				List<String> devices = ((DeviceCatalogMessage) message).getDevices();
+				out.writeVarint(CODE_DEVICE_CATALOG);
+				out.writeString(message.getCorrelationId());
+				out.writeVarint(devices.size());
+				devices.forEach(out::writeString);
+				break;
+			case STATE_REPORT:
+				StateReportMessage report = (StateReportMessage) message;
+				out.writeVarint(CODE_STATE_REPORT);
+				out.writeString(message.getCorrelationId());
+				out.writeBoolean(report.isFull());
+				out.writeVarint(report.getStates().size());
+				for (Map.Entry<String, String> state : report.getStates().entrySet()) {
+					out.writeString(state.getKey());
+					out.writeString(state.getValue());
+				}
+				break;
+			case QUERY_STATE:
+				out.writeVarint(CODE_QUERY_STATE);
+				out.writeString(message.getCorrelationId());
+				out.writeString(((QueryStateMessage) message).getThing());
+				break;
+			case RECONNECT:
+				out.writeVarint(CODE_RECONNECT);
+				out.writeString(message.getCorrelationId());
+				out.writeInt(((ReconnectMessage) message).getDelay());
+				break;
+			case BATCH:
+				List<byte[]> commands = new ArrayList<>();
+				for (Message command : ((BatchMessage) message).getCommands()) {
+					commands.add(encode(command));
+				}
+				out.writeBytes(encodeBatch(commands));
+				break;
+			default:
+				throw new IllegalArgumentException("No binary encoding for " + message.getType());
+		}
+	}
+
+	private static Message read(ByteBuffer in, boolean inBatch) {
+		int code = readVarint(in);
+		String correlationId = readString(in);
+		Message message;
+		switch (code) {
+			case CODE_ON:
+				message = new OnMessage(readString(in));
+				break;
+			case CODE_OFF:
+				message = new OffMessage(readString(in));
+				break;
+			case CODE_CHANGE_COLOR:
+				ChangeColorMessage changeColor = new ChangeColorMessage(readString(in), readString(in),
+						readInt(in), readInt(in), readInt(in));
+				if (in.hasRemaining()) {
+					changeColor.setHue(readInt(in));
+					changeColor.setSaturation(readInt(in));
+					changeColor.setBrightness(readInt(in));
+				}
+				message = changeColor;
+				break;
+			case CODE_REGISTER:
+				RegisterMessage register = new RegisterMessage(readString(in));
+				int featureCount = readVarint(in);
+				for (int i = 0; i < featureCount; i++) {
+					register.getFeatures().add(readString(in));
+				}
+				message = register;
+				break;
+			case CODE_ACK:
+				boolean success = in.get() != 0;
+				AckMessage ack = new AckMessage(correlationId, success, readString(in));
+				ack.setError(in.hasRemaining() ? readString(in) : null);
+				message = ack;
+				break;
+			case CODE_DEVICE_CATALOG:
+				int deviceCount = readVarint(in);
+				List<String> devices = new ArrayList<>(Math.min(deviceCount, in.remaining()));
+				for (int i = 0; i < deviceCount; i++) {
+					devices.add(readString(in));
+				}
+				message = new DeviceCatalogMessage(devices);
+				break;
+			case CODE_STATE_REPORT:
+				boolean full = in.get() != 0;
+				int stateCount = readVarint(in);
+				Map<String, String> states = new LinkedHashMap<>();
+				for (int i = 0; i < stateCount; i++) {
+					states.put(readString(in), readString(in));
+				}
+				message = new StateReportMessage(full, states);
+				break;
+			case CODE_QUERY_STATE:
+				message = new QueryStateMessage(readString(in));
+				break;
+			case CODE_RECONNECT:
+				message = new ReconnectMessage(readInt(in));
+				break;
+			case CODE_BATCH:
+				if (inBatch) {
+					throw new IllegalArgumentException("Nested batch");
+				}
+				int count = readVarint(in);
+				List<Message> commands = new ArrayList<>(Math.min(count, in.remaining()));
+				for (int i = 0; i < count; i++) {
+					int length = readVarint(in);
+					if (length > in.remaining()) {
+						throw new BufferUnderflowException();
+					}
+					ByteBuffer command = in.slice();
+					command.limit(length);
+					in.position(in.position() + length);
+					// keeps a null in place of an unknown command, so the order is still visible
+					commands.add(read(command, true));
+				}
+				message = new BatchMessage(commands);
+				break;
+			default:
+				return null;
+		}
+		message.setCorrelationId(correlationId);
+		return message;
+	}
+
+	private static int readVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varint too long");
+	}
+
+	private static int readInt(ByteBuffer in) {
+		int zigzag = readVarint(in);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = readVarint(in) - 1;
+		if (length < 0) {
+			return null;
+		}
+		if (length > in.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		String value;
+		if (in.hasArray()) {
+			value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+			in.position(in.position() + length);
+		} else {
+			byte[] bytes = new byte[length];
+			in.get(bytes);
+			value = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return value;
+	}
+
+	/**
+	 * A growing byte array, cheaper than a ByteArrayOutputStream because nothing is synchronized.
+	 */
+	private static class Output {
+		private byte[] bytes = new byte[64];
+		private int size;
+
+		void writeVarint(int value) {
+			while ((value & ~0x7F) != 0) {
+				writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			writeByte(value);
+		}
+
+		void writeInt(int value) {
+			writeVarint((value << 1) ^ (value >> 31));
+		}
+
+		void writeBoolean(boolean value) {
+			writeByte(value ? 1 : 0);
+		}
+
+		void writeString(String value) {
+			if (value == null) {
+				writeVarint(0);
+				return;
+			}
+			byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+			writeVarint(utf8.length + 1);
+			writeBytes(utf8);
+		}
+
+		void writeBytes(byte[] value) {
+			ensureCapacity(value.length);
+			System.arraycopy(value, 0, bytes, size, value.length);
+			size += value.length;
+		}
+
+		private void writeByte(int value) {
+			ensureCapacity(1);
+			bytes[size++] = (byte) value;
+		}
+
+		private void ensureCapacity(int additional) {
+			if (size + additional > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+			}
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+	}
+}
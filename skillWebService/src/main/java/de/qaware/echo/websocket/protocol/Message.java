@@ -8,6 +8,7 @@ package de.qaware.echo.websocket.protocol;
 public class Message {
 
 	private MessageType type;
+	private String correlationId;
 
 	public Message() {}
 
@@ -22,4 +23,12 @@ public class Message {
 	public void setType(MessageType type) {
 		this.type = type;
 	}
+
+	public String getCorrelationId() {
+		return correlationId;
+	}
+
+	public void setCorrelationId(String correlationId) {
+		this.correlationId = correlationId;
+	}
 }
@@ -0,0 +1,97 @@
+package de.qaware.echo.websocket.protocol;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decodes a JSON frame into the concrete {@link Message} subclass in a single pass.
+ *
+ * The parser streams over the top level fields until it reaches the "type" discriminator.
+ * Fields in front of it are copied into a {@link TokenBuffer}, which is replayed in front of
+ * the remaining input, so the payload is read only once and no tree is built.
+ * Unknown or missing types are rejected as soon as they are detected.
+ *
+ * @author Andreas Mayer
+ */
+public class MessageDecoder {
+
+	private static final String TYPE_FIELD = "type";
+
+	private final ObjectMapper objectMapper;
+	private final Map<MessageType, ObjectReader> readers = new EnumMap<>(MessageType.class);
+
+	/**
+	 * Default-Constructor
+	 *
+	 * @param objectMapper
+	 *      The mapper used to bind the concrete message classes
+	 */
+	public MessageDecoder(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+		for (MessageType type : MessageType.values()) {
+			readers.put(type, objectMapper.readerFor(type.getMessageClass()));
+		}
+	}
+
+	/**
+	 * Decodes a JSON message.
+	 *
+	 * @param json
+	 *      The received payload
+	 * @return the decoded message or null if the type is missing or not supported
+	 * @throws IOException If the payload is not valid JSON or does not match the message class
+	 */
+	public Message decode(String json) throws IOException {
+		try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return null;
+			}
+
+			TokenBuffer buffer = null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				parser.nextToken();
+
+				if (TYPE_FIELD.equals(fieldName)) {
+					MessageType type = parser.getCurrentToken() == JsonToken.VALUE_STRING
+							? MessageType.fromName(parser.getText()) : null;
+					if (type == null) {
+						return null;
+					}
+					return readers.get(type).readValue(remainder(parser, buffer));
+				}
+
+				if (buffer == null) {
+					buffer = new TokenBuffer(parser);
+					buffer.writeStartObject();
+				}
+				buffer.writeFieldName(fieldName);
+				buffer.copyCurrentStructure(parser);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Joins the buffered fields with the unread rest of the object. The type field itself is
+	 * dropped, it is set by the constructor of the concrete message class.
+	 */
+	private JsonParser remainder(JsonParser parser, TokenBuffer buffer) throws IOException {
+		if (buffer == null) {
+			// type was the first field, continue directly on the original parser
+			parser.nextToken();
+			return parser;
+		}
+		JsonParser sequence = JsonParserSequence.createFlattened(buffer.asParser(parser), parser);
+		sequence.nextToken();
+		return sequence;
+	}
+}
@@ -1,5 +1,8 @@
 package de.qaware.echo.websocket.protocol;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * The type of a message.
  *
@@ -9,7 +12,21 @@ public enum MessageType {
 	ON(OnMessage.class),
 	OFF(OffMessage.class),
 	CHANGE_COLOR(ChangeColorMessage.class),
-	REGISTER(RegisterMessage.class);
+	REGISTER(RegisterMessage.class),
+	ACK(AckMessage.class),
+	BATCH(BatchMessage.class),
+	DEVICE_CATALOG(DeviceCatalogMessage.class),
+	STATE_REPORT(StateReportMessage.class),
+	QUERY_STATE(QueryStateMessage.class),
+	RECONNECT(ReconnectMessage.class);
+
+	private static final Map<String, MessageType> BY_NAME = new HashMap<>();
+
+	static {
+		for (MessageType type : values()) {
+			BY_NAME.put(type.name(), type);
+		}
+	}
 
 	private final Class<? extends Message> messageClass;
 
@@ -20,4 +37,14 @@ public enum MessageType {
 	public Class<? extends Message> getMessageClass() {
 		return messageClass;
 	}
+
+	/**
+	 * Looks up a message type by its wire name without throwing for unknown names.
+	 *
+	 * @param name the name as it appears in the "type" field
+	 * @return the matching type or null if there is none
+	 */
+	public static MessageType fromName(String name) {
+		return name == null ? null : BY_NAME.get(name);
+	}
 }
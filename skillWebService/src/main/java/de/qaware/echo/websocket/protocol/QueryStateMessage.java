@@ -0,0 +1,33 @@
+package de.qaware.echo.websocket.protocol;
+
+/**
+ * To ask the binding for the current state of a device. The binding answers with a {@link StateReportMessage}
+ * followed by an {@link AckMessage}, both with the correlation ID of the query.
+ *
+ * @author Andreas Mayer
+ */
+public class QueryStateMessage extends Message {
+	private String thing;
+
+	public QueryStateMessage() {
+		super(MessageType.QUERY_STATE);
+	}
+
+	public QueryStateMessage(String thing) {
+		this();
+		this.thing = thing;
+	}
+
+	public String getThing() {
+		return thing;
+	}
+
+	public void setThing(String thing) {
+		this.thing = thing;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryStateMessage{" + "thing='" + thing + '\'' + '}';
+	}
+}
@@ -0,0 +1,54 @@
+package de.qaware.echo.websocket.protocol;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * To tell the server the states of devices, sent by the binding. Usually a delta with only the devices whose state
+ * changed since the last report. A full report replaces everything known about the home, it is sent after
+ * registering. The answer to a {@link QueryStateMessage} carries its correlation ID.
+ *
+ * @author Andreas Mayer
+ */
+public class StateReportMessage extends Message {
+	/** The state of a device whose state became undefined, the server forgets what it knew. */
+	public static final String STATE_UNDEFINED = "UNDEF";
+
+	private boolean full;
+	private Map<String, String> states = new LinkedHashMap<>();
+
+	public StateReportMessage() {
+		super(MessageType.STATE_REPORT);
+	}
+
+	public StateReportMessage(boolean full, Map<String, String> states) {
+		this();
+		this.full = full;
+		this.states = states;
+	}
+
+	public boolean isFull() {
+		return full;
+	}
+
+	public void setFull(boolean full) {
+		this.full = full;
+	}
+
+	/**
+	 * @return the state of each device by device name, e.g. "ON", "OFF", "50%", "120,100,50" or
+	 *         {@link #STATE_UNDEFINED}
+	 */
+	public Map<String, String> getStates() {
+		return states;
+	}
+
+	public void setStates(Map<String, String> states) {
+		this.states = states;
+	}
+
+	@Override
+	public String toString() {
+		return "StateReportMessage{" + "full=" + full + ", states=" + states + '}';
+	}
+}
@@ -0,0 +1,64 @@
+package de.qaware.echo.cluster;
+
+import de.qaware.echo.websocket.CommandResult;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ClusterNodeTest {
+
+	private final InMemoryRoutingBackend backend = new InMemoryRoutingBackend();
+	private final InProcessNodeChannel channel = new InProcessNodeChannel();
+	private final ClusterNode first = new ClusterNode(true, "first", backend, channel);
+	private final ClusterNode second = new ClusterNode(true, "second", backend, channel);
+
+	@Test
+	public void forwardsToTheNodeHoldingTheBinding() {
+		channel.register("first", (amazonEchoId, json) -> CommandResult.CONFIRMED);
+		first.announce("echo");
+
+		assertNull(first.findNode("echo"));
+		assertEquals("first", second.findNode("echo"));
+		assertEquals(CommandResult.CONFIRMED, second.forward("first", "echo", "{}"));
+	}
+
+	@Test
+	public void invalidatesCachedRoutesOnChange() {
+		assertNull(second.findNode("echo"));
+
+		first.announce("echo");
+		assertEquals("first", second.findNode("echo"));
+
+		first.withdraw("echo");
+		assertNull(second.findNode("echo"));
+	}
+
+	@Test
+	public void cachesLookups() {
+		AtomicInteger lookups = new AtomicInteger();
+		RoutingBackend counting = new InMemoryRoutingBackend() {
+			@Override
+			public Set<String> lookup(String amazonEchoId) {
+				lookups.incrementAndGet();
+				return super.lookup(amazonEchoId);
+			}
+		};
+		AtomicLong now = new AtomicLong();
+		ClusterNode node = new ClusterNode(true, "node", counting, channel, now::get);
+
+		// nobody holds the binding yet, that is asked again
+		assertNull(node.findNode("echo"));
+		counting.announce("echo", "other");
+		assertEquals("other", node.findNode("echo"));
+		assertEquals("other", node.findNode("echo"));
+		assertEquals(2, lookups.get());
+
+		now.addAndGet(ClusterNode.ROUTE_TTL);
+		assertEquals("other", node.findNode("echo"));
+		assertEquals(3, lookups.get());
+	}
+}
@@ -0,0 +1,59 @@
+package de.qaware.echo.devices;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class DeviceCatalogTest {
+
+	private final DeviceCatalog catalog = new DeviceCatalog(Arrays.asList("Lamp", "Kitchen Light", "Living Room Lamp 1",
+			"Living Room Lamp 2", "Coffee Machine"));
+
+	@Test
+	public void matchesNormalizedNames() {
+		assertMatch(DeviceMatch.Kind.EXACT, "Lamp", catalog.match("the lamp"));
+		assertMatch(DeviceMatch.Kind.EXACT, "Kitchen Light", catalog.match("kitchen-light"));
+		assertMatch(DeviceMatch.Kind.EXACT, "Living Room Lamp 2", catalog.match("my living room lamp 2"));
+	}
+
+	@Test
+	public void correctsMisheardNames() {
+		assertMatch(DeviceMatch.Kind.CORRECTED, "Lamp", catalog.match("lamb"));
+		assertMatch(DeviceMatch.Kind.CORRECTED, "Kitchen Light", catalog.match("kitchen lite"));
+		assertMatch(DeviceMatch.Kind.CORRECTED, "Coffee Machine", catalog.match("coffee machines"));
+	}
+
+	@Test
+	public void rejectsUnknownAndAmbiguousNames() {
+		assertEquals(DeviceMatch.Kind.UNKNOWN, catalog.match("garage door").getKind());
+		assertEquals(DeviceMatch.Kind.UNKNOWN, catalog.match("the").getKind());
+		assertEquals(DeviceMatch.Kind.AMBIGUOUS, catalog.match("living room lamp 3").getKind());
+		assertFalse(catalog.match("garage door").isSendable());
+	}
+
+	@Test
+	public void leavesHomesWithoutCatalogUnchecked() {
+		DeviceCatalogRegistry registry = new DeviceCatalogRegistry();
+		registry.update("echo", Arrays.asList("Lamp"));
+
+		assertMatch(DeviceMatch.Kind.UNCHECKED, "lamb", registry.match("other", "lamb"));
+		assertMatch(DeviceMatch.Kind.CORRECTED, "Lamp", registry.match("echo", "lamb"));
+		registry.remove("echo");
+		assertEquals(DeviceMatch.Kind.UNCHECKED, registry.match("echo", "lamb").getKind());
+	}
+
+	@Test
+	public void doesNotCorrectToADifferentDeviceThatSoundsAlike() {
+		DeviceCatalog bedroom = new DeviceCatalog(Arrays.asList("Bedroom Light"));
+
+		assertEquals(DeviceMatch.Kind.UNKNOWN, bedroom.match("bathroom light").getKind());
+		assertMatch(DeviceMatch.Kind.CORRECTED, "Bedroom Light", bedroom.match("bedroom lights"));
+	}
+
+	private static void assertMatch(DeviceMatch.Kind kind, String deviceName, DeviceMatch match) {
+		assertEquals(kind, match.getKind());
+		assertEquals(deviceName, match.getDeviceName());
+	}
+}
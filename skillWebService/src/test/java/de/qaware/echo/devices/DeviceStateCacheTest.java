@@ -0,0 +1,50 @@
+package de.qaware.echo.devices;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DeviceStateCacheTest {
+
+	private final DeviceStateCache cache = new DeviceStateCache(2);
+
+	@Test
+	public void mergesDeltasAndReplacesOnFullReport() {
+		cache.update("echo", false, Collections.singletonMap("Kitchen Light", "ON"));
+		cache.update("echo", false, Collections.singletonMap("Lamp", "OFF"));
+		assertEquals("ON", cache.getState("echo", "the kitchen light"));
+		assertEquals("OFF", cache.getState("echo", "Lamp"));
+
+		cache.update("echo", true, Collections.singletonMap("Lamp", "ON"));
+		assertNull(cache.getState("echo", "Kitchen Light"));
+		assertEquals("ON", cache.getState("echo", "Lamp"));
+		assertNull(cache.getState("other", "Lamp"));
+	}
+
+	@Test
+	public void forgetsStatesThatBecameUndefined() {
+		cache.update("echo", false, Collections.singletonMap("Lamp", "ON"));
+		cache.update("echo", false, Collections.singletonMap("Lamp", null));
+		assertNull(cache.getState("echo", "Lamp"));
+	}
+
+	@Test
+	public void limitsDevicesPerHome() {
+		Map<String, String> states = new HashMap<>();
+		states.put("Lamp", "ON");
+		states.put("Kitchen Light", "ON");
+		cache.update("echo", false, states);
+		cache.update("echo", false, Collections.singletonMap("Coffee Machine", "ON"));
+		cache.update("echo", false, Collections.singletonMap("Lamp", "OFF"));
+
+		assertNull(cache.getState("echo", "Coffee Machine"));
+		assertEquals("OFF", cache.getState("echo", "Lamp"));
+
+		cache.remove("echo");
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,182 @@
+package de.qaware.echo.speech;
+
+import com.amazon.speech.Sdk;
+import com.amazon.speech.speechlet.*;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.Assert.*;
+
+public class AsyncSpeechletServletTest {
+
+	private static final String INTENT_REQUEST = "{\"version\":\"1.0\",\"session\":{\"new\":false,\"sessionId\":\"s-1\"," +
+			"\"application\":{\"applicationId\":\"a-1\"},\"attributes\":{},\"user\":{\"userId\":\"u-1\"}}," +
+			"\"request\":{\"type\":\"IntentRequest\",\"requestId\":\"r-1\",\"timestamp\":\"2016-10-01T12:00:00Z\"," +
+			"\"intent\":{\"name\":\"TurnOnIntent\",\"slots\":{}}}}";
+
+	private final SpeechletWrapper wrapper = new SpeechletWrapper();
+
+	@BeforeClass
+	public static void disableSignatureCheck() {
+		System.setProperty(Sdk.DISABLE_REQUEST_SIGNATURE_CHECK_SYSTEM_PROPERTY, "true");
+	}
+
+	@AfterClass
+	public static void enableSignatureCheck() {
+		System.clearProperty(Sdk.DISABLE_REQUEST_SIGNATURE_CHECK_SYSTEM_PROPERTY);
+	}
+
+	@Test
+	public void answersWhenTheIntentCompletes() throws Exception {
+		CompletableFuture<SpeechletResponse> response = new CompletableFuture<>();
+		MockHttpServletRequest request = newRequest();
+		MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+		new AsyncSpeechletServlet(new TestSpeechlet(response), 7000).doPost(request, servletResponse);
+		assertTrue(request.isAsyncStarted());
+		assertEquals("", servletResponse.getContentAsString());
+
+		response.complete(wrapper.newTellResponse("Turned on lamp"));
+		assertEquals(200, servletResponse.getStatus());
+		assertTrue(servletResponse.getContentAsString().contains("Turned on lamp"));
+	}
+
+	@Test
+	public void answersWithTheDeadlineResponse() throws Exception {
+		CompletableFuture<SpeechletResponse> response = new CompletableFuture<>();
+		MockHttpServletRequest request = newRequest();
+		MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+		new AsyncSpeechletServlet(new TestSpeechlet(response), 7000).doPost(request, servletResponse);
+		MockAsyncContext context = (MockAsyncContext) request.getAsyncContext();
+		for (AsyncListener listener : context.getListeners()) {
+			listener.onTimeout(new AsyncEvent(context));
+		}
+		assertTrue(servletResponse.getContentAsString().contains("Too late"));
+
+		// a response after the deadline is dropped
+		response.complete(wrapper.newTellResponse("Turned on lamp"));
+		assertFalse(servletResponse.getContentAsString().contains("Turned on lamp"));
+	}
+
+	@Test
+	public void servesSynchronousSpeechlets() throws Exception {
+		MockHttpServletRequest request = newRequest();
+		MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+		Speechlet speechlet = new PlainSpeechlet(CompletableFuture.completedFuture(wrapper.newTellResponse("Sync")));
+
+		new AsyncSpeechletServlet(speechlet, 7000).doPost(request, servletResponse);
+		assertFalse(request.isAsyncStarted());
+		assertTrue(servletResponse.getContentAsString().contains("Sync"));
+	}
+
+	@Test
+	public void runsBlockingIntentsOnTheExecutor() throws Exception {
+		MockHttpServletRequest request = newRequest();
+		MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+		Speechlet speechlet = new PlainSpeechlet(CompletableFuture.completedFuture(wrapper.newTellResponse("Blocking")));
+		List<Runnable> tasks = new ArrayList<>();
+
+		new AsyncSpeechletServlet(speechlet, 7000, tasks::add).doPost(request, servletResponse);
+		assertTrue(request.isAsyncStarted());
+		assertEquals(1, tasks.size());
+
+		tasks.get(0).run();
+		assertTrue(servletResponse.getContentAsString().contains("Blocking"));
+	}
+
+	@Test
+	public void answersRetriesWithTheFirstResponse() throws Exception {
+		CompletableFuture<SpeechletResponse> response = new CompletableFuture<>();
+		TestSpeechlet speechlet = new TestSpeechlet(response);
+		AsyncSpeechletServlet servlet = new AsyncSpeechletServlet(speechlet, 7000);
+		servlet.setDeduplicator(new RequestDeduplicator(60000, 16));
+		servlet.setReplayCache(new ReplayCache(150000, 16));
+		MockHttpServletRequest request = newRequest();
+		MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+		MockHttpServletRequest retry = newRequest();
+		MockHttpServletResponse retryResponse = new MockHttpServletResponse();
+
+		servlet.doPost(request, servletResponse);
+		servlet.doPost(retry, retryResponse);
+		assertEquals(1, speechlet.intents);
+
+		response.complete(wrapper.newTellResponse("Turned on lamp"));
+		assertTrue(servletResponse.getContentAsString().contains("Turned on lamp"));
+		assertTrue(retryResponse.getContentAsString().contains("Turned on lamp"));
+	}
+
+	@Test
+	public void rejectsMalformedRequests() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/qivicon");
+		request.setContent("{".getBytes(StandardCharsets.UTF_8));
+		MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+		new AsyncSpeechletServlet(new TestSpeechlet(new CompletableFuture<>()), 7000).doPost(request, servletResponse);
+		assertEquals(500, servletResponse.getStatus());
+	}
+
+	private static MockHttpServletRequest newRequest() {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/qivicon");
+		request.setAsyncSupported(true);
+		request.setContent(INTENT_REQUEST.getBytes(StandardCharsets.UTF_8));
+		return request;
+	}
+
+	private class TestSpeechlet extends PlainSpeechlet implements AsyncSpeechlet {
+		private int intents;
+
+		TestSpeechlet(CompletableFuture<SpeechletResponse> response) {
+			super(response);
+		}
+
+		@Override
+		public CompletionStage<SpeechletResponse> onIntentAsync(IntentRequest request, Session session) {
+			intents++;
+			return response;
+		}
+
+		@Override
+		public SpeechletResponse onDeadline(IntentRequest request, Session session) {
+			return wrapper.newTellResponse("Too late");
+		}
+	}
+
+	private static class PlainSpeechlet implements Speechlet {
+		protected final CompletableFuture<SpeechletResponse> response;
+
+		PlainSpeechlet(CompletableFuture<SpeechletResponse> response) {
+			this.response = response;
+		}
+
+		@Override
+		public SpeechletResponse onIntent(IntentRequest request, Session session) {
+			return response.join();
+		}
+
+		@Override
+		public void onSessionStarted(SessionStartedRequest request, Session session) {
+		}
+
+		@Override
+		public SpeechletResponse onLaunch(LaunchRequest request, Session session) {
+			return null;
+		}
+
+		@Override
+		public void onSessionEnded(SessionEndedRequest request, Session session) {
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package de.qaware.echo.speech;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class CachedSignatureVerifierTest {
+
+	private static final String CHAIN_URL = "https://s3.amazonaws.com/echo.api/echo-api-cert-4.pem";
+	private static final byte[] BODY = "{\"version\":\"1.0\"}".getBytes(StandardCharsets.UTF_8);
+
+	private final AtomicInteger loads = new AtomicInteger();
+	private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+	private CachedSignatureVerifier verifier;
+
+	@Before
+	public void setUp() throws Exception {
+		verifier = new CachedSignatureVerifier(60000, url -> {
+			loads.incrementAndGet();
+			return getClass().getResourceAsStream("/certs/echo-api-cert.pem");
+		}, testTrustManager(), now::get);
+	}
+
+	@Test
+	public void loadsTheChainOncePerMaxAge() throws Exception {
+		String signature = sign(BODY);
+		verifier.checkRequestSignature(BODY, signature, CHAIN_URL);
+		verifier.checkRequestSignature(BODY, signature, CHAIN_URL);
+		assertEquals(1, loads.get());
+
+		now.addAndGet(60001);
+		verifier.checkRequestSignature(BODY, signature, CHAIN_URL);
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void sharesTheChainBetweenSpellingsOfTheUrl() throws Exception {
+		String signature = sign(BODY);
+		verifier.checkRequestSignature(BODY, signature, CHAIN_URL);
+		verifier.checkRequestSignature(BODY, signature, "HTTPS://S3.amazonaws.com:443/echo.api/../echo.api/echo-api-cert-4.pem");
+		assertEquals(1, loads.get());
+	}
+
+	@Test(expected = SecurityException.class)
+	public void rejectsChangedBodies() throws Exception {
+		verifier.checkRequestSignature("{\"version\":\"2.0\"}".getBytes(StandardCharsets.UTF_8), sign(BODY), CHAIN_URL);
+	}
+
+	@Test
+	public void rejectsChainsFromElsewhere() throws Exception {
+		String signature = sign(BODY);
+		for (String url : new String[] { "https://example.com/echo.api/cert.pem", "http://s3.amazonaws.com/echo.api/cert.pem",
+				"https://s3.amazonaws.com/other/cert.pem", "https://s3.amazonaws.com:8443/echo.api/cert.pem",
+				CHAIN_URL + "?1", CHAIN_URL + "#1" }) {
+			try {
+				verifier.checkRequestSignature(BODY, signature, url);
+				fail(url);
+			} catch (SecurityException e) {
+				// expected
+			}
+		}
+		assertEquals(0, loads.get());
+	}
+
+	private static String sign(byte[] body) throws Exception {
+		byte[] key = Files.readAllBytes(Paths.get(CachedSignatureVerifierTest.class.getResource("/certs/echo-api-key.der").toURI()));
+		PrivateKey privateKey = KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(key));
+		Signature signature = Signature.getInstance("SHA1withRSA");
+		signature.initSign(privateKey);
+		signature.update(body);
+		return Base64.encodeBase64String(signature.sign());
+	}
+
+	private static X509TrustManager testTrustManager() throws Exception {
+		KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+		trustStore.load(null, null);
+		try (InputStream in = CachedSignatureVerifierTest.class.getResourceAsStream("/certs/test-ca.pem")) {
+			trustStore.setCertificateEntry("test-ca", CertificateFactory.getInstance("X.509").generateCertificate(in));
+		}
+		TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		factory.init(trustStore);
+		return (X509TrustManager) factory.getTrustManagers()[0];
+	}
+}
@@ -0,0 +1,37 @@
+package de.qaware.echo.speech;
+
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ReplayCacheTest {
+
+	private final AtomicLong now = new AtomicLong(1000);
+	private final ReplayCache cache = new ReplayCache(150000, 2, now::get);
+
+	@Test
+	public void rejectsRequestsSeenWithinTheWindow() {
+		Date timestamp = new Date(1000);
+		assertTrue(cache.markSeen("r-1", timestamp));
+		assertFalse(cache.markSeen("r-1", timestamp));
+		assertTrue(cache.markSeen("r-1", new Date(2000)));
+
+		now.addAndGet(150001);
+		assertTrue(cache.markSeen("r-1", timestamp));
+	}
+
+	@Test
+	public void forgetsTheOldestWhenFull() {
+		Date timestamp = new Date(1000);
+		cache.markSeen("r-1", timestamp);
+		cache.markSeen("r-2", timestamp);
+		cache.markSeen("r-3", timestamp);
+
+		assertEquals(2, cache.size());
+		assertTrue(cache.markSeen("r-1", timestamp));
+		assertFalse(cache.markSeen("r-3", timestamp));
+	}
+}
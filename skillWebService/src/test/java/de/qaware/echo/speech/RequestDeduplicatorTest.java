@@ -0,0 +1,44 @@
+package de.qaware.echo.speech;
+
+import com.amazon.speech.speechlet.SpeechletResponse;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RequestDeduplicatorTest {
+
+	private final AtomicLong now = new AtomicLong(1000);
+	private final RequestDeduplicator deduplicator = new RequestDeduplicator(60000, 2, now::get);
+
+	@Test
+	public void answersRetriesWithTheFirstResponse() {
+		CompletableFuture<SpeechletResponse> first = new CompletableFuture<>();
+		assertNull(deduplicator.register("r-1", first));
+		assertSame(first, deduplicator.register("r-1", new CompletableFuture<>()));
+
+		now.addAndGet(60001);
+		assertNull(deduplicator.register("r-1", new CompletableFuture<>()));
+	}
+
+	@Test
+	public void forgetsFailedRequests() {
+		CompletableFuture<SpeechletResponse> first = new CompletableFuture<>();
+		deduplicator.register("r-1", first);
+		first.completeExceptionally(new IllegalStateException());
+
+		assertNull(deduplicator.register("r-1", new CompletableFuture<>()));
+	}
+
+	@Test
+	public void forgetsTheOldestWhenFull() {
+		deduplicator.register("r-1", new CompletableFuture<>());
+		deduplicator.register("r-2", new CompletableFuture<>());
+		deduplicator.register("r-3", new CompletableFuture<>());
+
+		assertEquals(2, deduplicator.size());
+		assertNull(deduplicator.register("r-1", new CompletableFuture<>()));
+	}
+}
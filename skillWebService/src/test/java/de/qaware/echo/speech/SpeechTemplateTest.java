@@ -0,0 +1,34 @@
+package de.qaware.echo.speech;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SpeechTemplateTest {
+
+	@Test
+	public void fillsPlaceholdersInOrderOfFirstAppearance() {
+		SpeechTemplate template = SpeechTemplate.compile("Changed {device} to {color}, {device} is {color} now.");
+		assertEquals(2, template.getSlotCount());
+		assertEquals("Changed lamp to red, lamp is red now.", template.render("lamp", "red"));
+		assertEquals("Changed  to red,  is red now.", template.render(null, "red"));
+	}
+
+	@Test
+	public void keepsStaticTextAsItIs() {
+		SpeechTemplate template = SpeechTemplate.compile("Goodbye");
+		assertEquals(0, template.getSlotCount());
+		assertSame(template.render(), template.render());
+		assertEquals("{lamp} is on", SpeechTemplate.compile("{device} is on").render("{lamp}"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsMissingValues() {
+		SpeechTemplate.compile("Turned on {device}").render();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnclosedPlaceholders() {
+		SpeechTemplate.compile("Turned on {device");
+	}
+}
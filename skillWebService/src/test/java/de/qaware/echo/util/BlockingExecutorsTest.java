@@ -0,0 +1,33 @@
+package de.qaware.echo.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BlockingExecutorsTest {
+
+	@Test
+	public void runsTasksOnNamedDaemonThreads() throws Exception {
+		ExecutorService executor = BlockingExecutors.newExecutor("Test", false, 2);
+		try {
+			Thread thread = executor.submit(Thread::currentThread).get(1, TimeUnit.SECONDS);
+			assertTrue(thread.getName().startsWith("Test-"));
+			assertTrue(thread.isDaemon());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void fallsBackWithoutVirtualThreads() throws Exception {
+		ExecutorService executor = BlockingExecutors.newExecutor("Test", true, 2);
+		try {
+			assertEquals("done", executor.submit(() -> "done").get(1, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package de.qaware.echo.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ColorTypeTest {
+
+	@Test
+	public void knowsEverySlotValue() throws Exception {
+		List<String> slotValues = Files.readAllLines(Paths.get("docs/speechAssets/customSlotTypes/LIST_OF_COLORS.txt"),
+				StandardCharsets.UTF_8);
+		for (String slotValue : slotValues) {
+			if (!slotValue.trim().isEmpty()) {
+				assertNotEquals(slotValue, ColorType.UNKOWN, ColorType.getColorType(slotValue));
+			}
+		}
+		assertEquals(ColorType.values().length - 1, slotValues.stream().filter(value -> !value.trim().isEmpty()).count());
+	}
+
+	@Test
+	public void ignoresCaseHyphensAndWhitespace() {
+		assertEquals(ColorType.ORANGE_RED, ColorType.getColorType("orange-red"));
+		assertEquals(ColorType.ORANGE_RED, ColorType.getColorType(" Orange  RED "));
+		assertEquals(ColorType.NAVY_BLUE, ColorType.getColorType("navy_blue"));
+		assertEquals(ColorType.RED, ColorType.getColorType("Red"));
+		assertEquals(ColorType.UNKOWN, ColorType.getColorType("orangered"));
+		assertEquals(ColorType.UNKOWN, ColorType.getColorType("orange red violet"));
+		assertEquals(ColorType.UNKOWN, ColorType.getColorType(""));
+		assertEquals(ColorType.UNKOWN, ColorType.getColorType(null));
+	}
+
+	@Test
+	public void precomputesHsb() {
+		assertEquals(0, ColorType.RED.getHue(), 0.001);
+		assertEquals(100, ColorType.RED.getSaturation(), 0.001);
+		assertEquals(100, ColorType.RED.getBrightness(), 0.001);
+		assertEquals(240, ColorType.NAVY_BLUE.getHue(), 0.001);
+		assertEquals(50.196, ColorType.NAVY_BLUE.getBrightness(), 0.001);
+		assertEquals(0, ColorType.WHITE.getSaturation(), 0.001);
+		assertEquals(330, ColorType.ROSE.getHue(), 0.5);
+	}
+}
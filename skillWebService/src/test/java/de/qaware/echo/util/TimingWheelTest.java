@@ -0,0 +1,58 @@
+package de.qaware.echo.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+	private final TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+	private final List<String> expired = new ArrayList<>();
+
+	@Test
+	public void expiresEntriesInTheirTick() {
+		wheel.schedule("early", 25);
+		wheel.schedule("late", 45);
+
+		wheel.advance(19, expired::add);
+		assertTrue(expired.isEmpty());
+		wheel.advance(29, expired::add);
+		assertEquals(Collections.singletonList("early"), expired);
+		wheel.advance(49, expired::add);
+		assertEquals(Arrays.asList("early", "late"), expired);
+	}
+
+	@Test
+	public void keepsEntriesOfLaterRounds() {
+		wheel.schedule("next round", 105);
+
+		wheel.advance(89, expired::add);
+		assertTrue(expired.isEmpty());
+		wheel.advance(109, expired::add);
+		assertEquals(Collections.singletonList("next round"), expired);
+	}
+
+	@Test
+	public void catchesUpAfterALongPause() {
+		wheel.schedule("a", 15);
+		wheel.schedule("b", 75);
+		wheel.schedule("c", 500);
+
+		wheel.advance(1000, expired::add);
+		assertEquals(3, expired.size());
+	}
+
+	@Test
+	public void dropsCancelledEntries() {
+		wheel.schedule("kept", 15);
+		wheel.schedule("cancelled", 15).cancel();
+
+		wheel.advance(20, expired::add);
+		assertEquals(Collections.singletonList("kept"), expired);
+	}
+}
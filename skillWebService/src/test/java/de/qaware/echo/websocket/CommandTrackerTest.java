@@ -0,0 +1,65 @@
+package de.qaware.echo.websocket;
+
+import de.qaware.echo.websocket.protocol.AckMessage;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class CommandTrackerTest {
+
+	private final CommandTracker tracker = new CommandTracker(1000);
+
+	@After
+	public void tearDown() {
+		tracker.shutdown();
+	}
+
+	@Test
+	public void completesWithTheAcknowledgement() throws Exception {
+		CompletableFuture<AckMessage> ack = tracker.expect("echo", "1", 1000);
+		AckMessage message = new AckMessage("1", true, null);
+		tracker.acknowledge("echo", message);
+
+		assertSame(message, ack.get(1, TimeUnit.SECONDS));
+		assertEquals(1, tracker.getLatencies().get("echo").getCount());
+	}
+
+	@Test
+	public void ignoresAcknowledgementsFromAnotherEchoId() {
+		CompletableFuture<AckMessage> ack = tracker.expect("echo", "1", 1000);
+		tracker.acknowledge("other", new AckMessage("1", true, null));
+
+		assertFalse(ack.isDone());
+	}
+
+	@Test
+	public void failsWithATimeoutIfNotAcknowledged() throws Exception {
+		CompletableFuture<AckMessage> ack = tracker.expect("echo", "1", 10);
+		try {
+			ack.get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+
+		// a late acknowledgement changes nothing
+		tracker.acknowledge("echo", new AckMessage("1", true, null));
+		assertNull(tracker.getLatencies().get("echo"));
+	}
+
+	@Test
+	public void dropsAcknowledgementsOfForgottenCommands() {
+		CompletableFuture<AckMessage> ack = tracker.expect("echo", "1", 1000);
+		tracker.forget("1");
+		tracker.acknowledge("echo", new AckMessage("1", true, null));
+
+		assertFalse(ack.isDone());
+		assertNull(tracker.getLatencies().get("echo"));
+	}
+}
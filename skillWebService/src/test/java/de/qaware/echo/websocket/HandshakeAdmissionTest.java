@@ -0,0 +1,76 @@
+package de.qaware.echo.websocket;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class HandshakeAdmissionTest {
+
+	private final AtomicLong now = new AtomicLong(1000);
+	private final HandshakeAdmission admission = new HandshakeAdmission(2, 0, 0, 10000, 5000, now::get);
+
+	@Test
+	public void turnsAwayBindingsOverTheLimit() throws Exception {
+		HandshakeAdmission.Ticket first = admission.admit();
+		HandshakeAdmission.Ticket second = admission.admit();
+		assertNotNull(first);
+		assertNotNull(second);
+		assertNull(admission.admit());
+
+		first.release();
+		first.release();
+		assertEquals(1, admission.getAdmittedCount());
+		assertNotNull(admission.admit());
+		assertNull(admission.admit());
+	}
+
+	@Test
+	public void givesBackAdmissionsOfBindingsThatDoNotRegister() throws Exception {
+		admission.admit();
+		admission.admit();
+
+		now.addAndGet(10001);
+		assertNotNull(admission.admit());
+		assertEquals(1, admission.getAdmittedCount());
+	}
+
+	@Test
+	public void letsQueuedHandshakesInOnceAnAdmissionIsReleased() throws Exception {
+		HandshakeAdmission queued = new HandshakeAdmission(1, 1, 5000, 10000, 5000, now::get);
+		HandshakeAdmission.Ticket first = queued.admit();
+
+		Thread releaser = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			first.release();
+		});
+		releaser.start();
+		assertNotNull(queued.admit());
+		releaser.join();
+	}
+
+	@Test
+	public void letsQueuedHandshakesInOnceAnAdmissionExpires() throws Exception {
+		HandshakeAdmission queued = new HandshakeAdmission(1, 1, 5000, 100, 5000, now::get);
+		queued.admit();
+
+		// the binding never registers, only the time passes
+		Thread clock = new Thread(() -> {
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			now.addAndGet(101);
+		});
+		clock.start();
+		assertNotNull(queued.admit());
+		assertEquals(1, queued.getAdmittedCount());
+		clock.join();
+	}
+}
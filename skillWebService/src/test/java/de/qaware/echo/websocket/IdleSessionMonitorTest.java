@@ -0,0 +1,91 @@
+package de.qaware.echo.websocket;
+
+import org.junit.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IdleSessionMonitorTest {
+
+	private final AtomicLong now = new AtomicLong(1000);
+	private final List<String> pinged = new ArrayList<>();
+	private final List<String> evicted = new ArrayList<>();
+	private final IdleSessionMonitor monitor = new IdleSessionMonitor(3200, 2, new IdleSessionMonitor.Listener() {
+		@Override
+		public void ping(WebSocketSession session) {
+			pinged.add(session.getId());
+		}
+
+		@Override
+		public void evict(WebSocketSession session) {
+			evicted.add(session.getId());
+		}
+	}, now::get);
+
+	@Test
+	public void pingsIdleSessionsAndEvictsThoseThatDoNotAnswer() {
+		monitor.add(session("1"));
+
+		advance(3100);
+		assertTrue(pinged.isEmpty());
+		advance(200);
+		assertEquals(1, pinged.size());
+		advance(3200);
+		assertEquals(2, pinged.size());
+		assertTrue(evicted.isEmpty());
+		advance(3200);
+		assertEquals(1, evicted.size());
+		assertEquals(0, monitor.size());
+	}
+
+	@Test
+	public void keepsActiveSessions() {
+		monitor.add(session("1"));
+
+		for (int i = 0; i < 20; i++) {
+			advance(1000);
+			monitor.touch("1");
+		}
+		assertTrue(pinged.isEmpty());
+
+		// a pong after the ping counts as activity as well
+		advance(3300);
+		assertEquals(1, pinged.size());
+		monitor.touch("1");
+		advance(6000);
+		assertEquals(2, pinged.size());
+		assertTrue(evicted.isEmpty());
+	}
+
+	@Test
+	public void forgetsRemovedSessions() {
+		monitor.add(session("1"));
+		monitor.remove("1");
+
+		advance(20000);
+		assertTrue(pinged.isEmpty());
+		assertTrue(evicted.isEmpty());
+	}
+
+	/**
+	 * To let time pass tick by tick.
+	 */
+	private void advance(long millis) {
+		for (long end = now.get() + millis; now.get() < end; ) {
+			now.set(Math.min(now.get() + 100, end));
+			monitor.tick();
+		}
+	}
+
+	private static WebSocketSession session(String id) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		return session;
+	}
+}
@@ -0,0 +1,49 @@
+package de.qaware.echo.websocket;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class MessageAssemblerTest {
+
+	private final MessageAssembler assembler = new MessageAssembler(8);
+
+	@Test
+	public void passesWholeMessagesOn() throws Exception {
+		ByteBuffer bytes = ByteBuffer.wrap(new byte[] { 1, 2 });
+
+		assertEquals("{}", assembler.appendText("1", "{}", true));
+		assertSame(bytes, assembler.appendBinary("1", bytes, true));
+	}
+
+	@Test
+	public void joinsParts() throws Exception {
+		assertNull(assembler.appendText("1", "{\"a\"", false));
+		assertNull(assembler.appendText("2", "[", false));
+		assertEquals("{\"a\":1}", assembler.appendText("1", ":1}", true));
+		assertEquals("[]", assembler.appendText("2", "]", true));
+
+		assertNull(assembler.appendBinary("1", ByteBuffer.wrap(new byte[] { 1 }), false));
+		assertNull(assembler.appendBinary("1", ByteBuffer.wrap(new byte[] { 2, 3 }), false));
+		ByteBuffer joined = assembler.appendBinary("1", ByteBuffer.wrap(new byte[] { 4, 5, 6 }), true);
+		byte[] bytes = new byte[joined.remaining()];
+		joined.get(bytes);
+		assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6 }, bytes);
+	}
+
+	@Test
+	public void rejectsTooLargeMessages() throws Exception {
+		assertNull(assembler.appendText("1", "12345", false));
+		try {
+			assembler.appendText("1", "6789", true);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		// the parts are dropped, the next message starts over
+		assertEquals("next", assembler.appendText("1", "next", true));
+	}
+}
@@ -0,0 +1,197 @@
+package de.qaware.echo.websocket;
+
+import de.qaware.echo.websocket.protocol.BatchMessage;
+import de.qaware.echo.websocket.protocol.BinaryCodec;
+import de.qaware.echo.websocket.protocol.OffMessage;
+import de.qaware.echo.websocket.protocol.OnMessage;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class OutboundSenderTest {
+
+	private final OutboundSender sender = new OutboundSender(1, 5000, 65536, 64, 32);
+
+	@After
+	public void shutdown() {
+		sender.shutdown();
+	}
+
+	@Test
+	public void sendsALoneCommandRightAway() throws Exception {
+		WebSocketSession session = session();
+		sender.enableBatching(session);
+
+		assertTrue(sender.sendCommand(session, new TextMessage("{\"type\":\"ON\"}")).get(1, TimeUnit.SECONDS));
+		verify(session).sendMessage(new TextMessage("{\"type\":\"ON\"}"));
+	}
+
+	@Test
+	public void batchesCommandsQueuedWhileSending() throws Exception {
+		WebSocketSession session = session();
+		sender.enableBatching(session);
+		CountDownLatch sending = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			sending.countDown();
+			proceed.await();
+			return null;
+		}).doNothing().when(session).sendMessage(any(TextMessage.class));
+
+		CompletableFuture<Boolean> first = sender.sendCommand(session, new TextMessage("{\"type\":\"ON\"}"));
+		sending.await();
+		CompletableFuture<Boolean> second = sender.sendCommand(session, new TextMessage("{\"type\":\"OFF\"}"));
+		CompletableFuture<Boolean> third = sender.sendCommand(session, new TextMessage("{\"type\":\"ON\"}"));
+		proceed.countDown();
+
+		assertTrue(first.get());
+		assertTrue(second.get());
+		assertTrue(third.get());
+		ArgumentCaptor<TextMessage> frames = ArgumentCaptor.forClass(TextMessage.class);
+		verify(session, times(2)).sendMessage(frames.capture());
+		assertEquals("{\"type\":\"BATCH\",\"commands\":[{\"type\":\"OFF\"},{\"type\":\"ON\"}]}",
+				frames.getAllValues().get(1).getPayload());
+	}
+
+	@Test
+	public void batchesBinaryCommands() throws Exception {
+		WebSocketSession session = session();
+		sender.enableBatching(session);
+		CountDownLatch sending = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			sending.countDown();
+			proceed.await();
+			return null;
+		}).doNothing().when(session).sendMessage(any(BinaryMessage.class));
+
+		sender.sendCommand(session, new BinaryMessage(BinaryCodec.encode(new OnMessage("x"))));
+		sending.await();
+		CompletableFuture<Boolean> first = sender.sendCommand(session, new BinaryMessage(BinaryCodec.encode(new OnMessage("a"))));
+		CompletableFuture<Boolean> second = sender.sendCommand(session, new BinaryMessage(BinaryCodec.encode(new OffMessage("b"))));
+		proceed.countDown();
+
+		assertTrue(first.get());
+		assertTrue(second.get());
+		ArgumentCaptor<BinaryMessage> frames = ArgumentCaptor.forClass(BinaryMessage.class);
+		verify(session, times(2)).sendMessage(frames.capture());
+		BatchMessage batch = (BatchMessage) BinaryCodec.decode(frames.getAllValues().get(1).getPayload());
+		assertEquals("a", ((OnMessage) batch.getCommands().get(0)).getThing());
+		assertEquals("b", ((OffMessage) batch.getCommands().get(1)).getThing());
+	}
+
+	@Test
+	public void sendsCommandsOneByOneWithoutBatchSupport() throws Exception {
+		WebSocketSession session = session();
+
+		CompletableFuture<Boolean> first = sender.sendCommand(session, new TextMessage("{\"type\":\"ON\"}"));
+		CompletableFuture<Boolean> second = sender.sendCommand(session, new TextMessage("{\"type\":\"OFF\"}"));
+
+		assertTrue(first.get());
+		assertTrue(second.get());
+		verify(session, times(2)).sendMessage(any(TextMessage.class));
+	}
+
+	@Test
+	public void failsAllCommandsOfAFailedBatch() throws Exception {
+		WebSocketSession session = session();
+		sender.enableBatching(session);
+		CountDownLatch sending = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			sending.countDown();
+			proceed.await();
+			return null;
+		}).doThrow(new IOException("closed")).when(session).sendMessage(any(TextMessage.class));
+
+		sender.sendCommand(session, new TextMessage("{\"type\":\"ON\"}"));
+		sending.await();
+		CompletableFuture<Boolean> first = sender.sendCommand(session, new TextMessage("{\"type\":\"OFF\"}"));
+		CompletableFuture<Boolean> second = sender.sendCommand(session, new TextMessage("{\"type\":\"ON\"}"));
+		proceed.countDown();
+
+		assertFalse(first.get());
+		assertFalse(second.get());
+		verify(session, times(2)).sendMessage(any(TextMessage.class));
+	}
+
+	@Test
+	public void failsCommandsQueuedBehindADrainWhenRemoved() throws Exception {
+		WebSocketSession session = session();
+		sender.enableBatching(session);
+		CountDownLatch sending = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			sending.countDown();
+			proceed.await();
+			return null;
+		}).when(session).sendMessage(any(TextMessage.class));
+
+		CompletableFuture<Boolean> first = sender.sendCommand(session, new TextMessage("{\"type\":\"ON\"}"));
+		sending.await();
+		CompletableFuture<Boolean> second = sender.sendCommand(session, new TextMessage("{\"type\":\"OFF\"}"));
+		CompletableFuture<Boolean> third = sender.sendCommand(session, new TextMessage("{\"type\":\"ON\"}"));
+		sender.remove(session);
+		proceed.countDown();
+
+		assertTrue(first.get(1, TimeUnit.SECONDS));
+		assertFalse(second.get(1, TimeUnit.SECONDS));
+		assertFalse(third.get(1, TimeUnit.SECONDS));
+		verify(session, times(1)).sendMessage(any(TextMessage.class));
+
+		// the writer is free again for a new outbox of the session
+		assertTrue(sender.sendCommand(session, new TextMessage("{\"type\":\"ON\"}")).get(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void closesSessionsStuckInASend() throws Exception {
+		OutboundSender sender = new OutboundSender(1, 50, 65536, 64, 1);
+		try {
+			WebSocketSession session = session();
+			CountDownLatch closed = new CountDownLatch(1);
+			doAnswer(invocation -> {
+				closed.await();
+				throw new IOException("closed");
+			}).when(session).sendMessage(any(TextMessage.class));
+			doAnswer(invocation -> {
+				closed.countDown();
+				return null;
+			}).when(session).close(any(CloseStatus.class));
+
+			CompletableFuture<Boolean> result = sender.send(session, new TextMessage("{\"type\":\"ON\"}"));
+
+			verify(session, timeout(1000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+			assertFalse(result.get());
+		} finally {
+			sender.shutdown();
+		}
+	}
+
+	@Test
+	public void sendsNothingToClosedSessions() throws Exception {
+		WebSocketSession session = session();
+		when(session.isOpen()).thenReturn(false);
+
+		assertFalse(sender.sendCommand(session, new TextMessage("{\"type\":\"ON\"}")).get());
+		verify(session, never()).sendMessage(any(TextMessage.class));
+	}
+
+	private static WebSocketSession session() {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn("1");
+		when(session.isOpen()).thenReturn(true);
+		return session;
+	}
+}
@@ -0,0 +1,141 @@
+package de.qaware.echo.websocket;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PendingCommandStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void recoversStoredCommandsInOrder() throws Exception {
+		Path journal = folder.getRoot().toPath().resolve("commands.journal");
+		PendingCommandStore store = new PendingCommandStore(true, 60000, 16, journal, 4096);
+		store.offer("echo", "first");
+		store.offer("other", "unrelated");
+		store.offer("echo", "second");
+		store.close();
+
+		PendingCommandStore recovered = new PendingCommandStore(true, 60000, 16, journal, 4096);
+		assertEquals(Arrays.asList("first", "second"), send(recovered, "echo"));
+		recovered.close();
+
+		PendingCommandStore drained = new PendingCommandStore(true, 60000, 16, journal, 4096);
+		assertTrue(drained.drain("echo").isEmpty());
+		assertEquals(Arrays.asList("unrelated"), send(drained, "other"));
+	}
+
+	@Test
+	public void compactsFullJournal() throws Exception {
+		Path journal = folder.getRoot().toPath().resolve("commands.journal");
+		PendingCommandStore store = new PendingCommandStore(true, 60000, 4, journal, 256);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(store.offer("echo", "command-" + i));
+		}
+		store.close();
+
+		PendingCommandStore recovered = new PendingCommandStore(true, 60000, 4, journal, 256);
+		assertEquals(Arrays.asList("command-96", "command-97", "command-98", "command-99"), send(recovered, "echo"));
+	}
+
+	@Test
+	public void dropsExpiredCommands() throws Exception {
+		PendingCommandStore store = new PendingCommandStore(true, 0, 16, null, 0);
+		store.offer("echo", "expired");
+
+		assertTrue(store.drain("echo").isEmpty());
+		assertEquals(1, store.getExpiredCount());
+	}
+
+	@Test
+	public void dropsCommandsThatExpiredWhileSending() throws Exception {
+		PendingCommandStore store = new PendingCommandStore(true, 20, 16, null, 0);
+		store.offer("echo", "late");
+
+		List<StoredCommand> drained = store.drain("echo");
+		Thread.sleep(40);
+		store.restore(drained.get(0));
+
+		assertTrue(store.drain("echo").isEmpty());
+		assertEquals(1, store.getExpiredCount());
+	}
+
+	@Test
+	public void keepsCommandsThatCouldNotBeSent() throws Exception {
+		Path journal = folder.getRoot().toPath().resolve("commands.journal");
+		PendingCommandStore store = new PendingCommandStore(true, 60000, 16, journal, 4096);
+		store.offer("echo", "first");
+		store.offer("echo", "second");
+
+		List<StoredCommand> drained = store.drain("echo");
+		store.offer("echo", "third");
+		store.restore(drained.get(1));
+		store.restore(drained.get(0));
+		store.close();
+
+		PendingCommandStore recovered = new PendingCommandStore(true, 60000, 16, journal, 4096);
+		assertEquals(Arrays.asList("first", "second", "third"), send(store, "echo"));
+		assertEquals(Arrays.asList("first", "second", "third"), send(recovered, "echo"));
+	}
+
+	@Test
+	public void keepsDrainedCommandsInTheJournalUntilSent() throws Exception {
+		Path journal = folder.getRoot().toPath().resolve("commands.journal");
+		PendingCommandStore store = new PendingCommandStore(true, 60000, 16, journal, 4096);
+		store.offer("echo", "first");
+		store.drain("echo");
+		store.close();
+
+		PendingCommandStore recovered = new PendingCommandStore(true, 60000, 16, journal, 4096);
+		assertEquals(Arrays.asList("first"), send(recovered, "echo"));
+	}
+
+	@Test
+	public void dropsTheJournalFromACorruptRecordOn() throws Exception {
+		for (int length : new int[] { -1, Integer.MAX_VALUE }) {
+			Path journal = folder.newFile().toPath();
+			PendingCommandStore store = new PendingCommandStore(true, 60000, 16, journal, 4096);
+			store.offer("echo", "first");
+			store.offer("echo", "second");
+			store.close();
+
+			// the Echo ID length of the second record, behind the 34 bytes of the first one
+			try (RandomAccessFile file = new RandomAccessFile(journal.toFile(), "rw")) {
+				file.seek(34 + 1 + 8 + 8);
+				file.writeInt(length);
+			}
+
+			PendingCommandStore recovered = new PendingCommandStore(true, 60000, 16, journal, 4096);
+			recovered.offer("echo", "third");
+			recovered.close();
+			assertEquals(Arrays.asList("first", "third"),
+					send(new PendingCommandStore(true, 60000, 16, journal, 4096), "echo"));
+		}
+	}
+
+	@Test
+	public void storesNothingWhenDisabled() throws Exception {
+		PendingCommandStore store = new PendingCommandStore(false, 60000, 16, null, 0);
+
+		assertFalse(store.offer("echo", "command"));
+	}
+
+	private static List<String> send(PendingCommandStore store, String amazonEchoId) {
+		List<String> sent = new ArrayList<>();
+		for (StoredCommand command : store.drain(amazonEchoId)) {
+			sent.add(command.getJson());
+			store.forget(command);
+		}
+		return sent;
+	}
+}
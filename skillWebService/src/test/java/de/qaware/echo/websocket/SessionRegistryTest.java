@@ -0,0 +1,76 @@
+package de.qaware.echo.websocket;
+
+import org.junit.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SessionRegistryTest {
+
+	private final SessionRegistry registry = new SessionRegistry();
+
+	@Test
+	public void fansOutToAllBindingsOfAnEchoId() {
+		WebSocketSession first = session("1");
+		WebSocketSession second = session("2");
+		registry.add(first);
+		registry.add(second);
+		registry.register("echo", first);
+		registry.register("echo", second);
+
+		assertEquals(2, registry.getSessions("echo").size());
+
+		registry.remove(first);
+		assertEquals(1, registry.getSessions("echo").size());
+		assertTrue(registry.getSessions("echo").contains(second));
+	}
+
+	@Test
+	public void movesSessionToNewEchoId() {
+		WebSocketSession session = session("1");
+		registry.add(session);
+		registry.register("old", session);
+		registry.register("new", session);
+
+		assertTrue(registry.getSessions("old").isEmpty());
+		assertEquals("new", registry.getEchoId("1"));
+		assertEquals(1, registry.echoIdCount());
+	}
+
+	@Test
+	public void ignoresRegistrationOfClosedSession() {
+		WebSocketSession session = session("1");
+		registry.register("echo", session);
+
+		assertTrue(registry.getSessions("echo").isEmpty());
+		assertNull(registry.getEchoId("1"));
+	}
+
+	@Test
+	public void churnLeavesNoEntriesBehind() {
+		List<WebSocketSession> sessions = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			WebSocketSession session = session(Integer.toString(i));
+			sessions.add(session);
+			registry.add(session);
+			registry.register("echo-" + (i % 1000), session);
+		}
+		for (WebSocketSession session : sessions) {
+			registry.remove(session);
+		}
+
+		assertEquals(0, registry.sessionCount());
+		assertEquals(0, registry.echoIdCount());
+	}
+
+	private static WebSocketSession session(String id) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		return session;
+	}
+}
@@ -0,0 +1,107 @@
+package de.qaware.echo.websocket.protocol;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class BinaryCodecTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	public void roundTripsEveryMessageType() throws Exception {
+		ChangeColorMessage changeColor = roundTrip(withId(new ChangeColorMessage("lamp", "grün", 255, -1, 128)));
+		assertEquals("lamp", changeColor.getThing());
+		assertEquals("grün", changeColor.getColor());
+		assertEquals(255, changeColor.getRedProportion());
+		assertEquals(-1, changeColor.getGreenProportion());
+		assertEquals(128, changeColor.getBlueProportion());
+		assertEquals("c-1", changeColor.getCorrelationId());
+		assertNull(changeColor.getHue());
+
+		ChangeColorMessage withHsb = roundTrip(new ChangeColorMessage("lamp", "ORANGE", 255, 165, 0, 39, 100, 100));
+		assertEquals(Integer.valueOf(39), withHsb.getHue());
+		assertEquals(Integer.valueOf(100), withHsb.getSaturation());
+		assertEquals(Integer.valueOf(100), withHsb.getBrightness());
+		assertEquals(0, withHsb.getBlueProportion());
+
+		assertEquals("lamp", this.<OnMessage>roundTrip(withId(new OnMessage("lamp"))).getThing());
+		assertEquals(2500, this.<ReconnectMessage>roundTrip(new ReconnectMessage(2500)).getDelay());
+		assertNull(this.<OffMessage>roundTrip(withId(new OffMessage(null))).getThing());
+
+		RegisterMessage register = new RegisterMessage("echo-1");
+		register.getFeatures().add(RegisterMessage.FEATURE_BATCH);
+		RegisterMessage decodedRegister = roundTrip(register);
+		assertEquals("echo-1", decodedRegister.getAmazonEchoId());
+		assertTrue(decodedRegister.hasFeature(RegisterMessage.FEATURE_BATCH));
+
+		AckMessage nack = new AckMessage("c-2", false, "unknown thing");
+		nack.setError(AckMessage.ERROR_UNKNOWN_DEVICE);
+		AckMessage ack = roundTrip(nack);
+		assertEquals("c-2", ack.getCorrelationId());
+		assertFalse(ack.isSuccess());
+		assertEquals("unknown thing", ack.getReason());
+		assertEquals(AckMessage.ERROR_UNKNOWN_DEVICE, ack.getError());
+
+		BatchMessage batch = roundTrip(new BatchMessage(Arrays.asList(withId(new OnMessage("a")), new OffMessage("b"))));
+		assertEquals(2, batch.getCommands().size());
+		assertEquals("a", ((OnMessage) batch.getCommands().get(0)).getThing());
+		assertEquals("c-1", batch.getCommands().get(0).getCorrelationId());
+		assertEquals("b", ((OffMessage) batch.getCommands().get(1)).getThing());
+
+		StateReportMessage report = roundTrip(withId(new StateReportMessage(true,
+				Collections.singletonMap("lamp", "120,100,50"))));
+		assertTrue(report.isFull());
+		assertEquals("120,100,50", report.getStates().get("lamp"));
+		assertEquals("lamp", this.<QueryStateMessage>roundTrip(withId(new QueryStateMessage("lamp"))).getThing());
+	}
+
+	@Test
+	public void isSmallerThanJson() throws Exception {
+		Message[] messages = {
+				withId(new OnMessage("lamp")),
+				withId(new OffMessage("lamp")),
+				withId(new ChangeColorMessage("lamp", "red", 255, 0, 0)),
+				new RegisterMessage("amzn1.ask.account.AFP3ZWPOS2BGJR7OWJZ3DHPKMOMNWY4AY66FUR7ILBWANIHQN73QG"),
+				new AckMessage("c-1", true, null)
+		};
+		for (Message message : messages) {
+			int jsonSize = objectMapper.writeValueAsBytes(message).length;
+			int binarySize = BinaryCodec.encode(message).length;
+assertTrue(message.getType() + ": " + binarySize + " >= " + jsonSize, binarySize < jsonSize);
+		}
+	}
+
+	@Test
+	public void skipsUnknownCommandsInBatch() throws Exception {
+		byte[] unknown = {99, 0, 42};
+		byte[] on = BinaryCodec.encode(new OnMessage("lamp"));
+		BatchMessage batch = (BatchMessage) BinaryCodec.decode(ByteBuffer.wrap(BinaryCodec.encodeBatch(Arrays.asList(unknown, on))));
+
+		assertNull(batch.getCommands().get(0));
+		assertEquals("lamp", ((OnMessage) batch.getCommands().get(1)).getThing());
+		assertNull(BinaryCodec.decode(ByteBuffer.wrap(unknown)));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsTruncatedMessages() throws Exception {
+		byte[] encoded = BinaryCodec.encode(new ChangeColorMessage("lamp", "red", 255, 0, 0));
+		BinaryCodec.decode(ByteBuffer.wrap(encoded, 0, encoded.length - 1));
+	}
+
+	private static <T extends Message> T withId(T message) {
+		message.setCorrelationId("c-1");
+		return message;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends Message> T roundTrip(Message message) throws IOException {
+		return (T) BinaryCodec.decode(ByteBuffer.wrap(BinaryCodec.encode(message)));
+	}
+}
@@ -0,0 +1,38 @@
+package de.qaware.echo.websocket.protocol;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MessageDecoderTest {
+
+	private final MessageDecoder decoder = new MessageDecoder(new ObjectMapper());
+
+	@Test
+	public void decodesTypeInFront() throws Exception {
+		Message message = decoder.decode("{\"type\":\"REGISTER\",\"amazonEchoId\":\"echo-1\"}");
+
+		assertTrue(message instanceof RegisterMessage);
+		assertEquals("echo-1", ((RegisterMessage) message).getAmazonEchoId());
+	}
+
+	@Test
+	public void decodesTypeAfterPayload() throws Exception {
+		Message message = decoder.decode("{\"thing\":\"lamp\",\"color\":\"red\",\"redProportion\":255,"
+				+ "\"greenProportion\":0,\"blueProportion\":0,\"type\":\"CHANGE_COLOR\"}");
+
+		assertTrue(message instanceof ChangeColorMessage);
+		ChangeColorMessage changeColor = (ChangeColorMessage) message;
+		assertEquals(MessageType.CHANGE_COLOR, changeColor.getType());
+		assertEquals("lamp", changeColor.getThing());
+		assertEquals(255, changeColor.getRedProportion());
+	}
+
+	@Test
+	public void rejectsUnknownAndMissingTypes() throws Exception {
+		assertNull(decoder.decode("{\"type\":\"SELF_DESTRUCT\",\"thing\":\"lamp\"}"));
+		assertNull(decoder.decode("{\"thing\":\"lamp\"}"));
+		assertNull(decoder.decode("[]"));
+	}
+}